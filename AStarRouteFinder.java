@@ -2,127 +2,155 @@ package search_methods;
 
 import java.util.*;
 
-public class AStarRouteFinder {
-    private Map<String, List<String>> adjacencyList;
-    private Map<String, City> cities;
+/**
+ * A* search over a {@link CompiledGraph}. The open set is an {@link IndexedMinHeap}, so a city
+ * whose gValue improves has its priority lowered in place instead of being queued again, and
+ * the open set never holds more entries than there are cities. With a {@link LandmarkIndex}
+ * it runs as ALT: the estimate is the larger of the chord distance and the landmark bounds.
+ */
+public class AStarRouteFinder implements RouteFinder {
+    private final CompiledGraph graph;
+    private final SearchWorkspace workspace;
+    private final IndexedMinHeap openSet;
+    private final HeuristicCache heuristic;
+    private final SearchStatistics statistics = new SearchStatistics();
+    private int settledCount;
+
+    public AStarRouteFinder(CompiledGraph graph) {
+        this(graph, 2);
+    }
+
+    /**
+     * Creates an ALT finder that tightens its estimates with the given landmark tables.
+     *
+     * @param graph     The compiled graph to search.
+     * @param landmarks Landmark tables built for this graph, or null for plain A*.
+     */
+    public AStarRouteFinder(CompiledGraph graph, LandmarkIndex landmarks) {
+        this(graph, 2, landmarks);
+    }
+
+    /**
+     * Creates a finder whose open set is a heap of the given arity.
+     *
+     * @param graph     The compiled graph to search.
+     * @param heapArity The number of children per heap node, 2 for a binary heap.
+     */
+    public AStarRouteFinder(CompiledGraph graph, int heapArity) {
+        this(graph, heapArity, null);
+    }
 
-    public AStarRouteFinder(Map<String, List<String>> adjacencyList, Map<String, City> cities) {
-        this.adjacencyList = adjacencyList;
-        this.cities = cities;
+    private AStarRouteFinder(CompiledGraph graph, int heapArity, LandmarkIndex landmarks) {
+        this.graph = graph;
+        this.workspace = new SearchWorkspace(graph.size());
+        this.openSet = new IndexedMinHeap(graph.size(), heapArity);
+        this.heuristic = new HeuristicCache(graph, landmarks);
     }
 
+    @Override
     public List<String> findRoute(String startCity, String endCity) {
-        if (!cities.containsKey(startCity) || !cities.containsKey(endCity)) {
+        statistics.reset();
+        long operationsBefore = openSet.getOperationCount();
+        List<String> route = search(startCity, endCity);
+        statistics.queueOperations = openSet.getOperationCount() - operationsBefore;
+        return route;
+    }
+
+    private List<String> search(String startCity, String endCity) {
+        int start = graph.id(startCity);
+        int end = graph.id(endCity);
+        if (start < 0 || end < 0) {
             System.out.println("Start city or end city not found in the cities database.");
             return null;
         }
+        if (!graph.connectivity().connected(start, end)) {
+            return null;
+        }
 
-        PriorityQueue<CityNode> priorityQueue = new PriorityQueue<>(Comparator.comparingDouble(node -> node.totalCost));
-        Map<String, String> parentMap = new HashMap<>();
-        Map<String, Double> gValues = new HashMap<>();
-        Set<String> visited = new HashSet<>();
+        SearchWorkspace ws = workspace;
+        SearchStatistics stats = statistics;
+        double[] gValues = ws.cost;
+        ws.reset();
+        openSet.clear();
+        heuristic.reset(end);
+        settledCount = 0;
 
-        gValues.put(startCity, 0.0);
-        priorityQueue.add(new CityNode(startCity, 0.0));
+        gValues[start] = 0.0;
+        ws.markSeen(start);
+        openSet.insertOrDecrease(start, 0.0);
 
-        while (!priorityQueue.isEmpty()) {
-            CityNode currentNode = priorityQueue.poll();
-            String currentCity = currentNode.city;
+        while (!openSet.isEmpty()) {
+            int currentCity = openSet.poll();
 
-            if (currentCity.equals(endCity)) {
+            if (currentCity == end) {
                 // Reconstruct and return the path
-                return reconstructPath(parentMap, startCity, endCity);
+                return graph.toRoute(ws.path, ws.tracePath(start, end));
             }
 
-            if (!visited.contains(currentCity)) {
-                visited.add(currentCity);
-
-                for (String neighbor : adjacencyList.get(currentCity)) {
-                    if (!visited.contains(neighbor)) {
-                        double costToNeighbor = calculateCost(currentCity, neighbor);
-                        double tentativeGValue = gValues.get(currentCity) + costToNeighbor;
-
-                        if (!gValues.containsKey(neighbor) || tentativeGValue < gValues.get(neighbor)) {
-                            gValues.put(neighbor, tentativeGValue);
-                            double totalCost = tentativeGValue + calculateHeuristic(neighbor, endCity);
-
-                            priorityQueue.add(new CityNode(neighbor, totalCost));
-                            parentMap.put(neighbor, currentCity);
-                        }
+            ws.markClosed(currentCity);
+            settledCount++;
+            stats.nodesExpanded++;
+
+            int first = graph.firstEdge(currentCity);
+            int last = graph.lastEdge(currentCity);
+            stats.edgesRelaxed += last - first;
+            for (int e = first; e < last; e++) {
+                int neighbor = graph.target(e);
+                if (!ws.isClosed(neighbor)) {
+                    double tentativeGValue = gValues[currentCity] + graph.weight(e);
+
+                    if (!ws.isSeen(neighbor) || tentativeGValue < gValues[neighbor]) {
+                        ws.markSeen(neighbor);
+                        gValues[neighbor] = tentativeGValue;
+                        double totalCost = tentativeGValue + heuristic.estimate(neighbor);
+
+                        // Lowers the key in place when the city is already open
+                        openSet.insertOrDecrease(neighbor, totalCost);
+                        ws.parent[neighbor] = currentCity;
                     }
                 }
             }
+            stats.frontier(openSet.size());
         }
 
         // No route found
         return null;
     }
 
-    private double calculateCost(String currentCity, String neighbor) {
-        // Calculate the cost based on the distance between city coordinates using the Haversine formula
-        City current = cities.get(currentCity);
-        City next = cities.get(neighbor);
-
-        double lat1 = current.getLatitude();
-        double lon1 = current.getLongitude();
-        double lat2 = next.getLatitude();
-        double lon2 = next.getLongitude();
-
-        double earthRadius = 6371; // Radius of the Earth in kilometers
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                   Math.sin(dLon / 2) * Math.sin(dLon / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        double distance = earthRadius * c;
-
-        return distance;
+    @Override
+    public SearchStatistics getStatistics() {
+        return statistics;
     }
 
-    private double calculateHeuristic(String currentCity, String endCity) {
-        // Calculate the heuristic (estimated cost) based on the straight-line distance
-        City current = cities.get(currentCity);
-        City end = cities.get(endCity);
-
-        double lat1 = current.getLatitude();
-        double lon1 = current.getLongitude();
-        double lat2 = end.getLatitude();
-        double lon2 = end.getLongitude();
-
-        double earthRadius = 6371; // Radius of the Earth in kilometers
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                   Math.sin(dLon / 2) * Math.sin(dLon / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        double distance = earthRadius * c;
-
-        return distance;
+    /**
+     * Returns the number of cities settled by the last query.
+     */
+    public int getSettledCount() {
+        return settledCount;
     }
 
-    private List<String> reconstructPath(Map<String, String> parentMap, String start, String end) {
-        List<String> path = new ArrayList<>();
-        String current = end;
-
-        while (!current.equals(start)) {
-            path.add(current);
-            current = parentMap.get(current);
-        }
+    /**
+     * Returns the number of cities pushed onto the open set since the counters were last reset.
+     */
+    public long getPushCount() {
+        return openSet.getPushCount();
+    }
 
-        path.add(start);
-        Collections.reverse(path);
-        return path;
+    /**
+     * Returns the number of cities polled from the open set since the counters were last reset.
+     */
+    public long getPopCount() {
+        return openSet.getPopCount();
     }
 
-    private static class CityNode {
-        String city;
-        double totalCost;
+    /**
+     * Returns the number of in-place priority decreases since the counters were last reset.
+     */
+    public long getDecreaseKeyCount() {
+        return openSet.getDecreaseKeyCount();
+    }
 
-        public CityNode(String city, double totalCost) {
-            this.city = city;
-            this.totalCost = totalCost;
-        }
+    public void resetCounters() {
+        openSet.resetCounters();
     }
 }
@@ -0,0 +1,304 @@
+package search_methods;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Anytime Repairing A* (Likhachev, Gordon and Thrun) for callers that need a route by a
+ * deadline more than they need the shortest one. The first search is weighted A*, which
+ * orders the open set by {@code g + epsilon * h} and settles far fewer cities than A*; its
+ * route is at most epsilon times as long as the shortest. While time remains, epsilon is
+ * lowered and the search resumes from where it stopped instead of starting over: only cities
+ * whose distance improved since they were settled are expanded again. Each search that
+ * finishes publishes a route with the bound it proves, which can be tighter than epsilon;
+ * at 1 the route is the shortest.
+ *
+ * <p>The first route is always found, however long it takes, so that a caller with a budget
+ * too small for the graph still gets an answer. Later searches stop at the deadline and the
+ * last published route is returned.
+ */
+public class AnytimeAStarRouteFinder implements RouteFinder {
+    public static final double DEFAULT_EPSILON = 2.5;
+    public static final double DEFAULT_EPSILON_STEP = 0.5;
+    public static final long DEFAULT_TIME_BUDGET_MILLIS = 100;
+    // Expansions between looks at the clock
+    private static final int CHECK_INTERVAL = 256;
+
+    private final CompiledGraph graph;
+    private final double initialEpsilon;
+    private final double epsilonStep;
+    private final long timeBudgetNanos;
+    private final SearchWorkspace workspace;
+    private final IndexedMinHeap openSet;
+    private final HeuristicCache heuristic;
+    private final SearchStatistics statistics = new SearchStatistics();
+    // Cities settled in the current search carry its stamp; stamps are never reused
+    private final int[] closedStamps;
+    private final int[] inconsistentStamps;
+    private final IntList inconsistent = new IntList();
+    private final IntList pending = new IntList();
+    private int stamp;
+    private Solution lastSolution;
+
+    /**
+     * Creates a finder with the default epsilon, step and time budget.
+     */
+    public AnytimeAStarRouteFinder(CompiledGraph graph) {
+        this(graph, DEFAULT_EPSILON, DEFAULT_EPSILON_STEP, DEFAULT_TIME_BUDGET_MILLIS);
+    }
+
+    /**
+     * @param graph            The compiled graph to search.
+     * @param epsilon          The suboptimality bound of the first route, at least 1.
+     * @param epsilonStep      How much epsilon drops between searches.
+     * @param timeBudgetMillis How long a query may keep improving its route.
+     */
+    public AnytimeAStarRouteFinder(CompiledGraph graph, double epsilon, double epsilonStep, long timeBudgetMillis) {
+        if (!(epsilon >= 1) || !(epsilonStep > 0)) {
+            throw new IllegalArgumentException("Epsilon must be at least 1 and its step positive: "
+                    + epsilon + ", " + epsilonStep);
+        }
+        this.graph = graph;
+        this.initialEpsilon = epsilon;
+        this.epsilonStep = epsilonStep;
+        this.timeBudgetNanos = Math.max(0, timeBudgetMillis) * 1_000_000L;
+        this.workspace = new SearchWorkspace(graph.size());
+        this.openSet = new IndexedMinHeap(graph.size());
+        this.heuristic = new HeuristicCache(graph);
+        this.closedStamps = new int[graph.size()];
+        this.inconsistentStamps = new int[graph.size()];
+    }
+
+    @Override
+    public List<String> findRoute(String startCity, String endCity) {
+        Solution solution = search(startCity, endCity, timeBudgetNanos, initialEpsilon, null);
+        return solution != null ? solution.route() : null;
+    }
+
+    /**
+     * Runs an anytime search, reporting every route it publishes as soon as it has it.
+     *
+     * @param startCity       The starting city.
+     * @param endCity         The ending city.
+     * @param timeBudgetNanos How long the query may keep improving its route.
+     * @param epsilon         The suboptimality bound of the first route, at least 1.
+     * @param improvements    Receives each route as it is published, or null.
+     * @return The last route published, or null if there is none.
+     */
+    public Solution search(String startCity, String endCity, long timeBudgetNanos, double epsilon,
+                           Consumer<? super Solution> improvements) {
+        if (!(epsilon >= 1)) {
+            throw new IllegalArgumentException("Epsilon must be at least 1: " + epsilon);
+        }
+        statistics.reset();
+        lastSolution = null;
+        int start = graph.id(startCity);
+        int end = graph.id(endCity);
+        if (start < 0 || end < 0 || !graph.connectivity().connected(start, end)) {
+            return null;
+        }
+        long started = System.nanoTime();
+        long deadline = started + timeBudgetNanos;
+        long operationsBefore = openSet.getOperationCount();
+
+        SearchWorkspace ws = workspace;
+        ws.reset();
+        openSet.clear();
+        inconsistent.size = 0;
+        heuristic.reset(end);
+        ws.cost[start] = 0.0;
+        ws.markSeen(start);
+        openSet.insertOrDecrease(start, epsilon * heuristic.estimate(start));
+
+        Solution best = null;
+        while (true) {
+            nextStamp();
+            boolean finished = improvePath(end, epsilon, best != null, deadline);
+            if (!finished) {
+                break;
+            }
+            if (!ws.isSeen(end)) {
+                // The open set ran dry without reaching the end
+                break;
+            }
+            double lowerBound = collectOpen();
+            double achieved = lowerBound > 0 ? Math.min(epsilon, ws.cost[end] / lowerBound) : epsilon;
+            best = publish(start, end, Math.max(1.0, achieved), System.nanoTime() - started);
+            if (improvements != null) {
+                improvements.accept(best);
+            }
+            if (best.epsilon() <= 1.0 || System.nanoTime() - deadline >= 0) {
+                break;
+            }
+            epsilon = Math.max(1.0, Math.min(epsilon - epsilonStep, best.epsilon()));
+            reopen(epsilon);
+        }
+        statistics.queueOperations = openSet.getOperationCount() - operationsBefore;
+        lastSolution = best;
+        return best;
+    }
+
+    /**
+     * Settles cities in order of {@code g + epsilon * h} until no open city could lead to a
+     * shorter route to the end, returning false if the search is timed and the deadline
+     * passed first. A settled city whose distance improves again waits in the inconsistent
+     * list for the next search.
+     */
+    private boolean improvePath(int end, double epsilon, boolean timed, long deadline) {
+        SearchWorkspace ws = workspace;
+        SearchStatistics stats = statistics;
+        double[] gValues = ws.cost;
+        int sinceCheck = 0;
+        while (!openSet.isEmpty() && (!ws.isSeen(end) || gValues[end] > openSet.peekKey())) {
+            if (timed && ++sinceCheck == CHECK_INTERVAL) {
+                sinceCheck = 0;
+                if (System.nanoTime() - deadline >= 0) {
+                    return false;
+                }
+            }
+            int currentCity = openSet.poll();
+            closedStamps[currentCity] = stamp;
+            stats.nodesExpanded++;
+
+            int first = graph.firstEdge(currentCity);
+            int last = graph.lastEdge(currentCity);
+            stats.edgesRelaxed += last - first;
+            for (int e = first; e < last; e++) {
+                int neighbor = graph.target(e);
+                double tentativeGValue = gValues[currentCity] + graph.weight(e);
+                if (!ws.isSeen(neighbor) || tentativeGValue < gValues[neighbor]) {
+                    ws.markSeen(neighbor);
+                    gValues[neighbor] = tentativeGValue;
+                    ws.parent[neighbor] = currentCity;
+                    if (closedStamps[neighbor] != stamp) {
+                        openSet.insertOrDecrease(neighbor, tentativeGValue + epsilon * heuristic.estimate(neighbor));
+                    } else if (inconsistentStamps[neighbor] != stamp) {
+                        inconsistentStamps[neighbor] = stamp;
+                        inconsistent.add(neighbor);
+                    }
+                }
+            }
+            stats.frontier(openSet.size());
+        }
+        return true;
+    }
+
+    /**
+     * Takes the open and inconsistent cities out of the open set, returning the least
+     * {@code g + h} among them: a lower bound on the shortest route, or infinity if the
+     * search has nothing left to expand.
+     */
+    private double collectOpen() {
+        double[] gValues = workspace.cost;
+        pending.size = 0;
+        while (!openSet.isEmpty()) {
+            pending.add(openSet.poll());
+        }
+        for (int i = 0; i < inconsistent.size; i++) {
+            pending.add(inconsistent.items[i]);
+        }
+        inconsistent.size = 0;
+
+        double lowerBound = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < pending.size; i++) {
+            int city = pending.items[i];
+            lowerBound = Math.min(lowerBound, gValues[city] + heuristic.estimate(city));
+        }
+        return lowerBound;
+    }
+
+    /**
+     * Puts the collected cities back in the open set, keyed by the new epsilon.
+     */
+    private void reopen(double epsilon) {
+        double[] gValues = workspace.cost;
+        for (int i = 0; i < pending.size; i++) {
+            int city = pending.items[i];
+            openSet.insertOrDecrease(city, gValues[city] + epsilon * heuristic.estimate(city));
+        }
+    }
+
+    /**
+     * Builds a solution from the parent links. A city's distance can improve after a city
+     * below it on the route took it as parent, so the route may be shorter than the end's
+     * distance and is measured arc by arc, over the lightest of any parallel roads as the
+     * search relaxes them.
+     */
+    private Solution publish(int start, int end, double epsilon, long elapsedNanos) {
+        SearchWorkspace ws = workspace;
+        int length = ws.tracePath(start, end);
+        double distance = 0.0;
+        for (int i = 1; i < length; i++) {
+            distance += graph.weight(graph.lightestEdge(ws.path[i - 1], ws.path[i]));
+        }
+        return new Solution(graph.toRoute(ws.path, length), distance, epsilon, elapsedNanos);
+    }
+
+    private void nextStamp() {
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(closedStamps, 0);
+            Arrays.fill(inconsistentStamps, 0);
+            stamp = 1;
+        }
+    }
+
+    /**
+     * Returns the route the last query returned, with its bound, or null if it found none.
+     */
+    public Solution getLastSolution() {
+        return lastSolution;
+    }
+
+    @Override
+    public SearchStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * A route published by an anytime search.
+     */
+    public static final class Solution {
+        private final List<String> route;
+        private final double distance;
+        private final double epsilon;
+        private final long elapsedNanos;
+
+        Solution(List<String> route, double distance, double epsilon, long elapsedNanos) {
+            this.route = route;
+            this.distance = distance;
+            this.epsilon = epsilon;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public List<String> route() {
+            return route;
+        }
+
+        /**
+         * Returns the route's length in kilometers.
+         */
+        public double distance() {
+            return distance;
+        }
+
+        /**
+         * Returns the proven bound: the route is at most this many times as long as the
+         * shortest. 1 means it is the shortest.
+         */
+        public double epsilon() {
+            return epsilon;
+        }
+
+        /**
+         * Returns the time from the start of the query to this route.
+         */
+        public long elapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.3f km, epsilon %.3f, after %.3f ms", distance, epsilon, elapsedNanos / 1e6);
+        }
+    }
+}
@@ -6,53 +6,70 @@ package search_methods;
 
 import java.util.*;
 
-public class BFSRouteFinder {
-    private Map<String, List<String>> adjacencyList;
+public class BFSRouteFinder implements RouteFinder {
+    private final CompiledGraph graph;
+    private final SearchWorkspace workspace;
+    private final SearchStatistics statistics = new SearchStatistics();
 
-    public BFSRouteFinder(Map<String, List<String>> adjacencyList) {
-        this.adjacencyList = adjacencyList;
+    public BFSRouteFinder(CompiledGraph graph) {
+        this.graph = graph;
+        this.workspace = new SearchWorkspace(graph.size());
     }
 
+    @Override
     public List<String> findRoute(String startCity, String endCity) {
-        Queue<String> queue = new LinkedList<>();
-        Map<String, String> parentMap = new HashMap<>();
-        Set<String> visited = new HashSet<>();
+        statistics.reset();
+        int start = graph.id(startCity);
+        int end = graph.id(endCity);
+        if (start < 0 || end < 0) {
+            return null;
+        }
+        if (!graph.connectivity().connected(start, end)) {
+            return null;
+        }
+
+        SearchWorkspace ws = workspace;
+        ws.reset();
+        int[] queue = ws.queue;
+        int head = 0;
+        int tail = 0;
 
-        queue.add(startCity);
-        visited.add(startCity);
+        queue[tail++] = start;
+        ws.markSeen(start);
+        // Counted in locals and stored once; every city polled except the end is expanded
+        long relaxed = 0;
+        int peak = 1;
 
-        while (!queue.isEmpty()) {
-            String currentCity = queue.poll();
+        while (head < tail) {
+            int currentCity = queue[head++];
 
-            if (currentCity.equals(endCity)) {
+            if (currentCity == end) {
+                statistics.record(head - 1, relaxed, peak, head + tail);
                 // Reconstruct and return the path
-                return reconstructPath(parentMap, startCity, endCity);
+                return graph.toRoute(ws.path, ws.tracePath(start, end));
             }
 
-            for (String neighbor : adjacencyList.get(currentCity)) {
-                if (!visited.contains(neighbor)) {
-                    queue.add(neighbor);
-                    visited.add(neighbor);
-                    parentMap.put(neighbor, currentCity);
+            int first = graph.firstEdge(currentCity);
+            int last = graph.lastEdge(currentCity);
+            relaxed += last - first;
+            for (int e = first; e < last; e++) {
+                int neighbor = graph.target(e);
+                if (!ws.isSeen(neighbor)) {
+                    queue[tail++] = neighbor;
+                    ws.markSeen(neighbor);
+                    ws.parent[neighbor] = currentCity;
                 }
             }
+            peak = Math.max(peak, tail - head);
         }
 
         // No route found
+        statistics.record(head, relaxed, peak, head + tail);
         return null;
     }
 
-    private List<String> reconstructPath(Map<String, String> parentMap, String start, String end) {
-        List<String> path = new ArrayList<>();
-        String current = end;
-
-        while (!current.equals(start)) {
-            path.add(current);
-            current = parentMap.get(current);
-        }
-
-        path.add(start);
-        Collections.reverse(path);
-        return path;
+    @Override
+    public SearchStatistics getStatistics() {
+        return statistics;
     }
 }
@@ -0,0 +1,468 @@
+package search_methods;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import javax.management.JMException;
+
+/**
+ * Answers batches of (start, end, method) queries on a pool of worker threads that share one
+ * immutable {@link CompiledGraph}. Every worker owns one finder per search method, created on
+ * first use and reused for all of its queries, so the finders' workspaces are only reset between
+ * queries (in O(1) thanks to their generation counters) and never shared between threads.
+ *
+ * <p>Results go to a sink either in query order or in completion order. The sink is called by one
+ * thread at a time, and at most {@code window} queries are in flight, so a slow query holds back
+ * ordered output without letting the reorder buffer grow without bound.
+ *
+ * <p>Query files hold one query per line, {@code <start city> <end city> <method>}, where the
+ * method is a {@link SearchMethod} name or menu number. Blank lines and lines starting with
+ * {@code #} are skipped.
+ *
+ * <p>An optional {@link RouteCache} is shared by all workers, so repeated queries in a batch, or
+ * across batches on the same router, are only searched once. An optional {@link SearchMetrics}
+ * records the work and latency of every search the workers run, cache misses only.
+ */
+public final class BatchRouter {
+    private static final Object END_OF_QUERIES = new Object();
+
+    /**
+     * The kind of thread the workers run on. Virtual threads need Java 21; the searches are CPU
+     * bound, so they only pay off when the sink blocks on I/O.
+     */
+    public enum Threads {
+        PLATFORM,
+        VIRTUAL
+    }
+
+    /**
+     * A single route query.
+     */
+    public static final class Query {
+        private final String startCity;
+        private final String endCity;
+        private final SearchMethod method;
+
+        public Query(String startCity, String endCity, SearchMethod method) {
+            this.startCity = Objects.requireNonNull(startCity);
+            this.endCity = Objects.requireNonNull(endCity);
+            this.method = Objects.requireNonNull(method);
+        }
+
+        public String getStartCity() {
+            return startCity;
+        }
+
+        public String getEndCity() {
+            return endCity;
+        }
+
+        public SearchMethod getMethod() {
+            return method;
+        }
+    }
+
+    /**
+     * The answer to one query. The route is null when there is none.
+     */
+    public static final class Result {
+        private final long index;
+        private final Query query;
+        private final List<String> route;
+        private final double distance;
+        private final long elapsedNanos;
+
+        Result(long index, Query query, List<String> route, double distance, long elapsedNanos) {
+            this.index = index;
+            this.query = query;
+            this.route = route;
+            this.distance = distance;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Returns the position of the query in its batch, starting at 0.
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        public Query getQuery() {
+            return query;
+        }
+
+        public List<String> getRoute() {
+            return route;
+        }
+
+        /**
+         * Returns the route length in kilometers, or {@code Double.NaN} when there is no route.
+         */
+        public double getDistance() {
+            return distance;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+
+    private final CompiledGraph graph;
+    private final int threadCount;
+    private final int window;
+    private final ThreadFactory threadFactory;
+    private final RouteCache cache;
+    private final SearchMetrics metrics;
+
+    /**
+     * Creates a router with one platform worker per available core.
+     */
+    public BatchRouter(CompiledGraph graph) {
+        this(graph, Runtime.getRuntime().availableProcessors(), Threads.PLATFORM);
+    }
+
+    public BatchRouter(CompiledGraph graph, int threadCount, Threads threads) {
+        this(graph, threadCount, threads, null);
+    }
+
+    /**
+     * @param cache Shared by the workers to answer repeated queries, or null for no caching.
+     */
+    public BatchRouter(CompiledGraph graph, int threadCount, Threads threads, RouteCache cache) {
+        this(graph, threadCount, threads, cache, null);
+    }
+
+    /**
+     * @param cache   Shared by the workers to answer repeated queries, or null for no caching.
+     * @param metrics Receives the statistics of every search, or null.
+     */
+    public BatchRouter(CompiledGraph graph, int threadCount, Threads threads, RouteCache cache, SearchMetrics metrics) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be at least 1: " + threadCount);
+        }
+        this.graph = graph;
+        this.threadCount = threadCount;
+        this.window = threadCount * 256;
+        this.threadFactory = threads == Threads.VIRTUAL ? virtualThreadFactory() : platformThreadFactory();
+        this.cache = cache;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the router's cache, or null if it has none.
+     */
+    public RouteCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Returns the metrics the router records into, or null if it records none.
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Runs every query of the stream and hands each result to the sink.
+     *
+     * @param queries The queries; the stream is consumed on the calling thread.
+     * @param ordered Whether results must reach the sink in query order.
+     * @param sink    Receives the results, one call at a time.
+     * @throws InterruptedException If the calling thread is interrupted while waiting for workers.
+     */
+    public void route(Stream<Query> queries, boolean ordered, Consumer<? super Result> sink) throws InterruptedException {
+        route(queries.iterator(), ordered, sink);
+    }
+
+    public void route(Iterator<Query> queries, boolean ordered, Consumer<? super Result> sink) throws InterruptedException {
+        Batch batch = new Batch(ordered, sink);
+        Thread[] workers = new Thread[threadCount];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = threadFactory.newThread(new Worker(batch));
+            workers[i].start();
+        }
+
+        try {
+            long index = 0;
+            while (queries.hasNext() && batch.failure == null) {
+                Query query = queries.next();
+                batch.inFlight.acquire();
+                batch.work.put(new Task(index++, query));
+            }
+        } finally {
+            for (int i = 0; i < workers.length; i++) {
+                batch.work.put(END_OF_QUERIES);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        }
+
+        if (batch.failure instanceof Error) {
+            throw (Error) batch.failure;
+        }
+        if (batch.failure != null) {
+            throw new IllegalStateException("A batch query failed", batch.failure);
+        }
+    }
+
+    /**
+     * Runs the queries and returns their results in query order.
+     */
+    public List<Result> routeAll(List<Query> queries) throws InterruptedException {
+        List<Result> results = new ArrayList<>(queries.size());
+        route(queries.iterator(), true, results::add);
+        return results;
+    }
+
+    /**
+     * Reads queries in the format described in the class comment. The stream must be closed.
+     */
+    public static Stream<Query> readQueries(Path file) throws IOException {
+        return Files.lines(file)
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .map(BatchRouter::parseQuery);
+    }
+
+    static Query parseQuery(String line) {
+        String[] parts = line.split("\\s+");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Expected <start city> <end city> <method>: " + line);
+        }
+        return new Query(parts[0], parts[1], SearchMethod.parse(parts[2]));
+    }
+
+    /**
+     * Usage: {@code BatchRouter <adjacency file> <coordinates file> <query file>
+     * [--threads n] [--virtual] [--unordered] [--cache n] [--metrics] [--report-every seconds]}.
+     * Prints one line per query: index, start, end, method, distance and the route, or "-" when
+     * there is none. With {@code --cache}, routes are cached in a W-TinyLFU {@link RouteCache} of
+     * n entries. {@code --metrics} registers {@link SearchMetrics} MXBeans and prints their table
+     * to stderr at the end, and {@code --report-every} also prints it periodically.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 3) {
+            System.out.println("Usage: BatchRouter <adjacency file> <coordinates file> <query file>"
+                    + " [--threads n] [--virtual] [--unordered] [--cache n] [--metrics] [--report-every seconds]");
+            return;
+        }
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        Threads threads = Threads.PLATFORM;
+        boolean ordered = true;
+        RouteCache cache = null;
+        SearchMetrics metrics = null;
+        long reportSeconds = 0;
+        for (int i = 3; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads":
+                    threadCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--virtual":
+                    threads = Threads.VIRTUAL;
+                    break;
+                case "--unordered":
+                    ordered = false;
+                    break;
+                case "--cache":
+                    cache = new RouteCache(Integer.parseInt(args[++i]));
+                    break;
+                case "--metrics":
+                    metrics = new SearchMetrics();
+                    break;
+                case "--report-every":
+                    reportSeconds = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+        }
+
+        CompiledGraph graph = GraphLoader.load(Paths.get(args[0]), Paths.get(args[1]));
+        BatchRouter router = new BatchRouter(graph, threadCount, threads, cache, metrics);
+        if (metrics != null) {
+            try {
+                metrics.registerMBeans();
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+            if (reportSeconds > 0) {
+                metrics.startReporting(System.err, reportSeconds, TimeUnit.SECONDS);
+            }
+        }
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16));
+        AtomicInteger count = new AtomicInteger();
+        long startTime = System.nanoTime();
+        try (Stream<Query> queries = readQueries(Paths.get(args[2]))) {
+            router.route(queries, ordered, result -> {
+                count.incrementAndGet();
+                out.print(result.getIndex());
+                out.print(' ');
+                out.print(result.getQuery().getStartCity());
+                out.print(' ');
+                out.print(result.getQuery().getEndCity());
+                out.print(' ');
+                out.print(result.getQuery().getMethod().name());
+                if (result.getRoute() == null) {
+                    out.println(" -");
+                    return;
+                }
+                out.print(' ');
+                out.print(result.getDistance());
+                for (String city : result.getRoute()) {
+                    out.print(' ');
+                    out.print(city);
+                }
+                out.println();
+            });
+        }
+        out.flush();
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        System.err.printf("%d queries on %d %s threads in %.3f seconds (%.1f queries/s)%n",
+                count.get(), threadCount, threads.name().toLowerCase(), seconds, count.get() / seconds);
+        if (cache != null) {
+            System.err.println("Cache: " + cache.stats());
+        }
+        if (metrics != null) {
+            metrics.stopReporting();
+            System.err.print(metrics.report());
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory() {
+        AtomicInteger created = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "route-worker-" + created.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Looks up {@code Thread.ofVirtual().factory()} reflectively, since the project targets Java 11.
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later", e);
+        }
+    }
+
+    private static final class Task {
+        final long index;
+        final Query query;
+
+        Task(long index, Query query) {
+            this.index = index;
+            this.query = query;
+        }
+    }
+
+    /**
+     * State shared by the workers of one call to {@link #route(Iterator, boolean, Consumer)}.
+     */
+    private final class Batch {
+        final BlockingQueue<Object> work = new ArrayBlockingQueue<>(window + threadCount);
+        final Semaphore inFlight = new Semaphore(window);
+        final boolean ordered;
+        final Consumer<? super Result> sink;
+        // Results that finished ahead of an earlier query, keyed by index; guarded by this
+        final Map<Long, Result> pending = new HashMap<>();
+        long nextIndex;
+        volatile Throwable failure;
+
+        Batch(boolean ordered, Consumer<? super Result> sink) {
+            this.ordered = ordered;
+            this.sink = sink;
+        }
+
+        synchronized void deliver(Result result) {
+            if (!ordered) {
+                inFlight.release();
+                sink.accept(result);
+                return;
+            }
+            pending.put(result.index, result);
+            Result next;
+            while ((next = pending.remove(nextIndex)) != null) {
+                nextIndex++;
+                inFlight.release();
+                sink.accept(next);
+            }
+        }
+
+        synchronized void fail(Throwable e) {
+            if (failure == null) {
+                failure = e;
+                // Results held back for ordering will never be delivered, so free the producer
+                inFlight.release(window);
+            }
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final Batch batch;
+        private final EnumMap<SearchMethod, RouteFinder> finders = new EnumMap<>(SearchMethod.class);
+
+        Worker(Batch batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Object item;
+                while ((item = batch.work.take()) != END_OF_QUERIES) {
+                    Task task = (Task) item;
+                    if (batch.failure != null) {
+                        // Keep draining so the producer never blocks on a full queue
+                        batch.inFlight.release();
+                        continue;
+                    }
+                    try {
+                        batch.deliver(answer(task));
+                    } catch (RuntimeException | Error e) {
+                        batch.fail(e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                batch.fail(e);
+            }
+        }
+
+        private Result answer(Task task) {
+            Query query = task.query;
+            RouteFinder finder = finders.computeIfAbsent(query.method, this::createFinder);
+            long before = System.nanoTime();
+            List<String> route = finder.findRoute(query.startCity, query.endCity);
+            long elapsed = System.nanoTime() - before;
+            double distance = route != null ? graph.routeDistance(route) : Double.NaN;
+            return new Result(task.index, query, route, distance, elapsed);
+        }
+
+        private RouteFinder createFinder(SearchMethod method) {
+            RouteFinder finder = method.create(graph);
+            if (metrics != null) {
+                finder = new MeteredRouteFinder(finder, method, metrics);
+            }
+            return cache != null ? new CachingRouteFinder(finder, graph, method, cache) : finder;
+        }
+    }
+}
@@ -6,19 +6,21 @@ import java.util.*;
  * This class represents a route finder that uses the Best-First Search algorithm
  * to find the best route between two cities in a graph.
  */
-public class BestFSRouteFinder {
-    private Map<String, List<String>> adjacencyList;
-    private Map<String, City> cities;
+public class BestFSRouteFinder implements RouteFinder {
+    private final CompiledGraph graph;
+    private final SearchWorkspace workspace;
+    private final NodeQueue priorityQueue;
+    private final SearchStatistics statistics = new SearchStatistics();
 
     /**
-     * Creates a new BestFSRouteFinder with the given adjacency list and city data.
+     * Creates a new BestFSRouteFinder over the given compiled graph.
      *
-     * @param adjacencyList A map representing the adjacency list of cities.
-     * @param cities        A map representing city data including coordinates.
+     * @param graph The compiled graph holding adjacency, edge lengths and coordinates.
      */
-    public BestFSRouteFinder(Map<String, List<String>> adjacencyList, Map<String, City> cities) {
-        this.adjacencyList = adjacencyList;
-        this.cities = cities;
+    public BestFSRouteFinder(CompiledGraph graph) {
+        this.graph = graph;
+        this.workspace = new SearchWorkspace(graph.size());
+        this.priorityQueue = new NodeQueue(graph.size());
     }
 
     /**
@@ -28,106 +30,68 @@ public class BestFSRouteFinder {
      * @param endCity   The ending city.
      * @return A list of city names representing the best route, or null if no route is found.
      */
+    @Override
     public List<String> findRoute(String startCity, String endCity) {
-        PriorityQueue<CityNode> priorityQueue = new PriorityQueue<>(Comparator.comparingDouble(node -> node.totalCost));
-        Map<String, String> parentMap = new HashMap<>();
-        Set<String> visited = new HashSet<>();
+        statistics.reset();
+        int start = graph.id(startCity);
+        int end = graph.id(endCity);
+        if (start < 0 || end < 0) {
+            return null;
+        }
+        if (!graph.connectivity().connected(start, end)) {
+            return null;
+        }
 
-        priorityQueue.add(new CityNode(startCity, 0.0));
+        SearchWorkspace ws = workspace;
+        ws.reset();
+        priorityQueue.clear();
+        priorityQueue.add(start, 0.0);
+        // Counted in locals and stored once
+        int expanded = 0;
+        int pushes = 1;
+        int pops = 0;
+        long relaxed = 0;
+        int peak = 1;
 
         while (!priorityQueue.isEmpty()) {
-            CityNode currentNode = priorityQueue.poll();
-            String currentCity = currentNode.city;
+            int currentCity = priorityQueue.poll();
+            pops++;
 
-            if (currentCity.equals(endCity)) {
+            if (currentCity == end) {
+                statistics.record(expanded, relaxed, peak, pushes + pops);
                 // Reconstruct and return the path
-                return reconstructPath(parentMap, startCity, endCity);
+                return graph.toRoute(ws.path, ws.tracePath(start, end));
             }
 
-            if (!visited.contains(currentCity)) {
-                visited.add(currentCity);
-
-                for (String neighbor : adjacencyList.get(currentCity)) {
-                    if (!visited.contains(neighbor)) {
-                        double costToNeighbor = calculateCost(currentCity, neighbor);
-
-                        priorityQueue.add(new CityNode(neighbor, costToNeighbor));
-                        parentMap.put(neighbor, currentCity);
+            if (!ws.isClosed(currentCity)) {
+                ws.markClosed(currentCity);
+                expanded++;
+
+                int first = graph.firstEdge(currentCity);
+                int last = graph.lastEdge(currentCity);
+                relaxed += last - first;
+                for (int e = first; e < last; e++) {
+                    int neighbor = graph.target(e);
+                    if (!ws.isClosed(neighbor)) {
+                        // The edge length was computed once when the graph was compiled
+                        double costToNeighbor = graph.weight(e);
+
+                        priorityQueue.add(neighbor, costToNeighbor);
+                        ws.parent[neighbor] = currentCity;
+                        pushes++;
                     }
                 }
+                peak = Math.max(peak, priorityQueue.size());
             }
         }
 
         // No route found
+        statistics.record(expanded, relaxed, peak, pushes + pops);
         return null;
     }
 
-    /**
-     * Calculates the cost (distance) between two cities based on their coordinates.
-     *
-     * @param currentCity The current city.
-     * @param neighbor    The neighboring city.
-     * @return The cost (distance) between the two cities.
-     */
-    private double calculateCost(String currentCity, String neighbor) {
-        // Calculate the cost based on the distance between city coordinates
-        City current = cities.get(currentCity);
-        City next = cities.get(neighbor);
-
-        if (current != null && next != null) {
-            double lat1 = current.getLatitude();
-            double lon1 = current.getLongitude();
-            double lat2 = next.getLatitude();
-            double lon2 = next.getLongitude();
-
-            // Using the Haversine formula to calculate distance
-            double earthRadius = 6371; // Radius of the Earth in kilometers
-            double dLat = Math.toRadians(lat2 - lat1);
-            double dLon = Math.toRadians(lon2 - lon1);
-            double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                    Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                            Math.sin(dLon / 2) * Math.sin(dLon / 2);
-            double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-            double distance = earthRadius * c;
-
-            return distance;
-        } else {
-            return Double.MAX_VALUE; // Return a very large value if coordinates are missing
-        }
-    }
-
-    /**
-     * Reconstructs the path from the end city to the start city using the parent map.
-     *
-     * @param parentMap  A map representing parent-child relationships in the route.
-     * @param start      The starting city.
-     * @param end        The ending city.
-     * @return A list of city names representing the reconstructed path.
-     */
-    private List<String> reconstructPath(Map<String, String> parentMap, String start, String end) {
-        List<String> path = new ArrayList<>();
-        String current = end;
-
-        while (!current.equals(start)) {
-            path.add(current);
-            current = parentMap.get(current);
-        }
-
-        path.add(start);
-        Collections.reverse(path);
-        return path;
-    }
-
-    /**
-     * Represents a node in the priority queue used for Best-First Search.
-     */
-    private static class CityNode {
-        String city;
-        double totalCost;
-
-        public CityNode(String city, double totalCost) {
-            this.city = city;
-            this.totalCost = totalCost;
-        }
+    @Override
+    public SearchStatistics getStatistics() {
+        return statistics;
     }
 }
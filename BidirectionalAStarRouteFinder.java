@@ -0,0 +1,149 @@
+package search_methods;
+
+import java.util.*;
+
+/**
+ * A* run from both ends at once with average potentials. The forward search orders cities by
+ * {@code g(v) + p(v)} and the backward search by {@code g(v) - p(v)}, where
+ * {@code p(v) = (h_end(v) - h_start(v)) / 2} is built from the chord estimates to each end.
+ * Both searches then see the same consistent reduced edge costs, and the best route found so
+ * far is shortest once the two smallest keys add up to at least its length.
+ */
+public class BidirectionalAStarRouteFinder implements RouteFinder {
+    private final CompiledGraph graph;
+    private final CompiledGraph reverse;
+    private final SearchWorkspace forward;
+    private final SearchWorkspace backward;
+    private final IndexedMinHeap forwardOpen;
+    private final IndexedMinHeap backwardOpen;
+    private final HeuristicCache toEnd;
+    private final HeuristicCache toStart;
+    private final SearchStatistics statistics = new SearchStatistics();
+
+    private double bestCost;
+    private int meetingCity;
+
+    public BidirectionalAStarRouteFinder(CompiledGraph graph) {
+        this.graph = graph;
+        this.reverse = graph.transpose();
+        this.forward = new SearchWorkspace(graph.size());
+        this.backward = new SearchWorkspace(graph.size());
+        this.forwardOpen = new IndexedMinHeap(graph.size());
+        this.backwardOpen = new IndexedMinHeap(graph.size());
+        this.toEnd = new HeuristicCache(graph);
+        this.toStart = new HeuristicCache(graph);
+    }
+
+    @Override
+    public List<String> findRoute(String startCity, String endCity) {
+        statistics.reset();
+        long operationsBefore = forwardOpen.getOperationCount() + backwardOpen.getOperationCount();
+        List<String> route = search(startCity, endCity);
+        statistics.queueOperations = forwardOpen.getOperationCount() + backwardOpen.getOperationCount() - operationsBefore;
+        return route;
+    }
+
+    private List<String> search(String startCity, String endCity) {
+        int start = graph.id(startCity);
+        int end = graph.id(endCity);
+        if (start < 0 || end < 0) {
+            return null;
+        }
+        if (!graph.connectivity().connected(start, end)) {
+            return null;
+        }
+        if (start == end) {
+            return graph.toRoute(new int[] {start}, 1);
+        }
+
+        forward.reset();
+        backward.reset();
+        forwardOpen.clear();
+        backwardOpen.clear();
+        toEnd.reset(end);
+        toStart.reset(start);
+        bestCost = Double.POSITIVE_INFINITY;
+        meetingCity = -1;
+
+        forward.markSeen(start);
+        forward.cost[start] = 0.0;
+        forwardOpen.insertOrDecrease(start, potential(start));
+        backward.markSeen(end);
+        backward.cost[end] = 0.0;
+        backwardOpen.insertOrDecrease(end, -potential(end));
+
+        while (!forwardOpen.isEmpty() && !backwardOpen.isEmpty()) {
+            // Stopping criterion: no unsettled city can lie on a shorter route
+            if (forwardOpen.peekKey() + backwardOpen.peekKey() >= bestCost) {
+                break;
+            }
+
+            if (forwardOpen.size() <= backwardOpen.size()) {
+                expand(graph, forward, backward, forwardOpen, 1.0);
+            } else {
+                expand(reverse, backward, forward, backwardOpen, -1.0);
+            }
+            statistics.frontier(forwardOpen.size() + backwardOpen.size());
+        }
+
+        if (meetingCity < 0) {
+            // No route found
+            return null;
+        }
+        return buildRoute(start, end);
+    }
+
+    /**
+     * Settles the top city of one search and relaxes its arcs. {@code sign} is 1 for the
+     * forward search and -1 for the backward one, whose potential is the negated average.
+     */
+    private void expand(CompiledGraph direction, SearchWorkspace side, SearchWorkspace other,
+                        IndexedMinHeap open, double sign) {
+        int city = open.poll();
+        side.markClosed(city);
+        int first = direction.firstEdge(city);
+        int last = direction.lastEdge(city);
+        statistics.nodesExpanded++;
+        statistics.edgesRelaxed += last - first;
+
+        for (int e = first; e < last; e++) {
+            int neighbor = direction.target(e);
+            if (side.isClosed(neighbor)) {
+                continue;
+            }
+
+            double tentativeCost = side.cost[city] + direction.weight(e);
+            if (!side.isSeen(neighbor) || tentativeCost < side.cost[neighbor]) {
+                side.markSeen(neighbor);
+                side.cost[neighbor] = tentativeCost;
+                side.parent[neighbor] = city;
+                open.insertOrDecrease(neighbor, tentativeCost + sign * potential(neighbor));
+
+                if (other.isSeen(neighbor) && tentativeCost + other.cost[neighbor] < bestCost) {
+                    bestCost = tentativeCost + other.cost[neighbor];
+                    meetingCity = neighbor;
+                }
+            }
+        }
+    }
+
+    @Override
+    public SearchStatistics getStatistics() {
+        return statistics;
+    }
+
+    private double potential(int city) {
+        return (toEnd.estimate(city) - toStart.estimate(city)) / 2;
+    }
+
+    private List<String> buildRoute(int start, int end) {
+        // start .. meetingCity from the forward tree, then on to end along the backward tree
+        int[] path = forward.path;
+        int length = forward.tracePath(start, meetingCity);
+        for (int city = meetingCity; city != end; ) {
+            city = backward.parent[city];
+            path[length++] = city;
+        }
+        return graph.toRoute(path, length);
+    }
+}
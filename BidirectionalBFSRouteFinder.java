@@ -0,0 +1,143 @@
+package search_methods;
+
+import java.util.*;
+
+/**
+ * Breadth-first search run from both ends at once. Each step expands one full level of
+ * whichever frontier is smaller; the forward side follows arcs out of a city and the
+ * backward side follows arcs into it. The first level that links the two searches is
+ * finished before stopping, and the shortest link found in it gives a route with the
+ * fewest possible hops.
+ */
+public class BidirectionalBFSRouteFinder implements RouteFinder {
+    private final CompiledGraph graph;
+    private final CompiledGraph reverse;
+    private final SearchWorkspace forward;
+    private final SearchWorkspace backward;
+    private final SearchStatistics statistics = new SearchStatistics();
+
+    private int forwardHead;
+    private int forwardTail;
+    private int backwardHead;
+    private int backwardTail;
+    private double bestHops;
+    private int meetFrom;
+    private int meetTo;
+
+    public BidirectionalBFSRouteFinder(CompiledGraph graph) {
+        this.graph = graph;
+        this.reverse = graph.transpose();
+        this.forward = new SearchWorkspace(graph.size());
+        this.backward = new SearchWorkspace(graph.size());
+    }
+
+    @Override
+    public List<String> findRoute(String startCity, String endCity) {
+        statistics.reset();
+        int start = graph.id(startCity);
+        int end = graph.id(endCity);
+        if (start < 0 || end < 0) {
+            return null;
+        }
+        if (!graph.connectivity().connected(start, end)) {
+            return null;
+        }
+        if (start == end) {
+            return graph.toRoute(new int[] {start}, 1);
+        }
+
+        forward.reset();
+        backward.reset();
+        forwardHead = 0;
+        forwardTail = 0;
+        backwardHead = 0;
+        backwardTail = 0;
+        forward.queue[forwardTail++] = start;
+        forward.markSeen(start);
+        forward.cost[start] = 0;
+        backward.queue[backwardTail++] = end;
+        backward.markSeen(end);
+        backward.cost[end] = 0;
+        bestHops = Double.POSITIVE_INFINITY;
+        statistics.queueOperations = 2;
+        statistics.peakFrontier = 2;
+
+        while (forwardHead < forwardTail && backwardHead < backwardTail) {
+            if (forwardTail - forwardHead <= backwardTail - backwardHead) {
+                int levelEnd = forwardTail;
+                forwardTail = expandLevel(graph, forward, backward, forwardHead, levelEnd, true);
+                forwardHead = levelEnd;
+            } else {
+                int levelEnd = backwardTail;
+                backwardTail = expandLevel(reverse, backward, forward, backwardHead, levelEnd, false);
+                backwardHead = levelEnd;
+            }
+            statistics.frontier(forwardTail - forwardHead + backwardTail - backwardHead);
+
+            if (bestHops < Double.POSITIVE_INFINITY) {
+                return buildRoute(start, end);
+            }
+        }
+
+        // No route found
+        return null;
+    }
+
+    /**
+     * Expands every city in {@code queue[head, tail)}, recording any link to the other search,
+     * and returns the tail of the queue after the next level has been appended.
+     */
+    private int expandLevel(CompiledGraph direction, SearchWorkspace side, SearchWorkspace other,
+                            int head, int tail, boolean isForward) {
+        int[] queue = side.queue;
+        int newTail = tail;
+        long relaxed = 0;
+        for (int i = head; i < tail; i++) {
+            int city = queue[i];
+            int first = direction.firstEdge(city);
+            int last = direction.lastEdge(city);
+            relaxed += last - first;
+            for (int e = first; e < last; e++) {
+                int neighbor = direction.target(e);
+                if (other.isSeen(neighbor)) {
+                    double hops = side.cost[city] + 1 + other.cost[neighbor];
+                    if (hops < bestHops) {
+                        bestHops = hops;
+                        meetFrom = isForward ? city : neighbor;
+                        meetTo = isForward ? neighbor : city;
+                    }
+                }
+                if (!side.isSeen(neighbor)) {
+                    side.markSeen(neighbor);
+                    side.parent[neighbor] = city;
+                    side.cost[neighbor] = side.cost[city] + 1;
+                    queue[newTail++] = neighbor;
+                }
+            }
+        }
+        // Every city of the level was polled and expanded, and the next level pushed
+        SearchStatistics stats = statistics;
+        stats.nodesExpanded += tail - head;
+        stats.edgesRelaxed += relaxed;
+        stats.queueOperations += (tail - head) + (newTail - tail);
+        return newTail;
+    }
+
+    @Override
+    public SearchStatistics getStatistics() {
+        return statistics;
+    }
+
+    private List<String> buildRoute(int start, int end) {
+        // start .. meetFrom from the forward tree, then meetTo .. end from the backward tree
+        int[] path = forward.path;
+        int length = forward.tracePath(start, meetFrom);
+        for (int city = meetTo; ; city = backward.parent[city]) {
+            path[length++] = city;
+            if (city == end) {
+                break;
+            }
+        }
+        return graph.toRoute(path, length);
+    }
+}
@@ -0,0 +1,123 @@
+package search_methods;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sequential little-endian reads and writes of primitive arrays on a {@link FileChannel}, and
+ * read-only mappings of file sections, shared by the binary formats.
+ */
+final class BinaryChannels {
+    private static final int CHUNK_BYTES = 1 << 16;
+
+    private BinaryChannels() {
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static void writeInts(FileChannel channel, int[] values) throws IOException {
+        writeInts(channel, IntBuffer.wrap(values));
+    }
+
+    static void writeInts(FileChannel channel, IntBuffer values) throws IOException {
+        ByteBuffer chunk = newChunk();
+        for (int i = 0, limit = values.limit(); i < limit; i++) {
+            if (chunk.remaining() < Integer.BYTES) {
+                flush(channel, chunk);
+            }
+            chunk.putInt(values.get(i));
+        }
+        flush(channel, chunk);
+    }
+
+    static void writeDoubles(FileChannel channel, double[] values) throws IOException {
+        writeDoubles(channel, DoubleBuffer.wrap(values));
+    }
+
+    static void writeDoubles(FileChannel channel, DoubleBuffer values) throws IOException {
+        ByteBuffer chunk = newChunk();
+        for (int i = 0, limit = values.limit(); i < limit; i++) {
+            if (chunk.remaining() < Double.BYTES) {
+                flush(channel, chunk);
+            }
+            chunk.putDouble(values.get(i));
+        }
+        flush(channel, chunk);
+    }
+
+    /**
+     * Reads exactly {@code bytes} bytes from the channel's current position.
+     */
+    static ByteBuffer read(FileChannel channel, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    static int[] readInts(FileChannel channel, int count) throws IOException {
+        int[] values = new int[count];
+        for (int i = 0; i < count; ) {
+            int batch = Math.min(count - i, CHUNK_BYTES / Integer.BYTES);
+            ByteBuffer chunk = read(channel, batch * Integer.BYTES);
+            chunk.asIntBuffer().get(values, i, batch);
+            i += batch;
+        }
+        return values;
+    }
+
+    static double[] readDoubles(FileChannel channel, int count) throws IOException {
+        double[] values = new double[count];
+        for (int i = 0; i < count; ) {
+            int batch = Math.min(count - i, CHUNK_BYTES / Double.BYTES);
+            ByteBuffer chunk = read(channel, batch * Double.BYTES);
+            chunk.asDoubleBuffer().get(values, i, batch);
+            i += batch;
+        }
+        return values;
+    }
+
+    /**
+     * Maps {@code count} ints starting at {@code offset} read-only. The region may be up to 2 GB.
+     */
+    static IntBuffer mapInts(FileChannel channel, long offset, int count) throws IOException {
+        return mapBytes(channel, offset, (long) count * Integer.BYTES).asIntBuffer();
+    }
+
+    /**
+     * Maps {@code count} doubles starting at {@code offset} read-only. The region may be up to 2 GB.
+     */
+    static DoubleBuffer mapDoubles(FileChannel channel, long offset, int count) throws IOException {
+        return mapBytes(channel, offset, (long) count * Double.BYTES).asDoubleBuffer();
+    }
+
+    static ByteBuffer mapBytes(FileChannel channel, long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Section of " + length + " bytes is too large to map");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer newChunk() {
+        return ByteBuffer.allocate(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer chunk) throws IOException {
+        chunk.flip();
+        writeFully(channel, chunk);
+        chunk.clear();
+    }
+}
@@ -0,0 +1,403 @@
+package search_methods;
+
+import java.util.*;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Exhaustive branch-and-bound over every simple path from the start city, for verifying
+ * other methods and for constrained routes: cities the route must pass through and a limit
+ * on its number of roads. On the bundled data every road is a pair of arcs, so this is the
+ * "undirected brute force" of the menu.
+ *
+ * <p>The search tree is split over a {@link ForkJoinPool}. A branch is handed off as a task
+ * of its own whenever the worker's queue runs low, so idle workers steal from busy ones
+ * throughout the search instead of only at the top levels, and each task walks its subtree
+ * with an explicit stack. All tasks share the best distance found so far as an atomic bound.
+ * A branch is cut as soon as its distance plus a lower bound on the rest reaches that bound;
+ * the lower bound is the chord distance to the end, or through the farthest must-visit city
+ * still ahead. Without constraints the bound starts at the A* distance, so the enumeration
+ * only has to prove that nothing shorter exists.
+ *
+ * <p>A search stops early when it exceeds its time or node budget; it then returns the best
+ * route found so far, which may not be the shortest, and
+ * {@link #isLastSearchExhaustive()} returns false.
+ */
+public class BruteForceRouteFinder implements RouteFinder {
+    public static final long DEFAULT_TIME_BUDGET_MILLIS = 10_000;
+    // Must-visit cities are tracked as bits of a long
+    private static final int MAX_MUST_VISIT = 64;
+    // Paths counted locally between looks at the shared budget
+    private static final int CHECK_INTERVAL = 1024;
+    // Queued tasks a worker keeps before it stops handing off branches
+    private static final int SURPLUS = 2;
+
+    private final CompiledGraph graph;
+    private final int parallelism;
+    private final long timeBudgetNanos;
+    private final long nodeBudget;
+    private final SearchStatistics statistics = new SearchStatistics();
+    private Collection<String> mustVisit = Collections.emptyList();
+    private int maxHops = Integer.MAX_VALUE;
+    private AStarRouteFinder aStar;
+    private boolean exhaustive = true;
+
+    /**
+     * Creates a finder that uses every core, with the default time budget and no node budget.
+     */
+    public BruteForceRouteFinder(CompiledGraph graph) {
+        this(graph, Runtime.getRuntime().availableProcessors(), DEFAULT_TIME_BUDGET_MILLIS, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param graph            The graph.
+     * @param parallelism      The number of worker threads.
+     * @param timeBudgetMillis How long one search may run.
+     * @param nodeBudget       How many partial paths one search may extend.
+     */
+    public BruteForceRouteFinder(CompiledGraph graph, int parallelism, long timeBudgetMillis, long nodeBudget) {
+        this.graph = graph;
+        this.parallelism = Math.max(1, parallelism);
+        this.timeBudgetNanos = Math.max(0, timeBudgetMillis) * 1_000_000L;
+        this.nodeBudget = nodeBudget;
+    }
+
+    /**
+     * Sets the cities that {@link #findRoute(String, String)} routes must pass through.
+     */
+    public void setMustVisit(Collection<String> mustVisit) {
+        this.mustVisit = new ArrayList<>(mustVisit);
+    }
+
+    /**
+     * Sets the most roads a route from {@link #findRoute(String, String)} may use.
+     */
+    public void setMaxHops(int maxHops) {
+        this.maxHops = maxHops;
+    }
+
+    @Override
+    public List<String> findRoute(String startCity, String endCity) {
+        return findRoute(startCity, endCity, mustVisit, maxHops);
+    }
+
+    /**
+     * Finds the shortest simple route that passes through every must-visit city and uses at
+     * most the given number of roads.
+     *
+     * @param startCity The starting city.
+     * @param endCity   The ending city.
+     * @param mustVisit Cities the route must include, in any order.
+     * @param maxHops   The most roads the route may use.
+     * @return The route, or null if there is none or none was found within the budget.
+     * @throws IllegalArgumentException If a must-visit city is unknown or there are more than 64.
+     */
+    public List<String> findRoute(String startCity, String endCity, Collection<String> mustVisit, int maxHops) {
+        statistics.reset();
+        exhaustive = true;
+        int start = graph.id(startCity);
+        int end = graph.id(endCity);
+        if (start < 0 || end < 0) {
+            return null;
+        }
+        int[] must = new int[mustVisit.size()];
+        int count = 0;
+        for (String city : mustVisit) {
+            int id = graph.id(city);
+            if (id < 0) {
+                throw new IllegalArgumentException("Unknown city: " + city);
+            }
+            must[count++] = id;
+        }
+        must = Arrays.stream(must).distinct().sorted().toArray();
+        if (must.length > MAX_MUST_VISIT) {
+            throw new IllegalArgumentException("At most " + MAX_MUST_VISIT + " must-visit cities are supported");
+        }
+        ConnectivityIndex connectivity = graph.connectivity();
+        for (int city : must) {
+            if (!connectivity.connected(start, city)) {
+                return null;
+            }
+        }
+        if (!connectivity.connected(start, end)) {
+            return null;
+        }
+        if (start == end) {
+            // A simple route cannot leave and come back
+            boolean onlyStart = must.length == 0 || (must.length == 1 && must[0] == start);
+            return onlyStart ? graph.toRoute(new int[] {start}, 1) : null;
+        }
+
+        Search search = new Search(start, end, must, maxHops);
+        if (must.length == 0) {
+            seed(search, startCity, endCity, maxHops);
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(search.root());
+        } finally {
+            pool.shutdown();
+        }
+
+        exhaustive = !search.stopped;
+        statistics.record(search.expanded.sum(), search.relaxed.sum(), (int) search.deepest.get(), search.forks.sum());
+        return search.bestPath == null ? null : graph.toRoute(search.bestPath, search.bestPath.length);
+    }
+
+    /**
+     * Returns false if the last search ran out of budget before it had seen every route, in
+     * which case its route may not be the shortest.
+     */
+    public boolean isLastSearchExhaustive() {
+        return exhaustive;
+    }
+
+    @Override
+    public SearchStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Starts the bound at the shortest route, which needs no enumeration to find, if it
+     * meets the hop limit.
+     */
+    private void seed(Search search, String startCity, String endCity, int maxHops) {
+        if (aStar == null) {
+            aStar = new AStarRouteFinder(graph);
+        }
+        List<String> route = aStar.findRoute(startCity, endCity);
+        if (route == null || route.size() - 1 > maxHops) {
+            return;
+        }
+        int[] path = route.stream().mapToInt(graph::id).toArray();
+        search.offer(graph.routeDistance(route), path, path.length - 1, -1);
+    }
+
+    /**
+     * The state of one query, shared by all of its tasks.
+     */
+    private final class Search {
+        final int start;
+        final int end;
+        final int[] must;
+        final long allMust;
+        final int maxHops;
+        // Lower bound from each must-visit city to the end
+        final double[] mustToEnd;
+        final long deadline;
+        final AtomicLong bound = new AtomicLong(Double.doubleToRawLongBits(Double.POSITIVE_INFINITY));
+        final AtomicLong nodes = new AtomicLong();
+        final LongAdder expanded = new LongAdder();
+        final LongAdder relaxed = new LongAdder();
+        final LongAdder forks = new LongAdder();
+        final LongAccumulator deepest = new LongAccumulator(Math::max, 0);
+        final ThreadLocal<Walk> walks;
+        volatile boolean stopped;
+        // Guarded by this
+        int[] bestPath;
+
+        Search(int start, int end, int[] must, int maxHops) {
+            this.start = start;
+            this.end = end;
+            this.must = must;
+            this.allMust = must.length == 64 ? -1L : (1L << must.length) - 1;
+            this.maxHops = maxHops;
+            this.mustToEnd = new double[must.length];
+            for (int i = 0; i < must.length; i++) {
+                mustToEnd[i] = graph.chordDistance(must[i], end);
+            }
+            this.deadline = System.nanoTime() + timeBudgetNanos;
+            this.walks = ThreadLocal.withInitial(() -> new Walk(graph.size()));
+        }
+
+        Branch root() {
+            return new Branch(null, this, new int[] {start}, 1, 0.0, mustBit(start));
+        }
+
+        long mustBit(int city) {
+            int index = Arrays.binarySearch(must, city);
+            return index >= 0 ? 1L << index : 0;
+        }
+
+        double best() {
+            return Double.longBitsToDouble(bound.get());
+        }
+
+        /**
+         * Lower bound on the rest of a route from the city, given the must-visit cities
+         * already on the path.
+         */
+        double remaining(int city, long visited) {
+            double bound = graph.chordDistance(city, end);
+            for (long unvisited = allMust & ~visited; unvisited != 0; unvisited &= unvisited - 1) {
+                int i = Long.numberOfTrailingZeros(unvisited);
+                bound = Math.max(bound, graph.chordDistance(city, must[i]) + mustToEnd[i]);
+            }
+            return bound;
+        }
+
+        /**
+         * Records a complete route, path[0..last] followed by the given city, if it is the
+         * shortest so far. A negative city means path[last] already is the end.
+         */
+        synchronized void offer(double distance, int[] path, int last, int endCity) {
+            if (distance >= best()) {
+                return;
+            }
+            int[] route = Arrays.copyOf(path, last + (endCity >= 0 ? 2 : 1));
+            if (endCity >= 0) {
+                route[last + 1] = endCity;
+            }
+            bestPath = route;
+            bound.set(Double.doubleToRawLongBits(distance));
+        }
+
+        /**
+         * Adds a worker's count of extended paths to the total and stops the search if the
+         * budget is spent.
+         */
+        void charge(long count) {
+            if (nodes.addAndGet(count) > nodeBudget || System.nanoTime() - deadline > 0) {
+                stopped = true;
+            }
+        }
+    }
+
+    /**
+     * One worker's stack for walking a subtree, reused by every task the worker runs. A task
+     * never waits for another, so it always finishes its walk before its worker takes on a
+     * different task.
+     */
+    private static final class Walk {
+        final boolean[] onPath;
+        int[] path = new int[64];
+        int[] cursors = new int[64];
+        double[] costs = new double[64];
+        long[] visited = new long[64];
+
+        Walk(int size) {
+            onPath = new boolean[size];
+        }
+
+        void ensure(int depth) {
+            if (depth >= path.length) {
+                int capacity = Math.max(depth + 1, 2 * path.length);
+                path = Arrays.copyOf(path, capacity);
+                cursors = Arrays.copyOf(cursors, capacity);
+                costs = Arrays.copyOf(costs, capacity);
+                visited = Arrays.copyOf(visited, capacity);
+            }
+        }
+    }
+
+    /**
+     * The subtree of simple paths that start with a given prefix.
+     */
+    private final class Branch extends CountedCompleter<Void> {
+        // Tasks are never serialized; this only satisfies ForkJoinTask being Serializable
+        private static final long serialVersionUID = 1L;
+
+        private final Search search;
+        private final int[] prefix;
+        private final int length;
+        private final double cost;
+        private final long visited;
+
+        Branch(Branch parent, Search search, int[] prefix, int length, double cost, long visited) {
+            super(parent);
+            this.search = search;
+            this.prefix = prefix;
+            this.length = length;
+            this.cost = cost;
+            this.visited = visited;
+        }
+
+        @Override
+        public void compute() {
+            Search s = search;
+            Walk walk = s.walks.get();
+            walk.ensure(length);
+            int[] path = walk.path;
+            System.arraycopy(prefix, 0, path, 0, length);
+            for (int i = 0; i < length; i++) {
+                walk.onPath[path[i]] = true;
+            }
+            int base = length - 1;
+            int depth = base;
+            walk.cursors[depth] = graph.firstEdge(path[depth]);
+            walk.costs[depth] = cost;
+            walk.visited[depth] = visited;
+
+            long expanded = 0;
+            long relaxed = 0;
+            long sinceCheck = 0;
+            int deepest = depth;
+            while (depth >= base && !s.stopped) {
+                int city = path[depth];
+                int e = walk.cursors[depth];
+                if (e >= graph.lastEdge(city)) {
+                    walk.onPath[city] = false;
+                    depth--;
+                    continue;
+                }
+                walk.cursors[depth] = e + 1;
+                int next = graph.target(e);
+                relaxed++;
+                if (walk.onPath[next]) {
+                    continue;
+                }
+                double nextCost = walk.costs[depth] + graph.weight(e);
+                long nextVisited = walk.visited[depth] | s.mustBit(next);
+                int hops = depth + 1;
+                if (next == s.end) {
+                    if (hops <= s.maxHops && nextVisited == s.allMust && nextCost < s.best()) {
+                        s.offer(nextCost, path, depth, next);
+                    }
+                    continue;
+                }
+                // Room is needed for every must-visit city still ahead and the last road
+                int stillAhead = Long.bitCount(s.allMust & ~nextVisited);
+                if ((long) hops + stillAhead + 1 > s.maxHops
+                        || nextCost + s.remaining(next, nextVisited) >= s.best()) {
+                    continue;
+                }
+
+                expanded++;
+                if (++sinceCheck == CHECK_INTERVAL) {
+                    s.charge(sinceCheck);
+                    sinceCheck = 0;
+                }
+                if (getSurplusQueuedTaskCount() <= SURPLUS) {
+                    int[] childPrefix = Arrays.copyOf(path, depth + 2);
+                    childPrefix[depth + 1] = next;
+                    addToPendingCount(1);
+                    s.forks.increment();
+                    new Branch(this, s, childPrefix, depth + 2, nextCost, nextVisited).fork();
+                    continue;
+                }
+                depth++;
+                walk.ensure(depth);
+                path = walk.path;
+                path[depth] = next;
+                walk.onPath[next] = true;
+                walk.cursors[depth] = graph.firstEdge(next);
+                walk.costs[depth] = nextCost;
+                walk.visited[depth] = nextVisited;
+                deepest = Math.max(deepest, depth);
+            }
+
+            // Clears the prefix, and the rest of the stack if the budget ran out
+            for (int i = 0; i <= depth; i++) {
+                walk.onPath[path[i]] = false;
+            }
+            s.charge(sinceCheck);
+            s.expanded.add(expanded);
+            s.relaxed.add(relaxed);
+            s.deepest.accumulate(deepest + 1);
+            tryComplete();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package search_methods;
+
+import java.util.List;
+
+/**
+ * A {@link RouteFinder} that answers from a {@link RouteCache} and only searches on a miss. The
+ * cache may be shared between threads, but each thread still needs its own delegate.
+ */
+public final class CachingRouteFinder implements RouteFinder {
+    private final RouteFinder delegate;
+    private final CompiledGraph graph;
+    private final SearchMethod method;
+    private final RouteCache cache;
+
+    /**
+     * @param delegate Computes routes on a miss.
+     * @param graph    The graph the delegate searches.
+     * @param method   The method the delegate implements, which keys its routes in the cache.
+     * @param cache    The cache, possibly shared with other finders.
+     */
+    public CachingRouteFinder(RouteFinder delegate, CompiledGraph graph, SearchMethod method, RouteCache cache) {
+        this.delegate = delegate;
+        this.graph = graph;
+        this.method = method;
+        this.cache = cache;
+    }
+
+    /**
+     * {@inheritDoc} The returned list is unmodifiable.
+     */
+    @Override
+    public List<String> findRoute(String startCity, String endCity) {
+        return cache.findRoute(startCity, endCity, method, graph, delegate);
+    }
+}
@@ -0,0 +1,150 @@
+package search_methods;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The id dictionary of a {@link CompiledGraph}. Graphs built in memory keep their names as
+ * Strings in a HashMap; graphs mapped from a {@link GraphSnapshot} look names up in the snapshot's
+ * open-addressing table and decode them from the mapped UTF-8 bytes on demand.
+ */
+abstract class CityNames {
+    abstract int size();
+
+    abstract String name(int city);
+
+    /**
+     * Returns the id of the city, or -1 if it is not in the dictionary.
+     */
+    abstract int id(String city);
+
+    static CityNames of(String[] names) {
+        return new HeapNames(names);
+    }
+
+    /**
+     * Wraps the name section of a snapshot.
+     *
+     * @param bytes   The UTF-8 bytes of every name, back to back.
+     * @param offsets Byte offsets of the names, of length {@code size + 1}.
+     * @param slots   Open-addressing table of {@code id + 1} indexed by {@link #hash(byte[])}
+     *                with linear probing, 0 for an empty slot; its length is a power of two.
+     */
+    static CityNames mapped(ByteBuffer bytes, IntBuffer offsets, IntBuffer slots) {
+        return new MappedNames(bytes, offsets, slots);
+    }
+
+    /**
+     * The 32-bit FNV-1a hash of a name's UTF-8 bytes, which the snapshot table is keyed by.
+     */
+    static int hash(byte[] utf8) {
+        int hash = 0x811C9DC5;
+        for (byte b : utf8) {
+            hash = (hash ^ (b & 0xFF)) * 0x01000193;
+        }
+        return hash;
+    }
+
+    /**
+     * Builds the open-addressing table described in {@link #mapped(ByteBuffer, IntBuffer, IntBuffer)}.
+     */
+    static int[] buildSlots(byte[][] utf8Names) {
+        int capacity = Integer.highestOneBit(Math.max(2, utf8Names.length * 2 - 1)) << 1;
+        int[] slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < utf8Names.length; id++) {
+            int slot = hash(utf8Names[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+        return slots;
+    }
+
+    private static final class HeapNames extends CityNames {
+        private final String[] names;
+        private final Map<String, Integer> ids;
+
+        HeapNames(String[] names) {
+            this.names = names;
+            this.ids = new HashMap<>(names.length * 2);
+            for (int i = 0; i < names.length; i++) {
+                ids.put(names[i], i);
+            }
+        }
+
+        @Override
+        int size() {
+            return names.length;
+        }
+
+        @Override
+        String name(int city) {
+            return names[city];
+        }
+
+        @Override
+        int id(String city) {
+            Integer id = ids.get(city);
+            return id != null ? id : -1;
+        }
+    }
+
+    private static final class MappedNames extends CityNames {
+        private final ByteBuffer bytes;
+        private final IntBuffer offsets;
+        private final IntBuffer slots;
+
+        MappedNames(ByteBuffer bytes, IntBuffer offsets, IntBuffer slots) {
+            this.bytes = bytes;
+            this.offsets = offsets;
+            this.slots = slots;
+        }
+
+        @Override
+        int size() {
+            return offsets.limit() - 1;
+        }
+
+        @Override
+        String name(int city) {
+            int start = offsets.get(city);
+            byte[] utf8 = new byte[offsets.get(city + 1) - start];
+            for (int i = 0; i < utf8.length; i++) {
+                utf8[i] = bytes.get(start + i);
+            }
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        int id(String city) {
+            byte[] utf8 = city.getBytes(StandardCharsets.UTF_8);
+            int mask = slots.limit() - 1;
+            for (int slot = hash(utf8) & mask; ; slot = (slot + 1) & mask) {
+                int id = slots.get(slot) - 1;
+                if (id < 0) {
+                    return -1;
+                }
+                if (matches(id, utf8)) {
+                    return id;
+                }
+            }
+        }
+
+        private boolean matches(int id, byte[] utf8) {
+            int start = offsets.get(id);
+            if (offsets.get(id + 1) - start != utf8.length) {
+                return false;
+            }
+            for (int i = 0; i < utf8.length; i++) {
+                if (bytes.get(start + i) != utf8[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,550 @@
+package search_methods;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.*;
+
+/**
+ * An immutable road graph with city names interned to dense int ids.
+ * Adjacency is stored in compressed sparse row form: the arcs leaving city
+ * {@code v} are {@code firstEdge(v)} (inclusive) to {@code lastEdge(v)} (exclusive),
+ * and each arc carries its target and its precomputed Haversine length.
+ * Coordinates live in parallel arrays; cities without coordinates hold NaN.
+ *
+ * <p>All arrays are held as NIO buffers, which wrap heap arrays for graphs built in memory and
+ * point into the page cache for graphs mapped from a {@link GraphSnapshot}. They are only read
+ * with absolute gets, so a graph can be shared between threads either way.
+ */
+public final class CompiledGraph {
+    static final double EARTH_RADIUS_KM = 6371; // Radius of the Earth in kilometers
+
+    private final CityNames names;
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+    private final DoubleBuffer weights;
+    private final DoubleBuffer latitudes;
+    private final DoubleBuffer longitudes;
+    // Per-city trigonometry computed once at construction
+    private final DoubleBuffer latitudeRadians;
+    private final DoubleBuffer longitudeRadians;
+    private final DoubleBuffer cosLatitudes;
+    private final DoubleBuffer unitX;
+    private final DoubleBuffer unitY;
+    private final DoubleBuffer unitZ;
+    private volatile CompiledGraph transpose;
+    private volatile ConnectivityIndex connectivity;
+
+    /**
+     * Creates a graph from already laid out CSR arrays. Arc weights are computed here
+     * from the coordinates, so callers only supply the topology.
+     *
+     * @param names      City names indexed by id.
+     * @param offsets    Arc offsets, of length {@code names.length + 1}.
+     * @param targets    Arc targets.
+     * @param latitudes  Latitudes indexed by id, NaN when unknown.
+     * @param longitudes Longitudes indexed by id, NaN when unknown.
+     */
+    CompiledGraph(String[] names, int[] offsets, int[] targets, double[] latitudes, double[] longitudes) {
+        int size = names.length;
+        double[] latitudeRadians = new double[size];
+        double[] longitudeRadians = new double[size];
+        double[] cosLatitudes = new double[size];
+        double[] unitX = new double[size];
+        double[] unitY = new double[size];
+        double[] unitZ = new double[size];
+        for (int v = 0; v < size; v++) {
+            double lat = Math.toRadians(latitudes[v]);
+            double lon = Math.toRadians(longitudes[v]);
+            latitudeRadians[v] = lat;
+            longitudeRadians[v] = lon;
+            cosLatitudes[v] = Math.cos(lat);
+            unitX[v] = cosLatitudes[v] * Math.cos(lon);
+            unitY[v] = cosLatitudes[v] * Math.sin(lon);
+            unitZ[v] = Math.sin(lat);
+        }
+
+        this.names = CityNames.of(names);
+        this.offsets = IntBuffer.wrap(offsets);
+        this.targets = IntBuffer.wrap(targets);
+        this.latitudes = DoubleBuffer.wrap(latitudes);
+        this.longitudes = DoubleBuffer.wrap(longitudes);
+        this.latitudeRadians = DoubleBuffer.wrap(latitudeRadians);
+        this.longitudeRadians = DoubleBuffer.wrap(longitudeRadians);
+        this.cosLatitudes = DoubleBuffer.wrap(cosLatitudes);
+        this.unitX = DoubleBuffer.wrap(unitX);
+        this.unitY = DoubleBuffer.wrap(unitY);
+        this.unitZ = DoubleBuffer.wrap(unitZ);
+
+        double[] weights = new double[targets.length];
+        for (int v = 0; v < size; v++) {
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                weights[e] = arcLength(v, targets[e]);
+            }
+        }
+        this.weights = DoubleBuffer.wrap(weights);
+    }
+
+    /**
+     * Creates a graph over storage that is already complete, such as a mapped snapshot.
+     */
+    CompiledGraph(CityNames names, IntBuffer offsets, IntBuffer targets, DoubleBuffer weights,
+                  DoubleBuffer latitudes, DoubleBuffer longitudes,
+                  DoubleBuffer latitudeRadians, DoubleBuffer longitudeRadians, DoubleBuffer cosLatitudes,
+                  DoubleBuffer unitX, DoubleBuffer unitY, DoubleBuffer unitZ) {
+        this.names = names;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.latitudeRadians = latitudeRadians;
+        this.longitudeRadians = longitudeRadians;
+        this.cosLatitudes = cosLatitudes;
+        this.unitX = unitX;
+        this.unitY = unitY;
+        this.unitZ = unitZ;
+    }
+
+    /**
+     * Creates a graph over the same cities as {@code source} with different arcs.
+     */
+    private CompiledGraph(CompiledGraph source, int[] offsets, int[] targets, double[] weights) {
+        this.names = source.names;
+        this.offsets = IntBuffer.wrap(offsets);
+        this.targets = IntBuffer.wrap(targets);
+        this.weights = DoubleBuffer.wrap(weights);
+        this.latitudes = source.latitudes;
+        this.longitudes = source.longitudes;
+        this.latitudeRadians = source.latitudeRadians;
+        this.longitudeRadians = source.longitudeRadians;
+        this.cosLatitudes = source.cosLatitudes;
+        this.unitX = source.unitX;
+        this.unitY = source.unitY;
+        this.unitZ = source.unitZ;
+    }
+
+    /**
+     * Compiles an adjacency list and a city map. {@link GraphLoader} reads the data files directly.
+     * Neighbor order is preserved, so the finders visit cities in the same order as before.
+     *
+     * @param adjacencyList A map representing the adjacency list of cities.
+     * @param cities        A map representing city data including coordinates.
+     * @return The compiled graph.
+     */
+    public static CompiledGraph compile(Map<String, List<String>> adjacencyList, Map<String, City> cities) {
+        Map<String, Integer> interned = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : adjacencyList.entrySet()) {
+            interned.putIfAbsent(entry.getKey(), interned.size());
+            for (String neighbor : entry.getValue()) {
+                interned.putIfAbsent(neighbor, interned.size());
+            }
+        }
+        for (String city : cities.keySet()) {
+            interned.putIfAbsent(city, interned.size());
+        }
+
+        int size = interned.size();
+        String[] names = interned.keySet().toArray(new String[0]);
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        int[] offsets = new int[size + 1];
+
+        for (int v = 0; v < size; v++) {
+            City city = cities.get(names[v]);
+            latitudes[v] = city != null ? city.getLatitude() : Double.NaN;
+            longitudes[v] = city != null ? city.getLongitude() : Double.NaN;
+            List<String> neighbors = adjacencyList.get(names[v]);
+            offsets[v + 1] = offsets[v] + (neighbors != null ? neighbors.size() : 0);
+        }
+
+        int[] targets = new int[offsets[size]];
+        for (int v = 0; v < size; v++) {
+            List<String> neighbors = adjacencyList.get(names[v]);
+            if (neighbors != null) {
+                int e = offsets[v];
+                for (String neighbor : neighbors) {
+                    targets[e++] = interned.get(neighbor);
+                }
+            }
+        }
+
+        return new CompiledGraph(names, offsets, targets, latitudes, longitudes);
+    }
+
+    /**
+     * Builds a graph from an edge list. Arcs leaving a city keep the order in which their
+     * edges appear in the list.
+     *
+     * @param names         City names indexed by id.
+     * @param latitudes     Latitudes indexed by id, NaN when unknown.
+     * @param longitudes    Longitudes indexed by id, NaN when unknown.
+     * @param from          Edge sources.
+     * @param to            Edge targets.
+     * @param edgeCount     The number of valid entries in {@code from} and {@code to}.
+     * @param bidirectional Whether each edge also adds the reverse arc.
+     * @return The compiled graph.
+     */
+    static CompiledGraph fromEdgeList(String[] names, double[] latitudes, double[] longitudes,
+                                      int[] from, int[] to, int edgeCount, boolean bidirectional) {
+        int size = names.length;
+        int[] offsets = new int[size + 1];
+        for (int i = 0; i < edgeCount; i++) {
+            offsets[from[i] + 1]++;
+            if (bidirectional) {
+                offsets[to[i] + 1]++;
+            }
+        }
+        for (int v = 0; v < size; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+
+        int[] targets = new int[offsets[size]];
+        int[] cursor = Arrays.copyOf(offsets, size);
+        for (int i = 0; i < edgeCount; i++) {
+            targets[cursor[from[i]]++] = to[i];
+            if (bidirectional) {
+                targets[cursor[to[i]]++] = from[i];
+            }
+        }
+
+        return new CompiledGraph(names, offsets, targets, latitudes, longitudes);
+    }
+
+    /**
+     * Returns a graph over the same cities with the given arcs, which {@link DynamicGraph} uses
+     * to publish a new version without copying the per-city tables.
+     */
+    CompiledGraph withArcs(int[] offsets, int[] targets, double[] weights) {
+        return new CompiledGraph(this, offsets, targets, weights);
+    }
+
+    /**
+     * Returns the graph with city {@code order[i]} renumbered to id {@code i}. Every per-city
+     * table and the arcs are laid out in the new order, and each city keeps its arcs in their
+     * old order. {@link GraphOrdering} chooses orders and checks that they are permutations.
+     */
+    CompiledGraph renumber(int[] order) {
+        int size = size();
+        int[] newIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            newIds[order[i]] = i;
+        }
+        String[] newNames = new String[size];
+        int[] newOffsets = new int[size + 1];
+        int[] newTargets = new int[edgeCount()];
+        double[] newWeights = new double[newTargets.length];
+        for (int i = 0; i < size; i++) {
+            int v = order[i];
+            newNames[i] = name(v);
+            int e = newOffsets[i];
+            for (int old = offsets.get(v), last = offsets.get(v + 1); old < last; old++, e++) {
+                newTargets[e] = newIds[targets.get(old)];
+                newWeights[e] = weights.get(old);
+            }
+            newOffsets[i + 1] = e;
+        }
+        return new CompiledGraph(CityNames.of(newNames), IntBuffer.wrap(newOffsets), IntBuffer.wrap(newTargets),
+                DoubleBuffer.wrap(newWeights), permute(latitudes, order), permute(longitudes, order),
+                permute(latitudeRadians, order), permute(longitudeRadians, order), permute(cosLatitudes, order),
+                permute(unitX, order), permute(unitY, order), permute(unitZ, order));
+    }
+
+    private static DoubleBuffer permute(DoubleBuffer values, int[] order) {
+        double[] result = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            result[i] = values.get(order[i]);
+        }
+        return DoubleBuffer.wrap(result);
+    }
+
+    /**
+     * Returns the graph with every arc reversed, built on first use and shared afterwards.
+     * Backward searches walk it to follow arcs into a city.
+     */
+    public CompiledGraph transpose() {
+        CompiledGraph result = transpose;
+        if (result == null) {
+            synchronized (this) {
+                result = transpose;
+                if (result == null) {
+                    result = buildTranspose();
+                    result.transpose = this;
+                    transpose = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the graph's connected components, found on first use and shared afterwards.
+     */
+    public ConnectivityIndex connectivity() {
+        ConnectivityIndex result = connectivity;
+        if (result == null) {
+            synchronized (this) {
+                result = connectivity;
+                if (result == null) {
+                    result = ConnectivityIndex.build(this);
+                    connectivity = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the connected components if they have been found, or null.
+     */
+    ConnectivityIndex connectivityIfBuilt() {
+        return connectivity;
+    }
+
+    /**
+     * Installs components derived from an earlier version of the graph.
+     */
+    void setConnectivity(ConnectivityIndex connectivity) {
+        this.connectivity = connectivity;
+    }
+
+    private CompiledGraph buildTranspose() {
+        int size = size();
+        int arcCount = edgeCount();
+        int[] reverseOffsets = new int[size + 1];
+        for (int e = 0; e < arcCount; e++) {
+            reverseOffsets[targets.get(e) + 1]++;
+        }
+        for (int v = 0; v < size; v++) {
+            reverseOffsets[v + 1] += reverseOffsets[v];
+        }
+
+        int[] reverseTargets = new int[arcCount];
+        double[] reverseWeights = new double[arcCount];
+        int[] cursor = Arrays.copyOf(reverseOffsets, size);
+        for (int v = 0; v < size; v++) {
+            for (int e = offsets.get(v), last = offsets.get(v + 1); e < last; e++) {
+                int slot = cursor[targets.get(e)]++;
+                reverseTargets[slot] = v;
+                reverseWeights[slot] = weights.get(e);
+            }
+        }
+        return new CompiledGraph(this, reverseOffsets, reverseTargets, reverseWeights);
+    }
+
+    /**
+     * Returns the number of cities in the graph.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Returns the number of directed arcs in the graph.
+     */
+    public int edgeCount() {
+        return targets.limit();
+    }
+
+    /**
+     * Returns the id of the given city, or -1 if it is not in the graph.
+     */
+    public int id(String city) {
+        return names.id(city);
+    }
+
+    public String name(int city) {
+        return names.name(city);
+    }
+
+    public int firstEdge(int city) {
+        return offsets.get(city);
+    }
+
+    public int lastEdge(int city) {
+        return offsets.get(city + 1);
+    }
+
+    public int degree(int city) {
+        return offsets.get(city + 1) - offsets.get(city);
+    }
+
+    public int target(int edge) {
+        return targets.get(edge);
+    }
+
+    public double weight(int edge) {
+        return weights.get(edge);
+    }
+
+    public double latitude(int city) {
+        return latitudes.get(city);
+    }
+
+    public double longitude(int city) {
+        return longitudes.get(city);
+    }
+
+    public boolean hasCoordinates(int city) {
+        return !Double.isNaN(latitudes.get(city)) && !Double.isNaN(longitudes.get(city));
+    }
+
+    /**
+     * Returns the arc from one city to another, or -1 if they are not adjacent.
+     */
+    public int edge(int from, int to) {
+        for (int e = offsets.get(from), last = offsets.get(from + 1); e < last; e++) {
+            if (targets.get(e) == to) {
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the lightest arc from one city to another, which is the one a search takes when
+     * there are parallel roads, or -1 if they are not adjacent.
+     */
+    public int lightestEdge(int from, int to) {
+        int lightest = -1;
+        for (int e = offsets.get(from), last = offsets.get(from + 1); e < last; e++) {
+            if (targets.get(e) == to && (lightest < 0 || weights.get(e) < weights.get(lightest))) {
+                lightest = e;
+            }
+        }
+        return lightest;
+    }
+
+    /**
+     * Calculates the great-circle distance between two cities, or 0 if either has no coordinates.
+     */
+    public double distance(int from, int to) {
+        if (!hasCoordinates(from) || !hasCoordinates(to)) {
+            return 0.0;
+        }
+        return greatCircle(from, to);
+    }
+
+    /**
+     * Calculates the straight-line distance through the Earth between two cities, or 0 if either
+     * has no coordinates. A chord is never longer than the great-circle arc it spans, so this is
+     * a lower bound on any road distance, and it needs no trigonometry.
+     */
+    public double chordDistance(int from, int to) {
+        if (!hasCoordinates(from) || !hasCoordinates(to)) {
+            return 0.0;
+        }
+        double dx = unitX.get(from) - unitX.get(to);
+        double dy = unitY.get(from) - unitY.get(to);
+        double dz = unitZ.get(from) - unitZ.get(to);
+        return EARTH_RADIUS_KM * Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Calculates the distance along a route using the precomputed edge lengths. Legs touching a
+     * city without coordinates are skipped; legs between non-adjacent cities use the great circle.
+     *
+     * @param route The city names, from start to end.
+     * @return The total distance in kilometers.
+     */
+    public double routeDistance(List<String> route) {
+        double totalDistance = 0.0;
+        for (int i = 0; i < route.size() - 1; i++) {
+            int current = id(route.get(i));
+            int next = id(route.get(i + 1));
+            if (current < 0 || next < 0 || !hasCoordinates(current) || !hasCoordinates(next)) {
+                continue;
+            }
+            int e = edge(current, next);
+            totalDistance += e >= 0 ? weights.get(e) : greatCircle(current, next);
+        }
+        return totalDistance;
+    }
+
+    /**
+     * Returns the cost of a route as the searches see it: the sum of the lightest arc weights
+     * between consecutive cities. A leg touching a city without coordinates costs
+     * {@link Double#MAX_VALUE}, which swallows the rest of the sum, and a leg between cities
+     * that are not adjacent is infinite.
+     *
+     * @param route The city names, from start to end.
+     */
+    public double routeWeight(List<String> route) {
+        double total = 0.0;
+        for (int i = 0; i < route.size() - 1; i++) {
+            int current = id(route.get(i));
+            int next = id(route.get(i + 1));
+            int e = current >= 0 && next >= 0 ? lightestEdge(current, next) : -1;
+            if (e < 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+            total += weights.get(e);
+        }
+        return total;
+    }
+
+    /**
+     * Converts a path of city ids into the list of city names returned by the finders.
+     *
+     * @param path   The city ids, from start to end.
+     * @param length The number of valid entries in {@code path}.
+     * @return A list of city names.
+     */
+    List<String> toRoute(int[] path, int length) {
+        List<String> route = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            route.add(names.name(path[i]));
+        }
+        return route;
+    }
+
+    // Storage views written out by GraphSnapshot
+
+    CityNames cityNames() {
+        return names;
+    }
+
+    IntBuffer offsetBuffer() {
+        return offsets;
+    }
+
+    IntBuffer targetBuffer() {
+        return targets;
+    }
+
+    DoubleBuffer weightBuffer() {
+        return weights;
+    }
+
+    /**
+     * Returns the per-city coordinate buffers in snapshot order: latitudes, longitudes, their
+     * radians, cosines of the latitudes and the unit-sphere x, y and z.
+     */
+    DoubleBuffer[] cityBuffers() {
+        return new DoubleBuffer[] {
+            latitudes, longitudes, latitudeRadians, longitudeRadians, cosLatitudes, unitX, unitY, unitZ
+        };
+    }
+
+    /**
+     * Returns the length the graph gives an arc between two cities: the great circle, or
+     * {@code Double.MAX_VALUE} if either city has no coordinates.
+     */
+    double arcLength(int from, int to) {
+        if (!hasCoordinates(from) || !hasCoordinates(to)) {
+            return Double.MAX_VALUE; // Return a very large value if coordinates are missing
+        }
+        return greatCircle(from, to);
+    }
+
+    /**
+     * The Haversine formula on the precomputed radians and cosines.
+     */
+    private double greatCircle(int from, int to) {
+        double sinHalfLat = Math.sin((latitudeRadians.get(to) - latitudeRadians.get(from)) / 2);
+        double sinHalfLon = Math.sin((longitudeRadians.get(to) - longitudeRadians.get(from)) / 2);
+        double a = sinHalfLat * sinHalfLat +
+                   cosLatitudes.get(from) * cosLatitudes.get(to) * sinHalfLon * sinHalfLon;
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        return EARTH_RADIUS_KM * c;
+    }
+}
@@ -0,0 +1,326 @@
+package search_methods;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * The connected components of a graph, ignoring arc direction, so that a finder can answer
+ * "no route" between cities in different components without searching. Components are found
+ * with a union-find over every arc and then numbered densely, so a lookup is one array read.
+ * Each graph builds its index on first use through {@link CompiledGraph#connectivity()};
+ * {@link GraphLoader} does so at load time.
+ *
+ * <p>On a directed graph two cities in one component may still have no route between them,
+ * so the index only ever rules routes out. {@link DynamicGraph} updates it for added roads
+ * and cities by merging components, without rescanning the graph; after a road is removed
+ * the new version builds its own index, since a component may have split.
+ *
+ * <p>For diagnostics the index also finds, on first request, the articulation points (cities
+ * whose removal would split their component) and the number of biconnected components,
+ * with an iterative Hopcroft-Tarjan search.
+ */
+public final class ConnectivityIndex {
+    private final CompiledGraph graph;
+    // Component of every city, numbered from 0 in order of each component's lowest city id
+    private final int[] components;
+    private final int[] componentSizes;
+    private volatile Articulation articulation;
+
+    private ConnectivityIndex(CompiledGraph graph, int[] components, int[] componentSizes) {
+        this.graph = graph;
+        this.components = components;
+        this.componentSizes = componentSizes;
+    }
+
+    /**
+     * Finds the components of the graph.
+     */
+    static ConnectivityIndex build(CompiledGraph graph) {
+        int size = graph.size();
+        int[] parents = new int[size];
+        for (int v = 0; v < size; v++) {
+            parents[v] = v;
+        }
+        for (int v = 0; v < size; v++) {
+            for (int e = graph.firstEdge(v), last = graph.lastEdge(v); e < last; e++) {
+                union(parents, v, graph.target(e));
+            }
+        }
+        int[] roots = new int[size];
+        for (int v = 0; v < size; v++) {
+            roots[v] = find(parents, v);
+        }
+        return label(graph, roots, size);
+    }
+
+    /**
+     * Returns the index for the next version of the graph by merging the components joined by
+     * added arcs, or null if an arc was removed and the graph needs an index of its own.
+     */
+    ConnectivityIndex update(CompiledGraph next, DynamicGraph.Changes changes) {
+        for (int i = 0; i < changes.size(); i++) {
+            if (changes.newWeight(i) == Double.POSITIVE_INFINITY) {
+                return null;
+            }
+        }
+        int oldSize = components.length;
+        int size = next.size();
+        int count = componentSizes.length + size - oldSize;
+        int[] parents = new int[count];
+        for (int c = 0; c < count; c++) {
+            parents[c] = c;
+        }
+        boolean merged = false;
+        for (int i = 0; i < changes.size(); i++) {
+            if (changes.oldWeight(i) == Double.POSITIVE_INFINITY && changes.newWeight(i) != Double.POSITIVE_INFINITY) {
+                merged |= union(parents, component(changes.from(i), oldSize), component(changes.to(i), oldSize));
+            }
+        }
+        if (!merged && size == oldSize) {
+            return new ConnectivityIndex(next, components, componentSizes);
+        }
+
+        // New cities start as components of their own, numbered after the old ones
+        int[] roots = new int[size];
+        for (int v = 0; v < size; v++) {
+            roots[v] = find(parents, component(v, oldSize));
+        }
+        return label(next, roots, count);
+    }
+
+    private int component(int city, int oldSize) {
+        return city < oldSize ? components[city] : componentSizes.length + city - oldSize;
+    }
+
+    /**
+     * Numbers the distinct roots densely in order of first appearance.
+     */
+    private static ConnectivityIndex label(CompiledGraph graph, int[] roots, int rootCount) {
+        int[] labels = new int[rootCount];
+        Arrays.fill(labels, -1);
+        int count = 0;
+        int[] components = new int[roots.length];
+        for (int v = 0; v < roots.length; v++) {
+            int root = roots[v];
+            if (labels[root] < 0) {
+                labels[root] = count++;
+            }
+            components[v] = labels[root];
+        }
+        int[] sizes = new int[count];
+        for (int component : components) {
+            sizes[component]++;
+        }
+        return new ConnectivityIndex(graph, components, sizes);
+    }
+
+    private static int find(int[] parents, int v) {
+        while (parents[v] != v) {
+            parents[v] = parents[parents[v]];
+            v = parents[v];
+        }
+        return v;
+    }
+
+    /**
+     * Joins the sets of two elements under the lower root, returning false if they were
+     * already one set. Together with path halving this keeps the trees shallow.
+     */
+    private static boolean union(int[] parents, int a, int b) {
+        int rootA = find(parents, a);
+        int rootB = find(parents, b);
+        if (rootA == rootB) {
+            return false;
+        }
+        if (rootA < rootB) {
+            parents[rootB] = rootA;
+        } else {
+            parents[rootA] = rootB;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the graph this index describes.
+     */
+    public CompiledGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Returns the component of a city.
+     */
+    public int component(int city) {
+        return components[city];
+    }
+
+    /**
+     * Returns false if no route can exist between the two cities.
+     */
+    public boolean connected(int from, int to) {
+        return components[from] == components[to];
+    }
+
+    public int componentCount() {
+        return componentSizes.length;
+    }
+
+    /**
+     * Returns the number of cities in the city's component.
+     */
+    public int componentSize(int city) {
+        return componentSizes[components[city]];
+    }
+
+    /**
+     * Returns the cities whose removal would leave their component in pieces, in id order.
+     */
+    public int[] articulationPoints() {
+        return articulation().points.clone();
+    }
+
+    public boolean isArticulationPoint(int city) {
+        return Arrays.binarySearch(articulation().points, city) >= 0;
+    }
+
+    /**
+     * Returns the number of biconnected components: maximal sets of roads in which every two
+     * roads lie on a common cycle, or a single road that is a bridge.
+     */
+    public int biconnectedComponentCount() {
+        return articulation().blocks;
+    }
+
+    private Articulation articulation() {
+        Articulation result = articulation;
+        if (result == null) {
+            synchronized (this) {
+                result = articulation;
+                if (result == null) {
+                    result = new Articulation(graph);
+                    articulation = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Articulation points and biconnected component count from a depth-first search that
+     * treats every arc as a road in both directions. The search keeps its own stack, with a
+     * cursor per city over its outgoing then its incoming arcs, so deep graphs cannot
+     * overflow the call stack.
+     */
+    private static final class Articulation {
+        final int[] points;
+        final int blocks;
+
+        Articulation(CompiledGraph graph) {
+            CompiledGraph transpose = graph.transpose();
+            int size = graph.size();
+            int[] discovered = new int[size];
+            int[] low = new int[size];
+            int[] parents = new int[size];
+            int[] cursors = new int[size];
+            int[] stack = new int[size];
+            boolean[] isPoint = new boolean[size];
+            int time = 0;
+            int blockCount = 0;
+
+            for (int root = 0; root < size; root++) {
+                if (discovered[root] != 0) {
+                    continue;
+                }
+                discovered[root] = low[root] = ++time;
+                parents[root] = -1;
+                int depth = 0;
+                stack[depth++] = root;
+                int rootChildren = 0;
+                while (depth > 0) {
+                    int city = stack[depth - 1];
+                    int outDegree = graph.degree(city);
+                    int cursor = cursors[city];
+                    if (cursor < outDegree + transpose.degree(city)) {
+                        cursors[city]++;
+                        int neighbor = cursor < outDegree
+                                ? graph.target(graph.firstEdge(city) + cursor)
+                                : transpose.target(transpose.firstEdge(city) + cursor - outDegree);
+                        if (neighbor == city) {
+                            continue;
+                        }
+                        if (discovered[neighbor] == 0) {
+                            discovered[neighbor] = low[neighbor] = ++time;
+                            parents[neighbor] = city;
+                            stack[depth++] = neighbor;
+                            if (city == root) {
+                                rootChildren++;
+                            }
+                        } else if (neighbor != parents[city]) {
+                            low[city] = Math.min(low[city], discovered[neighbor]);
+                        }
+                        continue;
+                    }
+
+                    depth--;
+                    int parent = parents[city];
+                    if (parent >= 0) {
+                        low[parent] = Math.min(low[parent], low[city]);
+                        if (low[city] >= discovered[parent]) {
+                            blockCount++;
+                            if (parent != root) {
+                                isPoint[parent] = true;
+                            }
+                        }
+                    }
+                }
+                if (rootChildren > 1) {
+                    isPoint[root] = true;
+                }
+            }
+
+            int count = 0;
+            for (boolean point : isPoint) {
+                if (point) {
+                    count++;
+                }
+            }
+            points = new int[count];
+            for (int v = 0, i = 0; v < size; v++) {
+                if (isPoint[v]) {
+                    points[i++] = v;
+                }
+            }
+            blocks = blockCount;
+        }
+    }
+
+    /**
+     * Usage: {@code ConnectivityIndex <adjacency file> <coordinates file>}. Prints the
+     * components with their sizes and the articulation points.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: ConnectivityIndex <adjacency file> <coordinates file>");
+            return;
+        }
+        CompiledGraph graph = GraphLoader.load(Paths.get(args[0]), Paths.get(args[1]));
+        ConnectivityIndex index = graph.connectivity();
+        System.out.printf("%d cities in %d components%n", graph.size(), index.componentCount());
+        int[] first = new int[index.componentCount()];
+        Arrays.fill(first, -1);
+        for (int v = 0; v < graph.size(); v++) {
+            if (first[index.component(v)] < 0) {
+                first[index.component(v)] = v;
+                System.out.printf("  component %d: %d cities, including %s%n",
+                        index.component(v), index.componentSize(v), graph.name(v));
+            }
+        }
+        int[] points = index.articulationPoints();
+        System.out.printf("%d biconnected components, %d articulation points%n",
+                index.biconnectedComponentCount(), points.length);
+        for (int city : points) {
+            System.out.println("  " + graph.name(city));
+        }
+    }
+}
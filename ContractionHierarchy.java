@@ -0,0 +1,237 @@
+package search_methods;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A contraction hierarchy over a {@link CompiledGraph}: every city has a rank, and the original
+ * arcs plus the shortcuts added during contraction are split into two upward graphs.
+ * The forward graph holds arcs {@code u -> x} with {@code rank(x) > rank(u)}, stored at {@code u};
+ * the backward graph holds arcs {@code x -> u} with {@code rank(x) > rank(u)}, stored at {@code u}
+ * with target {@code x}. A shortcut remembers the contracted middle city it bypasses, or -1 for
+ * an original arc, so routes can be unpacked back into original arcs.
+ *
+ * <p>File layout (little-endian): magic {@code "CH01"}, int version, int city count, int forward
+ * arc count, int backward arc count, the ranks, then offsets, targets, middles and weights of
+ * the forward graph followed by the same four arrays of the backward graph.
+ */
+public final class ContractionHierarchy {
+    private static final int MAGIC = 0x31304843; // "CH01" read as a little-endian int
+    private static final int VERSION = 1;
+    private static final Map<CompiledGraph, ContractionHierarchy> BUILT = new WeakHashMap<>();
+
+    private final int[] ranks;
+    private final int[] forwardOffsets;
+    private final int[] forwardTargets;
+    private final int[] forwardMiddles;
+    private final double[] forwardWeights;
+    private final int[] backwardOffsets;
+    private final int[] backwardTargets;
+    private final int[] backwardMiddles;
+    private final double[] backwardWeights;
+
+    ContractionHierarchy(int[] ranks,
+                         int[] forwardOffsets, int[] forwardTargets, int[] forwardMiddles, double[] forwardWeights,
+                         int[] backwardOffsets, int[] backwardTargets, int[] backwardMiddles, double[] backwardWeights) {
+        this.ranks = ranks;
+        this.forwardOffsets = forwardOffsets;
+        this.forwardTargets = forwardTargets;
+        this.forwardMiddles = forwardMiddles;
+        this.forwardWeights = forwardWeights;
+        this.backwardOffsets = backwardOffsets;
+        this.backwardTargets = backwardTargets;
+        this.backwardMiddles = backwardMiddles;
+        this.backwardWeights = backwardWeights;
+    }
+
+    /**
+     * Contracts the graph using every available core.
+     */
+    public static ContractionHierarchy build(CompiledGraph graph) {
+        return build(graph, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Contracts the graph using the given number of worker threads.
+     */
+    public static ContractionHierarchy build(CompiledGraph graph, int parallelism) {
+        return new ContractionHierarchyBuilder(graph, parallelism).build();
+    }
+
+    /**
+     * Returns the hierarchy for the graph, contracting it on first use and sharing it afterwards.
+     */
+    public static ContractionHierarchy of(CompiledGraph graph) {
+        synchronized (BUILT) {
+            ContractionHierarchy hierarchy = BUILT.get(graph);
+            if (hierarchy == null) {
+                hierarchy = build(graph);
+                BUILT.put(graph, hierarchy);
+            }
+            return hierarchy;
+        }
+    }
+
+    public int size() {
+        return ranks.length;
+    }
+
+    public int rank(int city) {
+        return ranks[city];
+    }
+
+    /**
+     * Returns the total number of upward arcs, original and shortcut.
+     */
+    public int arcCount() {
+        return forwardTargets.length + backwardTargets.length;
+    }
+
+    int firstForward(int city) {
+        return forwardOffsets[city];
+    }
+
+    int lastForward(int city) {
+        return forwardOffsets[city + 1];
+    }
+
+    int forwardTarget(int arc) {
+        return forwardTargets[arc];
+    }
+
+    int forwardMiddle(int arc) {
+        return forwardMiddles[arc];
+    }
+
+    double forwardWeight(int arc) {
+        return forwardWeights[arc];
+    }
+
+    int firstBackward(int city) {
+        return backwardOffsets[city];
+    }
+
+    int lastBackward(int city) {
+        return backwardOffsets[city + 1];
+    }
+
+    int backwardTarget(int arc) {
+        return backwardTargets[arc];
+    }
+
+    int backwardMiddle(int arc) {
+        return backwardMiddles[arc];
+    }
+
+    double backwardWeight(int arc) {
+        return backwardWeights[arc];
+    }
+
+    /**
+     * Returns the middle city of the arc {@code from -> to}, or -1 if it is an original arc.
+     * The arc is stored at whichever endpoint has the lower rank.
+     */
+    int middle(int from, int to) {
+        if (ranks[to] > ranks[from]) {
+            for (int arc = forwardOffsets[from]; arc < forwardOffsets[from + 1]; arc++) {
+                if (forwardTargets[arc] == to) {
+                    return forwardMiddles[arc];
+                }
+            }
+        } else {
+            for (int arc = backwardOffsets[to]; arc < backwardOffsets[to + 1]; arc++) {
+                if (backwardTargets[arc] == from) {
+                    return backwardMiddles[arc];
+                }
+            }
+        }
+        throw new IllegalStateException("No hierarchy arc from " + from + " to " + to);
+    }
+
+    /**
+     * Writes the hierarchy in the binary format described in the class comment.
+     */
+    public void save(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(5 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(ranks.length)
+                  .putInt(forwardTargets.length).putInt(backwardTargets.length);
+            header.flip();
+            BinaryChannels.writeFully(channel, header);
+            BinaryChannels.writeInts(channel, ranks);
+            BinaryChannels.writeInts(channel, forwardOffsets);
+            BinaryChannels.writeInts(channel, forwardTargets);
+            BinaryChannels.writeInts(channel, forwardMiddles);
+            BinaryChannels.writeDoubles(channel, forwardWeights);
+            BinaryChannels.writeInts(channel, backwardOffsets);
+            BinaryChannels.writeInts(channel, backwardTargets);
+            BinaryChannels.writeInts(channel, backwardMiddles);
+            BinaryChannels.writeDoubles(channel, backwardWeights);
+        }
+    }
+
+    /**
+     * Reads a hierarchy written by {@link #save(Path)}.
+     *
+     * @param file  The hierarchy file.
+     * @param graph The graph the hierarchy was built for.
+     * @return The hierarchy.
+     * @throws IOException If the file cannot be read or does not match the graph.
+     */
+    public static ContractionHierarchy load(Path file, CompiledGraph graph) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = BinaryChannels.read(channel, 5 * Integer.BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a contraction hierarchy file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported contraction hierarchy version " + version + ": " + file);
+            }
+            int cityCount = header.getInt();
+            int forwardCount = header.getInt();
+            int backwardCount = header.getInt();
+            if (cityCount != graph.size()) {
+                throw new IOException("Contraction hierarchy " + file + " has " + cityCount
+                        + " cities but the graph has " + graph.size());
+            }
+
+            int[] ranks = BinaryChannels.readInts(channel, cityCount);
+            int[] forwardOffsets = BinaryChannels.readInts(channel, cityCount + 1);
+            int[] forwardTargets = BinaryChannels.readInts(channel, forwardCount);
+            int[] forwardMiddles = BinaryChannels.readInts(channel, forwardCount);
+            double[] forwardWeights = BinaryChannels.readDoubles(channel, forwardCount);
+            int[] backwardOffsets = BinaryChannels.readInts(channel, cityCount + 1);
+            int[] backwardTargets = BinaryChannels.readInts(channel, backwardCount);
+            int[] backwardMiddles = BinaryChannels.readInts(channel, backwardCount);
+            double[] backwardWeights = BinaryChannels.readDoubles(channel, backwardCount);
+            return new ContractionHierarchy(ranks,
+                    forwardOffsets, forwardTargets, forwardMiddles, forwardWeights,
+                    backwardOffsets, backwardTargets, backwardMiddles, backwardWeights);
+        }
+    }
+
+    /**
+     * Offline preprocessing: contracts the bundled data files and saves the hierarchy.
+     * Usage: {@code ContractionHierarchy <adjacency file> <coordinates file> <output file>}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.out.println("Usage: ContractionHierarchy <adjacency file> <coordinates file> <output file>");
+            return;
+        }
+        CompiledGraph graph = GraphLoader.load(Paths.get(args[0]), Paths.get(args[1]));
+        long startTime = System.currentTimeMillis();
+        ContractionHierarchy hierarchy = build(graph);
+        hierarchy.save(Paths.get(args[2]));
+        System.out.println("Contracted " + graph.size() + " cities into " + hierarchy.arcCount()
+                + " upward arcs in " + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+    }
+}
@@ -0,0 +1,407 @@
+package search_methods;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Node ordering and contraction for {@link ContractionHierarchy}.
+ *
+ * <p>Contraction runs in rounds. Each round contracts an independent set of cities, those whose
+ * priority is lower than that of every uncontracted neighbor. The set's witness searches run in
+ * parallel on read-only edge lists, then the shortcuts are applied on one thread. A witness search
+ * for the i-th city of a round skips the round's earlier cities, so the result is the same as
+ * contracting the round one city at a time. A city's priority is its edge difference (shortcuts added minus arcs removed) plus
+ * the number of its neighbors already contracted, which spreads contraction evenly over the graph.
+ */
+final class ContractionHierarchyBuilder {
+    // Witness searches give up after this many settled cities and keep the shortcut instead
+    private static final int WITNESS_SETTLE_LIMIT = 200;
+
+    private final CompiledGraph graph;
+    private final int size;
+    private final ForkJoinPool pool;
+    private final EdgeList[] outgoing;
+    private final EdgeList[] incoming;
+    private final boolean[] contracted;
+    private final int[] roundPositions;
+    private final int[] deletedNeighbors;
+    private final double[] priorities;
+    private final int[] ranks;
+    private final ThreadLocal<WitnessSearch> witnessSearches;
+
+    ContractionHierarchyBuilder(CompiledGraph graph, int parallelism) {
+        this.graph = graph;
+        this.size = graph.size();
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+        this.outgoing = new EdgeList[size];
+        this.incoming = new EdgeList[size];
+        this.contracted = new boolean[size];
+        this.roundPositions = new int[size];
+        Arrays.fill(roundPositions, -1);
+        this.deletedNeighbors = new int[size];
+        this.priorities = new double[size];
+        this.ranks = new int[size];
+        this.witnessSearches = ThreadLocal.withInitial(() -> new WitnessSearch(size));
+    }
+
+    ContractionHierarchy build() {
+        try {
+            for (int v = 0; v < size; v++) {
+                outgoing[v] = new EdgeList();
+                incoming[v] = new EdgeList();
+            }
+            for (int v = 0; v < size; v++) {
+                for (int e = graph.firstEdge(v); e < graph.lastEdge(v); e++) {
+                    addArc(v, graph.target(e), graph.weight(e), -1);
+                }
+            }
+
+            parallel(IntStream.range(0, size), v -> priorities[v] = priority(v));
+
+            int[] remaining = IntStream.range(0, size).toArray();
+            int remainingCount = size;
+            int nextRank = 0;
+            int[] touched = new int[size];
+            int[] touchedStamp = new int[size];
+            int round = 0;
+
+            while (remainingCount > 0) {
+                round++;
+                int[] batch = selectIndependentSet(remaining, remainingCount);
+                for (int i = 0; i < batch.length; i++) {
+                    roundPositions[batch[i]] = i;
+                }
+
+                Shortcuts[] shortcuts = new Shortcuts[batch.length];
+                parallel(IntStream.range(0, batch.length), i -> {
+                    shortcuts[i] = new Shortcuts();
+                    findShortcuts(batch[i], true, shortcuts[i]);
+                });
+
+                int touchedCount = 0;
+                for (int i = 0; i < batch.length; i++) {
+                    int v = batch[i];
+                    ranks[v] = nextRank++;
+                    contracted[v] = true;
+                    roundPositions[v] = -1;
+                    // v's own lists are frozen from here on and become its upward arcs
+                    touchedCount = detach(v, outgoing[v], incoming, touched, touchedStamp, round, touchedCount);
+                    touchedCount = detach(v, incoming[v], outgoing, touched, touchedStamp, round, touchedCount);
+                    Shortcuts found = shortcuts[i];
+                    for (int j = 0; j < found.count; j++) {
+                        addArc(found.from[j], found.to[j], found.weight[j], v);
+                    }
+                }
+
+                int[] neighbors = Arrays.copyOf(touched, touchedCount);
+                parallel(Arrays.stream(neighbors), u -> priorities[u] = priority(u));
+
+                int kept = 0;
+                for (int i = 0; i < remainingCount; i++) {
+                    if (!contracted[remaining[i]]) {
+                        remaining[kept++] = remaining[i];
+                    }
+                }
+                remainingCount = kept;
+            }
+
+            return assemble();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Selects the uncontracted cities whose (priority, id) is smaller than that of every
+     * uncontracted neighbor. The city with the globally smallest priority always qualifies.
+     */
+    private int[] selectIndependentSet(int[] remaining, int remainingCount) {
+        try {
+            return pool.submit(() -> Arrays.stream(remaining, 0, remainingCount).parallel()
+                    .filter(this::isLocalMinimum).toArray()).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Contraction failed", e);
+        }
+    }
+
+    private boolean isLocalMinimum(int v) {
+        return isLocalMinimum(v, outgoing[v]) && isLocalMinimum(v, incoming[v]);
+    }
+
+    private boolean isLocalMinimum(int v, EdgeList arcs) {
+        for (int i = 0; i < arcs.size; i++) {
+            int u = arcs.targets[i];
+            if (priorities[u] < priorities[v] || (priorities[u] == priorities[v] && u < v)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the just contracted city {@code v} from the opposite lists of its neighbors, so
+     * later searches never scan dead arcs, and records the neighbors whose priority must be
+     * recomputed.
+     */
+    private int detach(int v, EdgeList arcs, EdgeList[] opposite, int[] touched, int[] touchedStamp,
+                       int round, int count) {
+        for (int i = 0; i < arcs.size; i++) {
+            int u = arcs.targets[i];
+            opposite[u].remove(v);
+            deletedNeighbors[u]++;
+            if (touchedStamp[u] != round) {
+                touchedStamp[u] = round;
+                touched[count++] = u;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Simulates contracting the city and returns its edge difference plus contracted neighbors.
+     */
+    private double priority(int v) {
+        Shortcuts shortcuts = new Shortcuts();
+        findShortcuts(v, false, shortcuts);
+        int removed = outgoing[v].size + incoming[v].size;
+        return shortcuts.count - removed + deletedNeighbors[v];
+    }
+
+    /**
+     * Finds the shortcuts needed to contract {@code v}: for every live pair {@code u -> v -> x}
+     * with no witness path from {@code u} to {@code x} of at most the same length that avoids
+     * {@code v}. With {@code skipRound} set, witness paths also avoid the cities of the current
+     * round that are contracted before {@code v}, which makes the parallel round equivalent to
+     * contracting its cities one after another in batch order.
+     */
+    private void findShortcuts(int v, boolean skipRound, Shortcuts result) {
+        EdgeList in = incoming[v];
+        EdgeList out = outgoing[v];
+        WitnessSearch witness = witnessSearches.get();
+        witness.clearTargets();
+        double maxOut = 0.0;
+        for (int j = 0; j < out.size; j++) {
+            if (isLive(out.targets[j], v, skipRound)) {
+                maxOut = Math.max(maxOut, out.weights[j]);
+                witness.addTarget(out.targets[j]);
+            }
+        }
+
+        for (int i = 0; i < in.size; i++) {
+            int u = in.targets[i];
+            if (!isLive(u, v, skipRound)) {
+                continue;
+            }
+            double inWeight = in.weights[i];
+            witness.run(u, v, inWeight + maxOut, skipRound);
+
+            for (int j = 0; j < out.size; j++) {
+                int x = out.targets[j];
+                if (x == u || !isLive(x, v, skipRound)) {
+                    continue;
+                }
+                double viaWeight = inWeight + out.weights[j];
+                double witnessWeight = witness.distance(x);
+                if (witnessWeight > viaWeight || witnessWeight == Double.POSITIVE_INFINITY) {
+                    result.add(u, x, viaWeight);
+                }
+            }
+        }
+    }
+
+    private boolean isLive(int city, int contracting, boolean skipRound) {
+        return city != contracting
+                && !(skipRound && roundPositions[city] >= 0 && roundPositions[city] < roundPositions[contracting]);
+    }
+
+    /**
+     * Adds the arc, or lowers its weight and replaces its middle city if it already exists.
+     */
+    private void addArc(int from, int to, double weight, int middle) {
+        if (from == to) {
+            return;
+        }
+        outgoing[from].addOrLower(to, weight, middle);
+        incoming[to].addOrLower(from, weight, middle);
+    }
+
+    /**
+     * Lays out the frozen lists as CSR: a city's outgoing list holds its forward arcs and its
+     * incoming list its backward arcs, since both only kept neighbors contracted after it.
+     */
+    private ContractionHierarchy assemble() {
+        int[] forwardOffsets = new int[size + 1];
+        int[] backwardOffsets = new int[size + 1];
+        for (int v = 0; v < size; v++) {
+            forwardOffsets[v + 1] = forwardOffsets[v] + outgoing[v].size;
+            backwardOffsets[v + 1] = backwardOffsets[v] + incoming[v].size;
+        }
+
+        int[] forwardTargets = new int[forwardOffsets[size]];
+        int[] forwardMiddles = new int[forwardOffsets[size]];
+        double[] forwardWeights = new double[forwardOffsets[size]];
+        int[] backwardTargets = new int[backwardOffsets[size]];
+        int[] backwardMiddles = new int[backwardOffsets[size]];
+        double[] backwardWeights = new double[backwardOffsets[size]];
+        for (int v = 0; v < size; v++) {
+            EdgeList out = outgoing[v];
+            System.arraycopy(out.targets, 0, forwardTargets, forwardOffsets[v], out.size);
+            System.arraycopy(out.middles, 0, forwardMiddles, forwardOffsets[v], out.size);
+            System.arraycopy(out.weights, 0, forwardWeights, forwardOffsets[v], out.size);
+            EdgeList in = incoming[v];
+            System.arraycopy(in.targets, 0, backwardTargets, backwardOffsets[v], in.size);
+            System.arraycopy(in.middles, 0, backwardMiddles, backwardOffsets[v], in.size);
+            System.arraycopy(in.weights, 0, backwardWeights, backwardOffsets[v], in.size);
+        }
+
+        return new ContractionHierarchy(ranks,
+                forwardOffsets, forwardTargets, forwardMiddles, forwardWeights,
+                backwardOffsets, backwardTargets, backwardMiddles, backwardWeights);
+    }
+
+    private void parallel(IntStream cities, java.util.function.IntConsumer action) {
+        try {
+            pool.submit(() -> cities.parallel().forEach(action)).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Contraction failed", e);
+        }
+    }
+
+    /**
+     * A growable list of arcs on one side of a city.
+     */
+    private static final class EdgeList {
+        int[] targets = new int[4];
+        double[] weights = new double[4];
+        int[] middles = new int[4];
+        int size;
+
+        void addOrLower(int target, double weight, int middle) {
+            for (int i = 0; i < size; i++) {
+                if (targets[i] == target) {
+                    if (weight < weights[i]) {
+                        weights[i] = weight;
+                        middles[i] = middle;
+                    }
+                    return;
+                }
+            }
+            if (size == targets.length) {
+                targets = Arrays.copyOf(targets, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+                middles = Arrays.copyOf(middles, size * 2);
+            }
+            targets[size] = target;
+            weights[size] = weight;
+            middles[size++] = middle;
+        }
+
+        void remove(int target) {
+            for (int i = 0; i < size; i++) {
+                if (targets[i] == target) {
+                    size--;
+                    targets[i] = targets[size];
+                    weights[i] = weights[size];
+                    middles[i] = middles[size];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Shortcuts found for one city.
+     */
+    private static final class Shortcuts {
+        int[] from = new int[4];
+        int[] to = new int[4];
+        double[] weight = new double[4];
+        int count;
+
+        void add(int u, int x, double w) {
+            if (count == from.length) {
+                from = Arrays.copyOf(from, count * 2);
+                to = Arrays.copyOf(to, count * 2);
+                weight = Arrays.copyOf(weight, count * 2);
+            }
+            from[count] = u;
+            to[count] = x;
+            weight[count++] = w;
+        }
+    }
+
+    /**
+     * A bounded Dijkstra search owned by one worker thread.
+     */
+    private final class WitnessSearch {
+        private final double[] distances;
+        private final int[] stamps;
+        private final int[] targetStamps;
+        private final IndexedMinHeap heap;
+        private int generation;
+        private int targetGeneration;
+        private int targetCount;
+
+        WitnessSearch(int size) {
+            this.distances = new double[size];
+            this.stamps = new int[size];
+            this.targetStamps = new int[size];
+            this.heap = new IndexedMinHeap(size);
+        }
+
+        void clearTargets() {
+            targetGeneration++;
+            targetCount = 0;
+        }
+
+        void addTarget(int city) {
+            if (targetStamps[city] != targetGeneration) {
+                targetStamps[city] = targetGeneration;
+                targetCount++;
+            }
+        }
+
+        /**
+         * Searches from {@code source} without passing through {@code avoided}, stopping once
+         * every target is settled, beyond {@code maxDistance}, or after the settle limit.
+         */
+        void run(int source, int avoided, double maxDistance, boolean skipRound) {
+            generation++;
+            heap.clear();
+            stamps[source] = generation;
+            distances[source] = 0.0;
+            heap.insertOrDecrease(source, 0.0);
+
+            int settled = 0;
+            int targetsLeft = targetCount;
+            while (!heap.isEmpty() && targetsLeft > 0 && settled++ < WITNESS_SETTLE_LIMIT) {
+                if (heap.peekKey() > maxDistance) {
+                    break;
+                }
+                int city = heap.poll();
+                if (targetStamps[city] == targetGeneration) {
+                    targetsLeft--;
+                }
+                EdgeList arcs = outgoing[city];
+                for (int i = 0; i < arcs.size; i++) {
+                    int next = arcs.targets[i];
+                    if (!isLive(next, avoided, skipRound)) {
+                        continue;
+                    }
+                    double distance = distances[city] + arcs.weights[i];
+                    if (stamps[next] != generation || distance < distances[next]) {
+                        stamps[next] = generation;
+                        distances[next] = distance;
+                        heap.insertOrDecrease(next, distance);
+                    }
+                }
+            }
+        }
+
+        double distance(int city) {
+            return stamps[city] == generation ? distances[city] : Double.POSITIVE_INFINITY;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package search_methods;
+
+import java.util.*;
+
+/**
+ * Point-to-point queries on a {@link ContractionHierarchy}. A forward search from the start and
+ * a backward search from the end both only move to cities of higher rank, and they meet at the
+ * highest-ranked city of the shortest route. Shortcuts on the result are then unpacked into
+ * original arcs, so the route lists every city like the other finders do.
+ */
+public class ContractionHierarchyRouteFinder implements RouteFinder {
+    private final CompiledGraph graph;
+    private final ContractionHierarchy hierarchy;
+    private final SearchWorkspace forward;
+    private final SearchWorkspace backward;
+    private final IndexedMinHeap forwardOpen;
+    private final IndexedMinHeap backwardOpen;
+    private final ShortcutUnpacker unpacker;
+    private final SearchStatistics statistics = new SearchStatistics();
+
+    private double bestCost;
+    private int meetingCity;
+
+    /**
+     * Creates a finder over the shared hierarchy of the graph, contracting it on first use.
+     */
+    public ContractionHierarchyRouteFinder(CompiledGraph graph) {
+        this(graph, ContractionHierarchy.of(graph));
+    }
+
+    public ContractionHierarchyRouteFinder(CompiledGraph graph, ContractionHierarchy hierarchy) {
+        if (hierarchy.size() != graph.size()) {
+            throw new IllegalArgumentException("The hierarchy was built for a different graph");
+        }
+        this.graph = graph;
+        this.hierarchy = hierarchy;
+        this.forward = new SearchWorkspace(graph.size());
+        this.backward = new SearchWorkspace(graph.size());
+        this.forwardOpen = new IndexedMinHeap(graph.size());
+        this.backwardOpen = new IndexedMinHeap(graph.size());
+        this.unpacker = new ShortcutUnpacker(hierarchy);
+    }
+
+    @Override
+    public List<String> findRoute(String startCity, String endCity) {
+        statistics.reset();
+        long operationsBefore = forwardOpen.getOperationCount() + backwardOpen.getOperationCount();
+        List<String> route = search(startCity, endCity);
+        statistics.queueOperations = forwardOpen.getOperationCount() + backwardOpen.getOperationCount() - operationsBefore;
+        return route;
+    }
+
+    private List<String> search(String startCity, String endCity) {
+        int start = graph.id(startCity);
+        int end = graph.id(endCity);
+        if (start < 0 || end < 0) {
+            return null;
+        }
+        if (!graph.connectivity().connected(start, end)) {
+            return null;
+        }
+
+        forward.reset();
+        backward.reset();
+        forwardOpen.clear();
+        backwardOpen.clear();
+        bestCost = Double.POSITIVE_INFINITY;
+        meetingCity = -1;
+
+        forward.markSeen(start);
+        forward.cost[start] = 0.0;
+        forwardOpen.insertOrDecrease(start, 0.0);
+        backward.markSeen(end);
+        backward.cost[end] = 0.0;
+        backwardOpen.insertOrDecrease(end, 0.0);
+        if (start == end) {
+            bestCost = 0.0;
+            meetingCity = start;
+        }
+
+        // Each side stops once its smallest key can no longer improve the best meeting
+        boolean forwardActive = true;
+        boolean backwardActive = true;
+        while (forwardActive || backwardActive) {
+            forwardActive = forwardActive && !forwardOpen.isEmpty() && forwardOpen.peekKey() < bestCost;
+            backwardActive = backwardActive && !backwardOpen.isEmpty() && backwardOpen.peekKey() < bestCost;
+            if (forwardActive) {
+                expandForward();
+            }
+            if (backwardActive) {
+                expandBackward();
+            }
+            statistics.frontier(forwardOpen.size() + backwardOpen.size());
+        }
+
+        if (meetingCity < 0) {
+            // No route found
+            return null;
+        }
+        return unpackRoute(start, end);
+    }
+
+    private void expandForward() {
+        int city = forwardOpen.poll();
+        forward.markClosed(city);
+        statistics.nodesExpanded++;
+        statistics.edgesRelaxed += hierarchy.lastForward(city) - hierarchy.firstForward(city);
+        for (int arc = hierarchy.firstForward(city), last = hierarchy.lastForward(city); arc < last; arc++) {
+            relax(forward, backward, forwardOpen, city, hierarchy.forwardTarget(arc), hierarchy.forwardWeight(arc));
+        }
+    }
+
+    private void expandBackward() {
+        int city = backwardOpen.poll();
+        backward.markClosed(city);
+        statistics.nodesExpanded++;
+        statistics.edgesRelaxed += hierarchy.lastBackward(city) - hierarchy.firstBackward(city);
+        for (int arc = hierarchy.firstBackward(city), last = hierarchy.lastBackward(city); arc < last; arc++) {
+            relax(backward, forward, backwardOpen, city, hierarchy.backwardTarget(arc), hierarchy.backwardWeight(arc));
+        }
+    }
+
+    @Override
+    public SearchStatistics getStatistics() {
+        return statistics;
+    }
+
+    private void relax(SearchWorkspace side, SearchWorkspace other, IndexedMinHeap open,
+                       int city, int next, double weight) {
+        double cost = side.cost[city] + weight;
+        if (!side.isSeen(next) || cost < side.cost[next]) {
+            side.markSeen(next);
+            side.cost[next] = cost;
+            side.parent[next] = city;
+            open.insertOrDecrease(next, cost);
+            if (other.isSeen(next) && cost + other.cost[next] < bestCost) {
+                bestCost = cost + other.cost[next];
+                meetingCity = next;
+            }
+        }
+    }
+
+    /**
+     * Walks the hierarchy arcs start .. meetingCity .. end and expands every shortcut.
+     */
+    private List<String> unpackRoute(int start, int end) {
+        // Hierarchy arcs go into the backward workspace's path buffer, unpacked cities into the forward one
+        int hierarchyLength = forward.tracePath(start, meetingCity);
+        int[] hierarchyPath = backward.path;
+        System.arraycopy(forward.path, 0, hierarchyPath, 0, hierarchyLength);
+        for (int city = meetingCity; city != end; ) {
+            city = backward.parent[city];
+            hierarchyPath[hierarchyLength++] = city;
+        }
+
+        int[] path = forward.path;
+        int length = 0;
+        path[length++] = hierarchyPath[0];
+        for (int i = 0; i + 1 < hierarchyLength; i++) {
+            length = unpacker.unpack(hierarchyPath[i], hierarchyPath[i + 1], path, length);
+        }
+        return graph.toRoute(path, length);
+    }
+}
@@ -5,46 +5,86 @@
 package search_methods;
 import java.util.*;
 
-public class DFSRouteFinder {
+/**
+ * Depth-first search with an explicit stack, so route length is not limited by the thread's
+ * stack. The workspace's path buffer holds the current path and its queue buffer holds, for
+ * each depth, the next arc to try; both are reused by every query.
+ */
+public class DFSRouteFinder implements RouteFinder {
   
-    private Map<String, List<String>> adjacencyList;
+    private final CompiledGraph graph;
+    private final SearchWorkspace workspace;
+    private final SearchStatistics statistics = new SearchStatistics();
 
-    public DFSRouteFinder(Map<String, List<String>> adjacencyList) {
-        this.adjacencyList = adjacencyList;
+    public DFSRouteFinder(CompiledGraph graph) {
+        this.graph = graph;
+        this.workspace = new SearchWorkspace(graph.size());
     }
 
+    @Override
     public List<String> findRoute(String startCity, String endCity) {
-        Set<String> visited = new HashSet<>();
-        List<String> path = new ArrayList<>();
-
-        if (dfs(startCity, endCity, visited, path)) {
-            // Reconstruct and return the path
-            Collections.reverse(path);
-            return path;
+        statistics.reset();
+        int start = graph.id(startCity);
+        int end = graph.id(endCity);
+        if (start < 0 || end < 0) {
+            return null;
+        }
+        if (!graph.connectivity().connected(start, end)) {
+            return null;
         }
 
-        // No route found
-        return null;
-    }
-
-    private boolean dfs(String currentCity, String endCity, Set<String> visited, List<String> path) {
-        visited.add(currentCity);
-        path.add(currentCity);
-
-        if (currentCity.equals(endCity)) {
-            return true; // Found the destination
+        SearchWorkspace ws = workspace;
+        ws.reset();
+        int[] path = ws.path;
+        int[] cursors = ws.queue;
+        int depth = 0;
+        path[0] = start;
+        cursors[0] = graph.firstEdge(start);
+        ws.markSeen(start);
+        if (start == end) {
+            statistics.record(0, 0, 1, 1);
+            return graph.toRoute(path, 1);
         }
+        // Counted in locals and stored once; every city pushed except the end is expanded
+        int pushes = 1;
+        int pops = 0;
+        long relaxed = 0;
+        int peak = 1;
 
-        for (String neighbor : adjacencyList.get(currentCity)) {
-            if (!visited.contains(neighbor)) {
-                if (dfs(neighbor, endCity, visited, path)) {
-                    return true;
-                }
+        while (depth >= 0) {
+            int currentCity = path[depth];
+            int e = cursors[depth];
+            if (e == graph.lastEdge(currentCity)) {
+                depth--; // Backtrack
+                pops++;
+                continue;
             }
+            cursors[depth] = e + 1;
+
+            int neighbor = graph.target(e);
+            relaxed++;
+            if (ws.isSeen(neighbor)) {
+                continue;
+            }
+            ws.markSeen(neighbor);
+            path[++depth] = neighbor;
+            pushes++;
+            peak = Math.max(peak, depth + 1);
+            if (neighbor == end) {
+                statistics.record(pushes - 1, relaxed, peak, pushes + pops);
+                // The path is recorded from start to end as the search descends
+                return graph.toRoute(path, depth + 1);
+            }
+            cursors[depth] = graph.firstEdge(neighbor);
         }
 
-        path.remove(path.size() - 1); // Backtrack
-        return false;
+        // No route found
+        statistics.record(pushes, relaxed, peak, pushes + pops);
+        return null;
+    }
+
+    @Override
+    public SearchStatistics getStatistics() {
+        return statistics;
     }
 }
-
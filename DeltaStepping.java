@@ -0,0 +1,553 @@
+package search_methods;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * Parallel one-to-all shortest paths by Meyer and Sanders' delta-stepping. Tentative distances
+ * are grouped into buckets of width delta, and buckets are settled in order. Each bucket is
+ * emptied in phases that relax its cities' light arcs (no longer than delta) in parallel, since
+ * those may put cities back into the same bucket. Its heavy arcs are relaxed once at the end,
+ * as they can only reach later buckets. A small delta does little wasted work but needs many
+ * phases; a large one has wide phases but relaxes some cities more than once. At one city per
+ * bucket it is Dijkstra's algorithm.
+ *
+ * <p>Distances are kept as the bits of non-negative doubles in an {@link AtomicLongArray},
+ * where they order the same way as longs, and lowered by compare-and-exchange. Every worker
+ * thread has its own buckets, so the only shared writes are the distances. Parents are not
+ * raced for; they are recovered afterwards from the final distances, since every reached
+ * city's distance is exactly its best predecessor's plus that arc.
+ *
+ * <p>Each instance copies the graph's arcs with every city's light arcs first. Runs reuse the
+ * copy and the worker buckets, so one instance must not run two searches at once.
+ */
+public final class DeltaStepping {
+    // Frontier cities handed to a worker at a time
+    private static final int CHUNK = 256;
+    // Buckets held in arrays; cities beyond wait in a far list until the window moves up
+    private static final int WINDOW = 1024;
+    // The huge distances through cities without coordinates all share the last bucket
+    private static final long LAST_BUCKET = Long.MAX_VALUE / 2;
+
+    private final CompiledGraph graph;
+    private final double delta;
+    private final int parallelism;
+    private final int[] offsets;
+    private final int[] lightEnds;
+    private final int[] targets;
+    private final double[] weights;
+    private final Worker[] workers;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final SearchStatistics statistics = new SearchStatistics();
+
+    private AtomicLongArray distances;
+    // The heavy phase for which a city was last expanded, to relax its heavy arcs only once each
+    private int[] expandedIn;
+    private int heavyPhase;
+    private int[] frontier = new int[CHUNK];
+    private ForkJoinPool pool;
+
+    /**
+     * Prepares searches with the given bucket width.
+     *
+     * @param graph       The graph.
+     * @param delta       The bucket width, in the units of the arc weights.
+     * @param parallelism The number of worker threads.
+     * @throws IllegalArgumentException If delta is not positive.
+     */
+    public DeltaStepping(CompiledGraph graph, double delta, int parallelism) {
+        if (!(delta > 0) || Double.isInfinite(delta)) {
+            throw new IllegalArgumentException("Delta must be positive: " + delta);
+        }
+        this.graph = graph;
+        this.delta = delta;
+        this.parallelism = Math.max(1, parallelism);
+
+        int size = graph.size();
+        offsets = new int[size + 1];
+        lightEnds = new int[size];
+        targets = new int[graph.edgeCount()];
+        weights = new double[graph.edgeCount()];
+        for (int v = 0; v < size; v++) {
+            int light = graph.firstEdge(v);
+            int heavy = graph.lastEdge(v);
+            offsets[v] = light;
+            for (int e = graph.firstEdge(v); e < graph.lastEdge(v); e++) {
+                int slot = graph.weight(e) <= delta ? light++ : --heavy;
+                targets[slot] = graph.target(e);
+                weights[slot] = graph.weight(e);
+            }
+            lightEnds[v] = light;
+        }
+        offsets[size] = graph.edgeCount();
+
+        workers = new Worker[this.parallelism];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker();
+        }
+    }
+
+    /**
+     * Prepares searches with {@link #defaultDelta(CompiledGraph)} on every core.
+     */
+    public DeltaStepping(CompiledGraph graph) {
+        this(graph, defaultDelta(graph), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Returns a bucket width that suits road-like graphs: twice the mean length of the arcs
+     * between cities with coordinates.
+     */
+    public static double defaultDelta(CompiledGraph graph) {
+        double total = 0;
+        long count = 0;
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            double weight = graph.weight(e);
+            if (weight < Double.MAX_VALUE) {
+                total += weight;
+                count++;
+            }
+        }
+        return count == 0 || total == 0 ? 1.0 : 2 * total / count;
+    }
+
+    public double getDelta() {
+        return delta;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Returns the work done by the last run: cities expanded, arcs relaxed, the widest phase
+     * and the number of bucket insertions.
+     */
+    public SearchStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Computes the shortest distance and a shortest route from the source to every city.
+     *
+     * @throws IllegalArgumentException If there is no city with the source's id.
+     */
+    public ShortestPathTree run(int source) {
+        if (source < 0 || source >= graph.size()) {
+            throw new IllegalArgumentException("No city with id " + source);
+        }
+        int size = graph.size();
+        if (distances == null) {
+            distances = new AtomicLongArray(size);
+            expandedIn = new int[size];
+        }
+        long infinity = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+        for (int v = 0; v < size; v++) {
+            distances.set(v, infinity);
+        }
+        Arrays.fill(expandedIn, -1);
+        heavyPhase = 0;
+        for (Worker worker : workers) {
+            worker.clear();
+        }
+
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        try {
+            long[] work = settleBuckets(source);
+            double[] result = new double[size];
+            parallel(size, v -> result[v] = Double.longBitsToDouble(distances.get(v)));
+            int[] parents = parents(source, result);
+            statistics.record(work[0], work[1], (int) work[2], work[3]);
+            return new ShortestPathTree(graph, source, result, parents);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+        }
+    }
+
+    /**
+     * Settles the buckets in order, returning the expanded, relaxed, widest phase and
+     * insertion counts.
+     */
+    private long[] settleBuckets(int source) {
+        distances.set(source, Double.doubleToRawLongBits(0.0));
+        Worker first = workers[0];
+        first.base = 0;
+        first.push(source, 0);
+
+        long base = 0;
+        long bucket = 0;
+        int widestPhase = 0;
+        while (true) {
+            for (Worker worker : workers) {
+                worker.base = base;
+            }
+            // Empty this bucket: light phases until nothing falls back into it, then its heavy
+            // arcs, which normally cannot fall back either but might round down to it
+            int count;
+            while ((count = gather(bucket - base)) > 0) {
+                do {
+                    widestPhase = Math.max(widestPhase, count);
+                    phase(count, bucket, true);
+                } while ((count = gather(bucket - base)) > 0);
+                count = gatherExpanded();
+                phase(count, bucket, false);
+                heavyPhase++;
+            }
+
+            bucket = nextBucket(bucket, base);
+            if (bucket < 0) {
+                base = moveWindow(base);
+                if (base < 0) {
+                    break;
+                }
+                bucket = base;
+            }
+        }
+
+        long[] work = new long[4];
+        for (Worker worker : workers) {
+            work[0] += worker.expanded;
+            work[1] += worker.relaxed;
+            work[3] += worker.pushed;
+        }
+        work[2] = widestPhase;
+        return work;
+    }
+
+    /**
+     * Moves the cities waiting in every worker's bucket into the shared frontier.
+     */
+    private int gather(long slot) {
+        int count = 0;
+        for (Worker worker : workers) {
+            IntList list = worker.buckets[(int) slot];
+            if (list != null && list.size > 0) {
+                count = append(count, list);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Moves the cities expanded in the current bucket into the shared frontier.
+     */
+    private int gatherExpanded() {
+        int count = 0;
+        for (Worker worker : workers) {
+            count = append(count, worker.expandedCities);
+        }
+        return count;
+    }
+
+    private int append(int count, IntList list) {
+        if (count + list.size > frontier.length) {
+            frontier = Arrays.copyOf(frontier, Math.max(count + list.size, 2 * frontier.length));
+        }
+        System.arraycopy(list.items, 0, frontier, count, list.size);
+        count += list.size;
+        list.size = 0;
+        return count;
+    }
+
+    /**
+     * Relaxes the light or heavy arcs of the frontier's cities, in parallel if it is wide
+     * enough to be worth it.
+     */
+    private void phase(int count, long bucket, boolean light) {
+        cursor.set(0);
+        if (pool == null || count <= CHUNK) {
+            workers[0].relax(count, bucket, light);
+        } else {
+            parallel(workers.length, w -> workers[w].relax(count, bucket, light));
+        }
+    }
+
+    /**
+     * Returns the first bucket after this one that holds cities, or -1 if the rest of the
+     * window is empty.
+     */
+    private long nextBucket(long bucket, long base) {
+        for (long next = bucket + 1; next < base + WINDOW; next++) {
+            for (Worker worker : workers) {
+                IntList list = worker.buckets[(int) (next - base)];
+                if (list != null && list.size > 0) {
+                    return next;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves the window up to the first bucket with a far city, bringing the far cities that
+     * now fall in it into their buckets. Returns the new base, or -1 if no city is left.
+     */
+    private long moveWindow(long base) {
+        long limit = base + WINDOW;
+        long newBase = Long.MAX_VALUE;
+        for (Worker worker : workers) {
+            IntList far = worker.far;
+            int kept = 0;
+            for (int i = 0; i < far.size; i++) {
+                int city = far.items[i];
+                long bucket = bucketOf(distance(city));
+                // Anything below the old window's end was lowered and already settled
+                if (bucket >= limit) {
+                    far.items[kept++] = city;
+                    newBase = Math.min(newBase, bucket);
+                }
+            }
+            far.size = kept;
+        }
+        if (newBase == Long.MAX_VALUE) {
+            return -1;
+        }
+        for (Worker worker : workers) {
+            worker.base = newBase;
+            IntList far = worker.far;
+            int count = far.size;
+            far.size = 0;
+            for (int i = 0; i < count; i++) {
+                int city = far.items[i];
+                worker.push(city, bucketOf(distance(city)));
+            }
+        }
+        return newBase;
+    }
+
+    private long bucketOf(double distance) {
+        return Math.min((long) (distance / delta), LAST_BUCKET);
+    }
+
+    private double distance(int city) {
+        return Double.longBitsToDouble(distances.get(city));
+    }
+
+    /**
+     * Picks for every reached city a predecessor whose distance plus the arc is exactly the
+     * city's distance, scanning the arcs into each city in parallel. Zero-length arcs could make
+     * such picks circular, so cities whose only tight predecessors are at the same distance are
+     * left to a second, sequential pass that grows the tree out from cities already in it.
+     */
+    private int[] parents(int source, double[] result) {
+        CompiledGraph transpose = graph.transpose();
+        int size = graph.size();
+        int[] parents = new int[size];
+        parallel(size, v -> {
+            int parent = -1;
+            if (v != source && result[v] != Double.POSITIVE_INFINITY) {
+                parent = -2;
+                for (int e = transpose.firstEdge(v), last = transpose.lastEdge(v); e < last; e++) {
+                    int u = transpose.target(e);
+                    if (result[u] < result[v] && result[u] + transpose.weight(e) == result[v]) {
+                        parent = u;
+                        break;
+                    }
+                }
+            }
+            parents[v] = parent;
+        });
+
+        IntList pending = new IntList();
+        for (int v = 0; v < size; v++) {
+            if (parents[v] != -2) {
+                continue;
+            }
+            for (int e = transpose.firstEdge(v), last = transpose.lastEdge(v); e < last; e++) {
+                int u = transpose.target(e);
+                if (parents[u] != -2 && result[u] + transpose.weight(e) == result[v]) {
+                    parents[v] = u;
+                    pending.add(v);
+                    break;
+                }
+            }
+        }
+        while (pending.size > 0) {
+            int u = pending.items[--pending.size];
+            for (int e = graph.firstEdge(u), last = graph.lastEdge(u); e < last; e++) {
+                int v = graph.target(e);
+                if (parents[v] == -2 && result[u] + graph.weight(e) == result[v]) {
+                    parents[v] = u;
+                    pending.add(v);
+                }
+            }
+        }
+        return parents;
+    }
+
+    private void parallel(int count, java.util.function.IntConsumer action) {
+        if (pool == null) {
+            for (int i = 0; i < count; i++) {
+                action.accept(i);
+            }
+            return;
+        }
+        try {
+            pool.submit(() -> IntStream.range(0, count).parallel().forEach(action)).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Delta-stepping failed", e);
+        }
+    }
+
+    /**
+     * The buckets and counters of one worker thread. Only its own thread writes to it during
+     * a phase; the coordinating thread reads and drains it between phases.
+     */
+    private final class Worker {
+        final IntList[] buckets = new IntList[WINDOW];
+        final IntList far = new IntList();
+        final IntList expandedCities = new IntList();
+        long base;
+        long expanded;
+        long relaxed;
+        long pushed;
+
+        void clear() {
+            for (IntList bucket : buckets) {
+                if (bucket != null) {
+                    bucket.size = 0;
+                }
+            }
+            far.size = 0;
+            expandedCities.size = 0;
+            expanded = 0;
+            relaxed = 0;
+            pushed = 0;
+        }
+
+        void push(int city, long bucket) {
+            pushed++;
+            long slot = bucket - base;
+            if (slot >= WINDOW) {
+                far.add(city);
+                return;
+            }
+            IntList list = buckets[(int) slot];
+            if (list == null) {
+                list = buckets[(int) slot] = new IntList();
+            }
+            list.add(city);
+        }
+
+        /**
+         * Takes chunks of the frontier until it is used up, relaxing the light arcs of the
+         * cities still in the bucket, or the heavy arcs of the cities expanded in it.
+         */
+        void relax(int count, long bucket, boolean light) {
+            int[] cities = frontier;
+            int start;
+            while ((start = cursor.getAndAdd(CHUNK)) < count) {
+                for (int i = start, end = Math.min(count, start + CHUNK); i < end; i++) {
+                    int city = cities[i];
+                    double cityDistance = distance(city);
+                    if (light) {
+                        // A city queued twice in the bucket may already have been expanded
+                        // at its current distance; bucketOf rules out stale entries
+                        if (bucketOf(cityDistance) != bucket) {
+                            continue;
+                        }
+                        if (expandedIn[city] != heavyPhase) {
+                            // Two workers may both see the old value; the city's heavy arcs are
+                            // then relaxed twice, which is harmless
+                            expandedIn[city] = heavyPhase;
+                            expandedCities.add(city);
+                        }
+                        expanded++;
+                        relaxArcs(city, cityDistance, offsets[city], lightEnds[city]);
+                    } else {
+                        relaxArcs(city, cityDistance, lightEnds[city], offsets[city + 1]);
+                    }
+                }
+            }
+        }
+
+        private void relaxArcs(int city, double cityDistance, int first, int last) {
+            relaxed += last - first;
+            for (int e = first; e < last; e++) {
+                int target = targets[e];
+                double candidate = cityDistance + weights[e];
+                long bits = Double.doubleToRawLongBits(candidate);
+                long current = distances.get(target);
+                while (bits < current) {
+                    long witness = distances.compareAndExchange(target, current, bits);
+                    if (witness == current) {
+                        push(target, bucketOf(candidate));
+                        break;
+                    }
+                    current = witness;
+                }
+            }
+        }
+    }
+
+    /**
+     * Usage: {@code DeltaStepping [--graph kansas|grid|geometric] [--nodes 1000000] [--delta km]
+     * [--threads n] [--sources 5] [--seed 42]}. Runs delta-stepping and sequential Dijkstra
+     * from the same random sources, checks that the distances agree and prints both timings.
+     */
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        String graphName = options.getOrDefault("graph", "geometric");
+        int nodes = Integer.parseInt(options.getOrDefault("nodes", "1000000"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        CompiledGraph graph;
+        switch (graphName) {
+            case "kansas":
+                graph = GraphLoader.load(Paths.get(options.getOrDefault("adjacency", "Adjacencies.txt")),
+                        Paths.get(options.getOrDefault("coordinates", "coordinates.csv")));
+                break;
+            case "grid":
+                graph = SyntheticGraphs.grid(nodes);
+                break;
+            case "geometric":
+                graph = SyntheticGraphs.randomGeometric(nodes, 6.0, seed);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown graph: " + graphName);
+        }
+        double delta = Double.parseDouble(options.getOrDefault("delta", String.valueOf(defaultDelta(graph))));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int sources = Integer.parseInt(options.getOrDefault("sources", "5"));
+
+        DeltaStepping deltaStepping = new DeltaStepping(graph, delta, threads);
+        DijkstraSearch dijkstra = new DijkstraSearch(graph);
+        double[] expected = new double[graph.size()];
+        Random random = new Random(seed);
+        System.out.printf("%s: %d cities, %d arcs, delta %.4f, %d threads%n",
+                graphName, graph.size(), graph.edgeCount(), delta, threads);
+        for (int i = 0; i < sources; i++) {
+            int source = random.nextInt(graph.size());
+            long started = System.nanoTime();
+            ShortestPathTree tree = deltaStepping.run(source);
+            long deltaNanos = System.nanoTime() - started;
+            started = System.nanoTime();
+            dijkstra.run(source, expected, null, null);
+            long dijkstraNanos = System.nanoTime() - started;
+
+            int mismatches = 0;
+            for (int v = 0; v < graph.size(); v++) {
+                if (tree.distance(v) != expected[v]) {
+                    mismatches++;
+                }
+            }
+            System.out.printf("source %d: delta-stepping %.1f ms, Dijkstra %.1f ms, %d mismatches, %s%n",
+                    source, deltaNanos / 1e6, dijkstraNanos / 1e6, mismatches, deltaStepping.getStatistics());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package search_methods;
+
+import java.util.Arrays;
+
+/**
+ * One-to-all Dijkstra over a {@link CompiledGraph}, used by the preprocessing steps.
+ * The heap is allocated once and reused by every run.
+ */
+final class DijkstraSearch {
+    private final CompiledGraph graph;
+    private final IndexedMinHeap heap;
+
+    DijkstraSearch(CompiledGraph graph) {
+        this.graph = graph;
+        this.heap = new IndexedMinHeap(graph.size());
+    }
+
+    /**
+     * Computes shortest distances from the source to every city. Unreachable cities get
+     * positive infinity.
+     *
+     * @param source      The city to search from.
+     * @param distances   Receives the distance of every city.
+     * @param parents     Receives the predecessor of every reached city, or null if not needed.
+     * @param settleOrder Receives reached cities in the order they were settled, or null if not needed.
+     * @return The number of cities reached.
+     */
+    int run(int source, double[] distances, int[] parents, int[] settleOrder) {
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        heap.clear();
+        distances[source] = 0.0;
+        if (parents != null) {
+            parents[source] = -1;
+        }
+        heap.insertOrDecrease(source, 0.0);
+
+        int settled = 0;
+        while (!heap.isEmpty()) {
+            int city = heap.poll();
+            if (settleOrder != null) {
+                settleOrder[settled] = city;
+            }
+            settled++;
+
+            for (int e = graph.firstEdge(city), last = graph.lastEdge(city); e < last; e++) {
+                int neighbor = graph.target(e);
+                double distance = distances[city] + graph.weight(e);
+                if (distance < distances[neighbor]) {
+                    distances[neighbor] = distance;
+                    if (parents != null) {
+                        parents[neighbor] = city;
+                    }
+                    heap.insertOrDecrease(neighbor, distance);
+                }
+            }
+        }
+        return settled;
+    }
+}
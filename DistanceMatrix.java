@@ -0,0 +1,491 @@
+package search_methods;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Shortest distances, and optionally routes, from a list of origin cities to a list of
+ * destination cities. Unreachable pairs get positive infinity. Distances are sums of
+ * {@link CompiledGraph#weight(int)}, so a pair whose routes all pass a city without coordinates
+ * gets {@code Double.MAX_VALUE}, the weight of such arcs, even though its route is kept.
+ *
+ * <p>Without a hierarchy every origin runs one Dijkstra search that stops as soon as all
+ * destinations are settled. With a {@link ContractionHierarchy} the bucket scheme is used instead:
+ * one backward upward search per destination leaves (destination, distance) entries in buckets at
+ * the cities it settles, then one forward upward search per origin scans the buckets of the cities
+ * it settles. Both kinds of search run in parallel, one origin or destination per task, with a
+ * search workspace per worker thread.
+ */
+public final class DistanceMatrix {
+    private final CompiledGraph graph;
+    private final int[] origins;
+    private final int[] destinations;
+    private final double[][] distances;
+    // routes[i][j] holds the city ids of the route, or null; the whole array is null without paths
+    private final int[][][] routes;
+
+    private DistanceMatrix(CompiledGraph graph, int[] origins, int[] destinations,
+                           double[][] distances, int[][][] routes) {
+        this.graph = graph;
+        this.origins = origins;
+        this.destinations = destinations;
+        this.distances = distances;
+        this.routes = routes;
+    }
+
+    /**
+     * Computes the matrix between named cities with one Dijkstra search per origin on every core.
+     *
+     * @throws IllegalArgumentException If a city is not in the graph.
+     */
+    public static DistanceMatrix compute(CompiledGraph graph, List<String> origins, List<String> destinations,
+                                         boolean withRoutes) {
+        return compute(graph, null, ids(graph, origins), ids(graph, destinations), withRoutes,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Computes the matrix between city ids.
+     *
+     * @param graph        The graph.
+     * @param hierarchy    The graph's contraction hierarchy for the bucket scheme, or null for
+     *                     one Dijkstra search per origin.
+     * @param origins      The row cities.
+     * @param destinations The column cities.
+     * @param withRoutes   Whether to keep the route of every pair as well.
+     * @param parallelism  The number of worker threads.
+     * @return The matrix.
+     */
+    public static DistanceMatrix compute(CompiledGraph graph, ContractionHierarchy hierarchy,
+                                         int[] origins, int[] destinations, boolean withRoutes, int parallelism) {
+        if (hierarchy != null && hierarchy.size() != graph.size()) {
+            throw new IllegalArgumentException("The hierarchy was built for a different graph");
+        }
+        origins = origins.clone();
+        destinations = destinations.clone();
+        for (int city : origins) {
+            checkCity(graph, city);
+        }
+        for (int city : destinations) {
+            checkCity(graph, city);
+        }
+
+        double[][] distances = new double[origins.length][];
+        int[][][] routes = withRoutes ? new int[origins.length][][] : null;
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            if (hierarchy == null) {
+                new DijkstraRows(graph, destinations, distances, routes).run(pool, origins);
+            } else {
+                new BucketRows(graph, hierarchy, destinations, distances, routes).run(pool, origins);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return new DistanceMatrix(graph, origins, destinations, distances, routes);
+    }
+
+    public int rows() {
+        return origins.length;
+    }
+
+    public int columns() {
+        return destinations.length;
+    }
+
+    public String origin(int row) {
+        return graph.name(origins[row]);
+    }
+
+    public String destination(int column) {
+        return graph.name(destinations[column]);
+    }
+
+    public double distance(int row, int column) {
+        return distances[row][column];
+    }
+
+    /**
+     * Returns the distance table itself, one array per origin. Callers must not modify it.
+     */
+    public double[][] distances() {
+        return distances;
+    }
+
+    public boolean hasRoutes() {
+        return routes != null;
+    }
+
+    /**
+     * Returns the route of a pair, or null if the destination is unreachable.
+     *
+     * @throws IllegalStateException If the matrix was computed without routes.
+     */
+    public List<String> route(int row, int column) {
+        if (routes == null) {
+            throw new IllegalStateException("The matrix was computed without routes");
+        }
+        int[] route = routes[row][column];
+        return route == null ? null : graph.toRoute(route, route.length);
+    }
+
+    /**
+     * Usage: {@code DistanceMatrix <adjacency file> <coordinates file> [--hierarchy] [--threads n]}.
+     * Prints the matrix between all cities as CSV, in kilometers.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: DistanceMatrix <adjacency file> <coordinates file> [--hierarchy] [--threads n]");
+            return;
+        }
+        boolean useHierarchy = false;
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--hierarchy":
+                    useHierarchy = true;
+                    break;
+                case "--threads":
+                    threadCount = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+        }
+
+        CompiledGraph graph = GraphLoader.load(Paths.get(args[0]), Paths.get(args[1]));
+        int[] cities = IntStream.range(0, graph.size()).toArray();
+        long startTime = System.nanoTime();
+        ContractionHierarchy hierarchy = useHierarchy ? ContractionHierarchy.build(graph, threadCount) : null;
+        DistanceMatrix matrix = compute(graph, hierarchy, cities, cities, false, threadCount);
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16));
+        for (int column = 0; column < matrix.columns(); column++) {
+            out.print(',');
+            out.print(matrix.destination(column));
+        }
+        out.println();
+        for (int row = 0; row < matrix.rows(); row++) {
+            out.print(matrix.origin(row));
+            for (int column = 0; column < matrix.columns(); column++) {
+                out.print(',');
+                out.print(matrix.distance(row, column));
+            }
+            out.println();
+        }
+        out.flush();
+        System.err.printf("%dx%d matrix in %.3f seconds%n", matrix.rows(), matrix.columns(), seconds);
+    }
+
+    private static int[] ids(CompiledGraph graph, List<String> names) {
+        int[] ids = new int[names.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = graph.id(names.get(i));
+            if (ids[i] < 0) {
+                throw new IllegalArgumentException("Unknown city: " + names.get(i));
+            }
+        }
+        return ids;
+    }
+
+    private static void checkCity(CompiledGraph graph, int city) {
+        if (city < 0 || city >= graph.size()) {
+            throw new IllegalArgumentException("No city with id " + city);
+        }
+    }
+
+    private static void parallel(ForkJoinPool pool, int count, IntConsumer action) {
+        try {
+            pool.submit(() -> IntStream.range(0, count).parallel().forEach(action)).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Distance matrix computation failed", e);
+        }
+    }
+
+    /**
+     * One Dijkstra search per origin, each stopping once every destination is settled.
+     */
+    private static final class DijkstraRows {
+        private final CompiledGraph graph;
+        private final int[] destinations;
+        private final double[][] distances;
+        private final int[][][] routes;
+        // True for every city that is a destination; duplicates count once
+        private final boolean[] isDestination;
+        private final int distinctDestinations;
+        private final ThreadLocal<Search> searches;
+
+        DijkstraRows(CompiledGraph graph, int[] destinations, double[][] distances, int[][][] routes) {
+            this.graph = graph;
+            this.destinations = destinations;
+            this.distances = distances;
+            this.routes = routes;
+            this.isDestination = new boolean[graph.size()];
+            int distinct = 0;
+            for (int city : destinations) {
+                if (!isDestination[city]) {
+                    isDestination[city] = true;
+                    distinct++;
+                }
+            }
+            this.distinctDestinations = distinct;
+            this.searches = ThreadLocal.withInitial(Search::new);
+        }
+
+        void run(ForkJoinPool pool, int[] origins) {
+            parallel(pool, origins.length, row -> searches.get().fillRow(row, origins[row]));
+        }
+
+        private final class Search {
+            private final SearchWorkspace workspace = new SearchWorkspace(graph.size());
+            private final IndexedMinHeap heap = new IndexedMinHeap(graph.size());
+
+            void fillRow(int row, int origin) {
+                SearchWorkspace ws = workspace;
+                ws.reset();
+                heap.clear();
+                ws.markSeen(origin);
+                ws.cost[origin] = 0.0;
+                heap.insertOrDecrease(origin, 0.0);
+
+                int targetsLeft = distinctDestinations;
+                while (!heap.isEmpty() && targetsLeft > 0) {
+                    int city = heap.poll();
+                    ws.markClosed(city);
+                    if (isDestination[city]) {
+                        targetsLeft--;
+                    }
+                    for (int e = graph.firstEdge(city), last = graph.lastEdge(city); e < last; e++) {
+                        int neighbor = graph.target(e);
+                        double cost = ws.cost[city] + graph.weight(e);
+                        if (!ws.isSeen(neighbor) || cost < ws.cost[neighbor]) {
+                            ws.markSeen(neighbor);
+                            ws.cost[neighbor] = cost;
+                            ws.parent[neighbor] = city;
+                            heap.insertOrDecrease(neighbor, cost);
+                        }
+                    }
+                }
+
+                double[] distanceRow = new double[destinations.length];
+                int[][] routeRow = routes != null ? new int[destinations.length][] : null;
+                for (int column = 0; column < destinations.length; column++) {
+                    int destination = destinations[column];
+                    if (!ws.isClosed(destination)) {
+                        distanceRow[column] = Double.POSITIVE_INFINITY;
+                        continue;
+                    }
+                    distanceRow[column] = ws.cost[destination];
+                    if (routeRow != null) {
+                        routeRow[column] = Arrays.copyOf(ws.path, ws.tracePath(origin, destination));
+                    }
+                }
+                distances[row] = distanceRow;
+                if (routes != null) {
+                    routes[row] = routeRow;
+                }
+            }
+        }
+    }
+
+    /**
+     * The many-to-many bucket scheme on a contraction hierarchy.
+     */
+    private static final class BucketRows {
+        private final CompiledGraph graph;
+        private final ContractionHierarchy hierarchy;
+        private final int[] destinations;
+        private final double[][] distances;
+        private final int[][][] routes;
+        private final ThreadLocal<Search> searches;
+
+        // Buckets in CSR form: the entries left at city v are bucketOffsets[v] .. bucketOffsets[v + 1]
+        private int[] bucketOffsets;
+        private int[] bucketColumns;
+        private double[] bucketDistances;
+        // Next city towards the destination on the backward search tree, or -1 at the destination
+        private int[] bucketParents;
+
+        BucketRows(CompiledGraph graph, ContractionHierarchy hierarchy, int[] destinations,
+                   double[][] distances, int[][][] routes) {
+            this.graph = graph;
+            this.hierarchy = hierarchy;
+            this.destinations = destinations;
+            this.distances = distances;
+            this.routes = routes;
+            this.searches = ThreadLocal.withInitial(Search::new);
+        }
+
+        void run(ForkJoinPool pool, int[] origins) {
+            int[][] settledCities = new int[destinations.length][];
+            double[][] settledDistances = new double[destinations.length][];
+            int[][] settledParents = new int[destinations.length][];
+            parallel(pool, destinations.length, column -> searches.get().searchBackward(
+                    column, settledCities, settledDistances, settledParents));
+            fillBuckets(settledCities, settledDistances, settledParents);
+            parallel(pool, origins.length, row -> searches.get().fillRow(row, origins[row]));
+        }
+
+        private void fillBuckets(int[][] settledCities, double[][] settledDistances, int[][] settledParents) {
+            bucketOffsets = new int[graph.size() + 1];
+            for (int[] cities : settledCities) {
+                for (int city : cities) {
+                    bucketOffsets[city + 1]++;
+                }
+            }
+            for (int city = 0; city < graph.size(); city++) {
+                bucketOffsets[city + 1] += bucketOffsets[city];
+            }
+            int entryCount = bucketOffsets[graph.size()];
+            bucketColumns = new int[entryCount];
+            bucketDistances = new double[entryCount];
+            bucketParents = new int[entryCount];
+            int[] cursor = Arrays.copyOf(bucketOffsets, graph.size());
+            for (int column = 0; column < settledCities.length; column++) {
+                for (int i = 0; i < settledCities[column].length; i++) {
+                    int entry = cursor[settledCities[column][i]]++;
+                    bucketColumns[entry] = column;
+                    bucketDistances[entry] = settledDistances[column][i];
+                    bucketParents[entry] = settledParents[column][i];
+                }
+            }
+        }
+
+        private int bucketEntry(int city, int column) {
+            for (int entry = bucketOffsets[city]; entry < bucketOffsets[city + 1]; entry++) {
+                if (bucketColumns[entry] == column) {
+                    return entry;
+                }
+            }
+            throw new IllegalStateException("No bucket entry for column " + column + " at city " + city);
+        }
+
+        private final class Search {
+            private final SearchWorkspace workspace = new SearchWorkspace(graph.size());
+            private final IndexedMinHeap heap = new IndexedMinHeap(graph.size());
+            private final ShortcutUnpacker unpacker = new ShortcutUnpacker(hierarchy);
+            private int[] hierarchyPath;
+
+            /**
+             * Runs the full backward upward search from one destination and records every settled city.
+             */
+            void searchBackward(int column, int[][] settledCities, double[][] settledDistances, int[][] settledParents) {
+                SearchWorkspace ws = workspace;
+                start(destinations[column]);
+                int settled = 0;
+                while (!heap.isEmpty()) {
+                    int city = heap.poll();
+                    ws.queue[settled++] = city;
+                    for (int arc = hierarchy.firstBackward(city), last = hierarchy.lastBackward(city); arc < last; arc++) {
+                        relax(city, hierarchy.backwardTarget(arc), hierarchy.backwardWeight(arc));
+                    }
+                }
+
+                int[] cities = Arrays.copyOf(ws.queue, settled);
+                double[] cityDistances = new double[settled];
+                int[] parents = new int[settled];
+                for (int i = 0; i < settled; i++) {
+                    cityDistances[i] = ws.cost[cities[i]];
+                    parents[i] = cities[i] == destinations[column] ? -1 : ws.parent[cities[i]];
+                }
+                settledCities[column] = cities;
+                settledDistances[column] = cityDistances;
+                settledParents[column] = parents;
+            }
+
+            /**
+             * Runs the full forward upward search from one origin and scans the buckets it meets.
+             */
+            void fillRow(int row, int origin) {
+                SearchWorkspace ws = workspace;
+                double[] distanceRow = new double[destinations.length];
+                Arrays.fill(distanceRow, Double.POSITIVE_INFINITY);
+                int[] meetingCities = routes != null ? new int[destinations.length] : null;
+
+                start(origin);
+                while (!heap.isEmpty()) {
+                    int city = heap.poll();
+                    double cost = ws.cost[city];
+                    for (int entry = bucketOffsets[city], last = bucketOffsets[city + 1]; entry < last; entry++) {
+                        int column = bucketColumns[entry];
+                        if (cost + bucketDistances[entry] < distanceRow[column]) {
+                            distanceRow[column] = cost + bucketDistances[entry];
+                            if (meetingCities != null) {
+                                meetingCities[column] = city;
+                            }
+                        }
+                    }
+                    for (int arc = hierarchy.firstForward(city), last = hierarchy.lastForward(city); arc < last; arc++) {
+                        relax(city, hierarchy.forwardTarget(arc), hierarchy.forwardWeight(arc));
+                    }
+                }
+
+                distances[row] = distanceRow;
+                if (routes != null) {
+                    int[][] routeRow = new int[destinations.length][];
+                    for (int column = 0; column < destinations.length; column++) {
+                        if (distanceRow[column] != Double.POSITIVE_INFINITY) {
+                            routeRow[column] = unpackRoute(origin, meetingCities[column], column);
+                        }
+                    }
+                    routes[row] = routeRow;
+                }
+            }
+
+            private void start(int city) {
+                workspace.reset();
+                heap.clear();
+                workspace.markSeen(city);
+                workspace.cost[city] = 0.0;
+                heap.insertOrDecrease(city, 0.0);
+            }
+
+            private void relax(int city, int next, double weight) {
+                SearchWorkspace ws = workspace;
+                double cost = ws.cost[city] + weight;
+                if (!ws.isSeen(next) || cost < ws.cost[next]) {
+                    ws.markSeen(next);
+                    ws.cost[next] = cost;
+                    ws.parent[next] = city;
+                    heap.insertOrDecrease(next, cost);
+                }
+            }
+
+            /**
+             * Joins the forward tree path origin .. meeting and the backward tree path
+             * meeting .. destination, then expands the shortcuts on it.
+             */
+            private int[] unpackRoute(int origin, int meeting, int column) {
+                SearchWorkspace ws = workspace;
+                if (hierarchyPath == null) {
+                    hierarchyPath = new int[graph.size()];
+                }
+                int hierarchyLength = ws.tracePath(origin, meeting);
+                System.arraycopy(ws.path, 0, hierarchyPath, 0, hierarchyLength);
+                for (int parent = bucketParents[bucketEntry(meeting, column)]; parent >= 0;
+                     parent = bucketParents[bucketEntry(parent, column)]) {
+                    hierarchyPath[hierarchyLength++] = parent;
+                }
+
+                int[] path = ws.path;
+                int length = 0;
+                path[length++] = origin;
+                for (int i = 0; i + 1 < hierarchyLength; i++) {
+                    length = unpacker.unpack(hierarchyPath[i], hierarchyPath[i + 1], path, length);
+                }
+                return Arrays.copyOf(path, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package search_methods;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A road graph that changes while it is being queried. Every {@link CompiledGraph} stays
+ * immutable; an update builds the next version copy-on-write and publishes it with a single
+ * volatile write, so readers never block and a query runs entirely on the version it started
+ * with. Updates are serialized and should be batched: each one copies the CSR arrays once,
+ * while cities and their coordinate tables are shared between versions until a city is added.
+ *
+ * <p>Derived structures are repaired rather than rebuilt. Landmark tables are patched from the
+ * changed arcs (see {@link LandmarkIndex#repair}), and listeners, such as a {@link RouteCache}
+ * registered as {@code cache::invalidate}, hear about every change after it is published. A
+ * cache stamps its routes with the version they were computed on, so a query that reaches the
+ * new version before the listeners run still misses rather than reading a stale route.
+ * Connected components are merged for added roads (see {@link ConnectivityIndex}).
+ * Contraction hierarchies are not repaired: {@link ContractionHierarchy#of} builds one for a
+ * new version the first time it is queried.
+ */
+public final class DynamicGraph {
+    /**
+     * Told about every update, on the updating thread, after the new version is published.
+     */
+    public interface Listener {
+        void graphChanged(Snapshot snapshot, Changes changes);
+    }
+
+    /**
+     * One published version: the graph and the landmark tables that belong to it.
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final CompiledGraph graph;
+        private final LandmarkIndex landmarks;
+
+        Snapshot(long version, CompiledGraph graph, LandmarkIndex landmarks) {
+            this.version = version;
+            this.graph = graph;
+            this.landmarks = landmarks;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public CompiledGraph getGraph() {
+            return graph;
+        }
+
+        /**
+         * Returns the landmark tables for this version, or null if the graph has none.
+         */
+        public LandmarkIndex getLandmarks() {
+            return landmarks;
+        }
+
+        /**
+         * Creates a finder for this version, using the landmark tables for A* when there are any.
+         */
+        public RouteFinder createFinder(SearchMethod method) {
+            if (method == SearchMethod.A_STAR && landmarks != null) {
+                return new AStarRouteFinder(graph, landmarks);
+            }
+            return method.create(graph);
+        }
+    }
+
+    /**
+     * The arcs an update changed, by city id in the new version. An arc that did not exist on
+     * one side of the change has an infinite weight there.
+     */
+    public static final class Changes {
+        private final int firstNewCity;
+        private final int[] from;
+        private final int[] to;
+        private final double[] oldWeights;
+        private final double[] newWeights;
+        private final boolean hasDecreases;
+
+        Changes(int firstNewCity, int[] from, int[] to, double[] oldWeights, double[] newWeights) {
+            this.firstNewCity = firstNewCity;
+            this.from = from;
+            this.to = to;
+            this.oldWeights = oldWeights;
+            this.newWeights = newWeights;
+            boolean decreases = false;
+            for (int i = 0; i < from.length; i++) {
+                decreases |= newWeights[i] < oldWeights[i];
+            }
+            this.hasDecreases = decreases;
+        }
+
+        public int size() {
+            return from.length;
+        }
+
+        public int from(int change) {
+            return from[change];
+        }
+
+        public int to(int change) {
+            return to[change];
+        }
+
+        public double oldWeight(int change) {
+            return oldWeights[change];
+        }
+
+        public double newWeight(int change) {
+            return newWeights[change];
+        }
+
+        /**
+         * Returns the id of the first added city; ids from here on did not exist before.
+         */
+        public int firstNewCity() {
+            return firstNewCity;
+        }
+
+        /**
+         * Returns true if an arc was added or got shorter. Without such changes no route got
+         * shorter, so routes that avoid the changed arcs are still shortest routes.
+         */
+        public boolean hasDecreases() {
+            return hasDecreases;
+        }
+    }
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot current;
+
+    public DynamicGraph(CompiledGraph graph) {
+        this(graph, null);
+    }
+
+    /**
+     * @param graph     The first version of the graph.
+     * @param landmarks Landmark tables for it, kept up to date through updates, or null.
+     */
+    public DynamicGraph(CompiledGraph graph, LandmarkIndex landmarks) {
+        this.current = new Snapshot(0, graph, landmarks);
+    }
+
+    /**
+     * Returns the latest version. Hold on to the snapshot, not the DynamicGraph, for the
+     * duration of a query.
+     */
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns a finder that always searches the latest version. It switches versions between
+     * queries, recreating its search state only after an update, and like the other finders it
+     * must not be shared between threads. Its statistics are those of the last search.
+     */
+    public RouteFinder finder(SearchMethod method) {
+        return finder(method, null);
+    }
+
+    /**
+     * Returns a finder that always searches the latest version and answers from the cache
+     * when it can. Routes are looked up and stored under the version each query searches; the
+     * cache should also be registered with {@code addListener(cache::invalidate)} so the routes
+     * an update leaves intact carry over to the next version. Like {@link CachingRouteFinder},
+     * it reports no statistics.
+     */
+    public RouteFinder finder(SearchMethod method, RouteCache cache) {
+        return new RouteFinder() {
+            private Snapshot snapshot;
+            private RouteFinder delegate;
+
+            @Override
+            public List<String> findRoute(String startCity, String endCity) {
+                Snapshot latest = current;
+                if (latest != snapshot) {
+                    delegate = latest.createFinder(method);
+                    snapshot = latest;
+                }
+                if (cache != null) {
+                    return cache.findRoute(startCity, endCity, method, latest, delegate);
+                }
+                return delegate.findRoute(startCity, endCity);
+            }
+
+            @Override
+            public SearchStatistics getStatistics() {
+                // A cache hit does no search, so only an uncached finder has figures to report
+                return cache == null && delegate != null ? delegate.getStatistics() : null;
+            }
+        };
+    }
+
+    /**
+     * Applies a batch of changes and publishes the result as the next version.
+     *
+     * @param update The changes, applied in order.
+     * @return The new version.
+     * @throws IllegalArgumentException If a change names an unknown city or road, adds a city
+     *                                  that exists, or sets a weight below the chord distance.
+     *                                  Nothing is published in that case.
+     */
+    public synchronized Snapshot apply(GraphUpdate update) {
+        Snapshot previous = current;
+        CompiledGraph graph = previous.graph;
+        CompiledGraph cities = addCities(graph, update);
+        int size = cities.size();
+
+        // Arcs of every city an edit touches, by target, in their original order
+        Map<Integer, Map<Integer, Double>> touched = new TreeMap<>();
+        for (GraphUpdate.Edit edit : update.edits()) {
+            if (edit.kind == GraphUpdate.Kind.ADD_CITY) {
+                continue;
+            }
+            int a = resolve(cities, edit.first);
+            int b = resolve(cities, edit.second);
+            Map<Integer, Double> arcs = touchedArcs(graph, touched, a);
+            switch (edit.kind) {
+                case ADD_ROAD:
+                    arcs.put(b, cities.arcLength(a, b));
+                    touchedArcs(graph, touched, b).put(a, cities.arcLength(b, a));
+                    break;
+                case REMOVE_ROAD:
+                    boolean forward = arcs.remove(b) != null;
+                    boolean backward = touchedArcs(graph, touched, b).remove(a) != null;
+                    if (!forward && !backward) {
+                        throw new IllegalArgumentException("No road between " + edit.first + " and " + edit.second);
+                    }
+                    break;
+                case SET_WEIGHT:
+                    if (!arcs.containsKey(b)) {
+                        throw new IllegalArgumentException("No road from " + edit.first + " to " + edit.second);
+                    }
+                    if (!(edit.x >= cities.chordDistance(a, b))) {
+                        throw new IllegalArgumentException("Weight " + edit.x + " from " + edit.first + " to "
+                                + edit.second + " is below the straight-line distance " + cities.chordDistance(a, b));
+                    }
+                    arcs.put(b, edit.x);
+                    break;
+                default:
+                    throw new AssertionError(edit.kind);
+            }
+        }
+
+        int[] offsets = new int[size + 1];
+        for (int v = 0; v < size; v++) {
+            Map<Integer, Double> arcs = touched.get(v);
+            offsets[v + 1] = offsets[v] + (arcs != null ? arcs.size() : v < graph.size() ? graph.degree(v) : 0);
+        }
+        int[] targets = new int[offsets[size]];
+        double[] weights = new double[offsets[size]];
+        for (int v = 0; v < size; v++) {
+            Map<Integer, Double> arcs = touched.get(v);
+            int slot = offsets[v];
+            if (arcs != null) {
+                for (Map.Entry<Integer, Double> arc : arcs.entrySet()) {
+                    targets[slot] = arc.getKey();
+                    weights[slot++] = arc.getValue();
+                }
+            } else if (v < graph.size()) {
+                for (int e = graph.firstEdge(v), last = graph.lastEdge(v); e < last; e++) {
+                    targets[slot] = graph.target(e);
+                    weights[slot++] = graph.weight(e);
+                }
+            }
+        }
+
+        CompiledGraph next = cities.withArcs(offsets, targets, weights);
+        Changes changes = diff(graph, touched);
+        ConnectivityIndex connectivity = graph.connectivityIfBuilt();
+        if (connectivity != null) {
+            next.setConnectivity(connectivity.update(next, changes));
+        }
+        LandmarkIndex landmarks = previous.landmarks != null ? previous.landmarks.repair(next, changes) : null;
+        Snapshot snapshot = new Snapshot(previous.version + 1, next, landmarks);
+        current = snapshot;
+        for (Listener listener : listeners) {
+            listener.graphChanged(snapshot, changes);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Returns the graph with the update's new cities appended, or the graph itself if there are none.
+     */
+    private static CompiledGraph addCities(CompiledGraph graph, GraphUpdate update) {
+        List<GraphUpdate.Edit> added = new ArrayList<>();
+        Set<String> addedNames = new HashSet<>();
+        for (GraphUpdate.Edit edit : update.edits()) {
+            if (edit.kind == GraphUpdate.Kind.ADD_CITY) {
+                if (graph.id(edit.first) >= 0 || !addedNames.add(edit.first)) {
+                    throw new IllegalArgumentException("City already exists: " + edit.first);
+                }
+                added.add(edit);
+            }
+        }
+        if (added.isEmpty()) {
+            return graph;
+        }
+
+        int oldSize = graph.size();
+        int size = oldSize + added.size();
+        String[] names = new String[size];
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        for (int v = 0; v < oldSize; v++) {
+            names[v] = graph.name(v);
+            latitudes[v] = graph.latitude(v);
+            longitudes[v] = graph.longitude(v);
+        }
+        for (int i = 0; i < added.size(); i++) {
+            names[oldSize + i] = added.get(i).first;
+            latitudes[oldSize + i] = added.get(i).x;
+            longitudes[oldSize + i] = added.get(i).y;
+        }
+        return new CompiledGraph(names, new int[size + 1], new int[0], latitudes, longitudes);
+    }
+
+    private static int resolve(CompiledGraph graph, String city) {
+        int id = graph.id(city);
+        if (id < 0) {
+            throw new IllegalArgumentException("Unknown city: " + city);
+        }
+        return id;
+    }
+
+    private static Map<Integer, Double> touchedArcs(CompiledGraph graph, Map<Integer, Map<Integer, Double>> touched, int city) {
+        return touched.computeIfAbsent(city, v -> arcsOf(graph, v));
+    }
+
+    /**
+     * Returns the arcs leaving a city by target, keeping the shortest of any parallel arcs.
+     */
+    private static Map<Integer, Double> arcsOf(CompiledGraph graph, int city) {
+        Map<Integer, Double> arcs = new LinkedHashMap<>();
+        if (city < graph.size()) {
+            for (int e = graph.firstEdge(city), last = graph.lastEdge(city); e < last; e++) {
+                arcs.merge(graph.target(e), graph.weight(e), Math::min);
+            }
+        }
+        return arcs;
+    }
+
+    private static Changes diff(CompiledGraph graph, Map<Integer, Map<Integer, Double>> touched) {
+        List<int[]> arcs = new ArrayList<>();
+        List<double[]> weights = new ArrayList<>();
+        for (Map.Entry<Integer, Map<Integer, Double>> entry : touched.entrySet()) {
+            int from = entry.getKey();
+            Map<Integer, Double> before = arcsOf(graph, from);
+            Map<Integer, Double> after = entry.getValue();
+            for (Map.Entry<Integer, Double> arc : before.entrySet()) {
+                double newWeight = after.getOrDefault(arc.getKey(), Double.POSITIVE_INFINITY);
+                if (newWeight != arc.getValue()) {
+                    arcs.add(new int[] {from, arc.getKey()});
+                    weights.add(new double[] {arc.getValue(), newWeight});
+                }
+            }
+            for (Map.Entry<Integer, Double> arc : after.entrySet()) {
+                if (!before.containsKey(arc.getKey())) {
+                    arcs.add(new int[] {from, arc.getKey()});
+                    weights.add(new double[] {Double.POSITIVE_INFINITY, arc.getValue()});
+                }
+            }
+        }
+
+        int count = arcs.size();
+        int[] from = new int[count];
+        int[] to = new int[count];
+        double[] oldWeights = new double[count];
+        double[] newWeights = new double[count];
+        for (int i = 0; i < count; i++) {
+            from[i] = arcs.get(i)[0];
+            to[i] = arcs.get(i)[1];
+            oldWeights[i] = weights.get(i)[0];
+            newWeights[i] = weights.get(i)[1];
+        }
+        return new Changes(graph.size(), from, to, oldWeights, newWeights);
+    }
+}
@@ -0,0 +1,495 @@
+package search_methods;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Loads a {@link CompiledGraph} straight from the adjacency and coordinate files.
+ *
+ * <p>Both files are memory-mapped in newline-aligned chunks that are parsed in parallel. Tokens
+ * are read from the mapped bytes; a chunk creates a String only the first time it meets a city
+ * name, and the chunks' names are then merged into one id dictionary in file order. Cities get
+ * ids in order of first appearance in the adjacency file, followed by cities that only appear in
+ * the coordinates file, and the arcs of every city keep file order, as with
+ * {@link CompiledGraph#compile(Map, Map)}.
+ *
+ * <p>Formats:
+ * <ul>
+ *   <li>Adjacency file: one bidirectional road per line, two city names separated by spaces or
+ *       tabs. Trailing whitespace is allowed; lines without exactly two names are skipped.</li>
+ *   <li>Coordinates file: {@code name,latitude,longitude} per line, fields may be padded with
+ *       whitespace. Lines without exactly three fields are skipped; a later line for the same city
+ *       replaces an earlier one.</li>
+ * </ul>
+ */
+public final class GraphLoader {
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+    // Powers of ten that are exact doubles, for the fast path of parseDouble
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    private GraphLoader() {
+    }
+
+    /**
+     * Loads the graph, parsing on every available core.
+     */
+    public static CompiledGraph load(Path adjacencyFile, Path coordinatesFile) throws IOException {
+        return load(adjacencyFile, coordinatesFile, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Loads the graph.
+     *
+     * @param adjacencyFile   The road list.
+     * @param coordinatesFile The city coordinates.
+     * @param parallelism     The number of parsing threads.
+     * @return The compiled graph.
+     * @throws IOException If a file cannot be read or holds a malformed coordinate.
+     */
+    public static CompiledGraph load(Path adjacencyFile, Path coordinatesFile, int parallelism) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            List<AdjacencyChunk> roads = parse(pool, adjacencyFile, parallelism, AdjacencyChunk::new);
+            List<CoordinateChunk> coordinates = parse(pool, coordinatesFile, parallelism, CoordinateChunk::new);
+            CompiledGraph graph = assemble(pool, roads, coordinates);
+            // Found now so that no query pays for it
+            graph.connectivity();
+            return graph;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static CompiledGraph assemble(ForkJoinPool pool, List<AdjacencyChunk> roads,
+                                          List<CoordinateChunk> coordinates) {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int[][] remaps = new int[roads.size()][];
+        int[] edgeStarts = new int[roads.size() + 1];
+        for (int c = 0; c < roads.size(); c++) {
+            remaps[c] = intern(roads.get(c).names, ids, names);
+            edgeStarts[c + 1] = edgeStarts[c] + roads.get(c).edgeCount;
+        }
+
+        int edgeCount = edgeStarts[roads.size()];
+        int[] from = new int[edgeCount];
+        int[] to = new int[edgeCount];
+        run(pool, roads.size(), c -> {
+            AdjacencyChunk chunk = roads.get(c);
+            int[] remap = remaps[c];
+            for (int i = 0; i < chunk.edgeCount; i++) {
+                from[edgeStarts[c] + i] = remap[chunk.from[i]];
+                to[edgeStarts[c] + i] = remap[chunk.to[i]];
+            }
+        });
+
+        int[][] coordinateRemaps = new int[coordinates.size()][];
+        for (int c = 0; c < coordinates.size(); c++) {
+            coordinateRemaps[c] = intern(coordinates.get(c).names, ids, names);
+        }
+        double[] latitudes = new double[names.size()];
+        double[] longitudes = new double[names.size()];
+        Arrays.fill(latitudes, Double.NaN);
+        Arrays.fill(longitudes, Double.NaN);
+        for (int c = 0; c < coordinates.size(); c++) {
+            CoordinateChunk chunk = coordinates.get(c);
+            for (int i = 0; i < chunk.recordCount; i++) {
+                int city = coordinateRemaps[c][chunk.cities[i]];
+                latitudes[city] = chunk.latitudes[i];
+                longitudes[city] = chunk.longitudes[i];
+            }
+        }
+
+        return CompiledGraph.fromEdgeList(names.toArray(new String[0]), latitudes, longitudes,
+                from, to, edgeCount, true);
+    }
+
+    /**
+     * Gives every chunk-local name its global id, assigning new ids in order.
+     */
+    private static int[] intern(NameTable local, Map<String, Integer> ids, List<String> names) {
+        int[] remap = new int[local.size()];
+        for (int i = 0; i < remap.length; i++) {
+            String name = local.name(i);
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = names.size();
+                ids.put(name, id);
+                names.add(name);
+            }
+            remap[i] = id;
+        }
+        return remap;
+    }
+
+    private interface ChunkFactory<T> {
+        T parse(Path file, ByteBuffer bytes, long position) throws IOException;
+    }
+
+    /**
+     * Maps the file in newline-aligned chunks and parses them in parallel.
+     */
+    private static <T> List<T> parse(ForkJoinPool pool, Path file, int parallelism, ChunkFactory<T> factory)
+            throws IOException {
+        MappedByteBuffer[] buffers;
+        long[] starts;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunkCount = (int) Math.max(size / MAX_CHUNK_BYTES + 1,
+                    Math.min(4L * Math.max(1, parallelism), size / MIN_CHUNK_BYTES + 1));
+            starts = new long[chunkCount + 1];
+            starts[chunkCount] = size;
+            for (int c = 1; c < chunkCount; c++) {
+                starts[c] = nextLineStart(channel, Math.max(starts[c - 1], size * c / chunkCount), size);
+            }
+            buffers = new MappedByteBuffer[chunkCount];
+            for (int c = 0; c < chunkCount; c++) {
+                buffers[c] = channel.map(FileChannel.MapMode.READ_ONLY, starts[c], starts[c + 1] - starts[c]);
+            }
+        }
+
+        try {
+            return submit(pool, () -> IntStream.range(0, buffers.length).parallel().mapToObj(c -> {
+                try {
+                    return factory.parse(file, buffers[c], starts[c]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).collect(Collectors.toList()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns the position just after the first newline at or after {@code position - 1},
+     * or the file size if there is none.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        if (position == 0) {
+            return 0;
+        }
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        for (long at = position - 1; at < size; ) {
+            probe.clear();
+            int read = channel.read(probe, at);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return at + i + 1;
+                }
+            }
+            at += read;
+        }
+        return size;
+    }
+
+    private static void run(ForkJoinPool pool, int count, IntConsumer action) {
+        submit(pool, () -> {
+            IntStream.range(0, count).parallel().forEach(action);
+            return null;
+        });
+    }
+
+    private static <T> T submit(ForkJoinPool pool, Callable<T> task) {
+        try {
+            return pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Graph loading was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Graph loading failed", e.getCause());
+        }
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * Parses a decimal number from bytes. Plain decimals with at most 15 significant digits are
+     * converted exactly without allocating; anything else goes through {@link Double#parseDouble}.
+     */
+    static double parseDouble(ByteBuffer bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes.get(i) == '-' || bytes.get(i) == '+')) {
+            negative = bytes.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        int fractionDigits = -1;
+        boolean sawDigit = false;
+        for (; i < end; i++) {
+            byte b = bytes.get(i);
+            if (b >= '0' && b <= '9') {
+                sawDigit = true;
+                mantissa = mantissa * 10 + (b - '0');
+                if (mantissa != 0) {
+                    significantDigits++;
+                }
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+        // Both operands are exact doubles here, so the division rounds correctly
+        if (i == end && sawDigit && significantDigits <= 15 && fractionDigits < POWERS_OF_TEN.length) {
+            double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+            return negative ? -value : value;
+        }
+        byte[] text = new byte[end - start];
+        for (int j = 0; j < text.length; j++) {
+            text[j] = bytes.get(start + j);
+        }
+        return Double.parseDouble(new String(text, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Interns the names of one chunk: an open-addressing table keyed by the raw bytes, so a name
+     * becomes a String only the first time the chunk meets it.
+     */
+    private static final class NameTable {
+        private int[] slots = new int[1024]; // local id + 1, 0 for empty
+        private int[] hashes = new int[16];
+        private int[] starts = new int[16];
+        private int[] lengths = new int[16];
+        private String[] names = new String[16];
+        private byte[] pool = new byte[1024];
+        private int poolSize;
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        String name(int id) {
+            return names[id];
+        }
+
+        int intern(ByteBuffer bytes, int start, int end) {
+            int hash = 1;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + bytes.get(i);
+            }
+            int mask = slots.length - 1;
+            for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+                int entry = slots[slot] - 1;
+                if (entry < 0) {
+                    return add(bytes, start, end, hash, slot);
+                }
+                if (hashes[entry] == hash && matches(entry, bytes, start, end)) {
+                    return entry;
+                }
+            }
+        }
+
+        private boolean matches(int entry, ByteBuffer bytes, int start, int end) {
+            if (lengths[entry] != end - start) {
+                return false;
+            }
+            for (int i = 0, at = starts[entry]; i < end - start; i++, at++) {
+                if (pool[at] != bytes.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int add(ByteBuffer bytes, int start, int end, int hash, int slot) {
+            int length = end - start;
+            if (size == names.length) {
+                hashes = Arrays.copyOf(hashes, size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+                names = Arrays.copyOf(names, size * 2);
+            }
+            if (poolSize + length > pool.length) {
+                pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+            }
+            for (int i = 0; i < length; i++) {
+                pool[poolSize + i] = bytes.get(start + i);
+            }
+            int id = size++;
+            hashes[id] = hash;
+            starts[id] = poolSize;
+            lengths[id] = length;
+            names[id] = new String(pool, poolSize, length, StandardCharsets.UTF_8);
+            poolSize += length;
+            slots[slot] = id + 1;
+            if (2 * size > slots.length) {
+                rehash();
+            }
+            return id;
+        }
+
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            int mask = slots.length - 1;
+            for (int id = 0; id < size; id++) {
+                int slot = mix(hashes[id]) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = id + 1;
+            }
+        }
+
+        private static int mix(int hash) {
+            hash *= 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * The roads of one chunk of the adjacency file, in chunk-local ids.
+     */
+    private static final class AdjacencyChunk {
+        final NameTable names = new NameTable();
+        int[] from = new int[256];
+        int[] to = new int[256];
+        int edgeCount;
+
+        AdjacencyChunk(Path file, ByteBuffer bytes, long position) {
+            int limit = bytes.limit();
+            int[] tokenStarts = new int[3];
+            int[] tokenEnds = new int[3];
+            int i = 0;
+            while (i < limit) {
+                int tokens = 0;
+                byte b;
+                while (i < limit && (b = bytes.get(i)) != '\n') {
+                    if (isBlank(b)) {
+                        i++;
+                        continue;
+                    }
+                    int start = i;
+                    while (i < limit && (b = bytes.get(i)) != '\n' && !isBlank(b)) {
+                        i++;
+                    }
+                    if (tokens < 3) {
+                        tokenStarts[tokens] = start;
+                        tokenEnds[tokens] = i;
+                    }
+                    tokens++;
+                }
+                i++; // Skip the newline
+                if (tokens == 2) {
+                    add(names.intern(bytes, tokenStarts[0], tokenEnds[0]),
+                            names.intern(bytes, tokenStarts[1], tokenEnds[1]));
+                }
+            }
+        }
+
+        private void add(int a, int b) {
+            if (edgeCount == from.length) {
+                from = Arrays.copyOf(from, edgeCount * 2);
+                to = Arrays.copyOf(to, edgeCount * 2);
+            }
+            from[edgeCount] = a;
+            to[edgeCount++] = b;
+        }
+    }
+
+    /**
+     * The coordinate records of one chunk of the coordinates file, in chunk-local ids.
+     */
+    private static final class CoordinateChunk {
+        final NameTable names = new NameTable();
+        int[] cities = new int[64];
+        double[] latitudes = new double[64];
+        double[] longitudes = new double[64];
+        int recordCount;
+
+        CoordinateChunk(Path file, ByteBuffer bytes, long position) throws IOException {
+            int limit = bytes.limit();
+            int[] fieldStarts = new int[3];
+            int[] fieldEnds = new int[3];
+            int i = 0;
+            while (i < limit) {
+                int lineStart = i;
+                int fields = 0;
+                int fieldStart = i;
+                for (; i < limit && bytes.get(i) != '\n'; i++) {
+                    if (bytes.get(i) == ',') {
+                        if (fields < 3) {
+                            fieldStarts[fields] = fieldStart;
+                            fieldEnds[fields] = i;
+                        }
+                        fields++;
+                        fieldStart = i + 1;
+                    }
+                }
+                if (fields < 3) {
+                    fieldStarts[fields] = fieldStart;
+                    fieldEnds[fields] = i;
+                }
+                fields++;
+                i++; // Skip the newline
+                if (fields != 3) {
+                    continue;
+                }
+
+                for (int f = 0; f < 3; f++) {
+                    while (fieldStarts[f] < fieldEnds[f] && isBlank(bytes.get(fieldStarts[f]))) {
+                        fieldStarts[f]++;
+                    }
+                    while (fieldEnds[f] > fieldStarts[f] && isBlank(bytes.get(fieldEnds[f] - 1))) {
+                        fieldEnds[f]--;
+                    }
+                }
+                double latitude;
+                double longitude;
+                try {
+                    latitude = parseDouble(bytes, fieldStarts[1], fieldEnds[1]);
+                    longitude = parseDouble(bytes, fieldStarts[2], fieldEnds[2]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Malformed coordinates in " + file + " at byte " + (position + lineStart), e);
+                }
+                add(names.intern(bytes, fieldStarts[0], fieldEnds[0]), latitude, longitude);
+            }
+        }
+
+        private void add(int city, double latitude, double longitude) {
+            if (recordCount == cities.length) {
+                cities = Arrays.copyOf(cities, recordCount * 2);
+                latitudes = Arrays.copyOf(latitudes, recordCount * 2);
+                longitudes = Arrays.copyOf(longitudes, recordCount * 2);
+            }
+            cities[recordCount] = city;
+            latitudes[recordCount] = latitude;
+            longitudes[recordCount++] = longitude;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package search_methods;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A binary snapshot of a {@link CompiledGraph} that is memory-mapped instead of parsed. A mapped
+ * graph reads its arrays straight from the page cache, so startup does no parsing or copying
+ * and every process mapping the same file shares one copy of it.
+ *
+ * <p>File layout (little-endian), every section starting on an 8-byte boundary:
+ * <pre>
+ *   header     magic "GRS1", int version, int city count n, int arc count m,
+ *              int name slot count s, int name byte count b
+ *   int[n + 1]  CSR offsets           int[m]  arc targets       double[m]  arc weights
+ *   double[n] x 8  latitudes, longitudes, latitude and longitude radians, cosine of latitude,
+ *                  unit-sphere x, y and z
+ *   int[n + 1]  name byte offsets     int[s]  name hash table   byte[b]  UTF-8 names
+ * </pre>
+ * The name table is described in {@link CityNames#mapped}. Each section is mapped on its own, so
+ * any one of them may be up to 2 GB.
+ */
+public final class GraphSnapshot {
+    private static final int MAGIC = 0x31535247; // "GRS1" read as a little-endian int
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int CITY_TABLES = 8;
+
+    private GraphSnapshot() {
+    }
+
+    /**
+     * Writes the graph in the format described in the class comment.
+     */
+    public static void save(CompiledGraph graph, Path file) throws IOException {
+        CityNames names = graph.cityNames();
+        int cityCount = graph.size();
+        byte[][] utf8Names = new byte[cityCount][];
+        int[] nameOffsets = new int[cityCount + 1];
+        for (int v = 0; v < cityCount; v++) {
+            utf8Names[v] = names.name(v).getBytes(StandardCharsets.UTF_8);
+            nameOffsets[v + 1] = Math.addExact(nameOffsets[v], utf8Names[v].length);
+        }
+        int[] slots = CityNames.buildSlots(utf8Names);
+        Layout layout = new Layout(cityCount, graph.edgeCount(), slots.length, nameOffsets[cityCount]);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(cityCount).putInt(graph.edgeCount())
+                  .putInt(slots.length).putInt(nameOffsets[cityCount]);
+            header.clear();
+            BinaryChannels.writeFully(channel, header);
+
+            channel.position(layout.offsets);
+            BinaryChannels.writeInts(channel, graph.offsetBuffer());
+            channel.position(layout.targets);
+            BinaryChannels.writeInts(channel, graph.targetBuffer());
+            channel.position(layout.weights);
+            BinaryChannels.writeDoubles(channel, graph.weightBuffer());
+            DoubleBuffer[] cityBuffers = graph.cityBuffers();
+            for (int t = 0; t < CITY_TABLES; t++) {
+                channel.position(layout.cityTable(t));
+                BinaryChannels.writeDoubles(channel, cityBuffers[t]);
+            }
+            channel.position(layout.nameOffsets);
+            BinaryChannels.writeInts(channel, nameOffsets);
+            channel.position(layout.slots);
+            BinaryChannels.writeInts(channel, slots);
+            channel.position(layout.nameBytes);
+            for (byte[] name : utf8Names) {
+                BinaryChannels.writeFully(channel, ByteBuffer.wrap(name));
+            }
+        }
+    }
+
+    /**
+     * Maps a snapshot written by {@link #save(CompiledGraph, Path)}.
+     *
+     * @param file The snapshot file.
+     * @return A graph backed by the mapped file.
+     * @throws IOException If the file cannot be read or is not a complete snapshot.
+     */
+    public static CompiledGraph map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = BinaryChannels.read(channel, HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a graph snapshot: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported graph snapshot version " + version + ": " + file);
+            }
+            int cityCount = header.getInt();
+            int arcCount = header.getInt();
+            int slotCount = header.getInt();
+            int nameByteCount = header.getInt();
+            Layout layout = new Layout(cityCount, arcCount, slotCount, nameByteCount);
+            if (channel.size() != layout.end) {
+                throw new IOException("Truncated graph snapshot: " + file);
+            }
+
+            // A mapping stays valid after its channel is closed
+            DoubleBuffer[] cityTables = new DoubleBuffer[CITY_TABLES];
+            for (int t = 0; t < CITY_TABLES; t++) {
+                cityTables[t] = BinaryChannels.mapDoubles(channel, layout.cityTable(t), cityCount);
+            }
+            CityNames names = CityNames.mapped(
+                    BinaryChannels.mapBytes(channel, layout.nameBytes, nameByteCount),
+                    BinaryChannels.mapInts(channel, layout.nameOffsets, cityCount + 1),
+                    BinaryChannels.mapInts(channel, layout.slots, slotCount));
+            return new CompiledGraph(names,
+                    BinaryChannels.mapInts(channel, layout.offsets, cityCount + 1),
+                    BinaryChannels.mapInts(channel, layout.targets, arcCount),
+                    BinaryChannels.mapDoubles(channel, layout.weights, arcCount),
+                    cityTables[0], cityTables[1], cityTables[2], cityTables[3],
+                    cityTables[4], cityTables[5], cityTables[6], cityTables[7]);
+        }
+    }
+
+    /**
+     * Offline conversion of the text data files into a snapshot.
+     * Usage: {@code GraphSnapshot <adjacency file> <coordinates file> <output file>}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.out.println("Usage: GraphSnapshot <adjacency file> <coordinates file> <output file>");
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        CompiledGraph graph = GraphLoader.load(Paths.get(args[0]), Paths.get(args[1]));
+        save(graph, Paths.get(args[2]));
+        System.out.println("Wrote " + graph.size() + " cities and " + graph.edgeCount() + " arcs in "
+                + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+    }
+
+    /**
+     * Section offsets for the given counts.
+     */
+    private static final class Layout {
+        final long offsets;
+        final long targets;
+        final long weights;
+        final long cityTables;
+        final long cityTableBytes;
+        final long nameOffsets;
+        final long slots;
+        final long nameBytes;
+        final long end;
+
+        Layout(int cityCount, int arcCount, int slotCount, int nameByteCount) throws IOException {
+            if (cityCount < 0 || arcCount < 0 || slotCount < 0 || nameByteCount < 0) {
+                throw new IOException("Corrupt graph snapshot header");
+            }
+            offsets = HEADER_BYTES;
+            targets = align(offsets + (cityCount + 1L) * Integer.BYTES);
+            weights = align(targets + (long) arcCount * Integer.BYTES);
+            cityTables = align(weights + (long) arcCount * Double.BYTES);
+            cityTableBytes = (long) cityCount * Double.BYTES;
+            nameOffsets = cityTables + CITY_TABLES * cityTableBytes;
+            slots = align(nameOffsets + (cityCount + 1L) * Integer.BYTES);
+            nameBytes = align(slots + (long) slotCount * Integer.BYTES);
+            end = nameBytes + nameByteCount;
+        }
+
+        long cityTable(int table) {
+            return cityTables + table * cityTableBytes;
+        }
+
+        private static long align(long position) {
+            return (position + 7) & ~7L;
+        }
+    }
+}
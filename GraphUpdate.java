@@ -0,0 +1,80 @@
+package search_methods;
+
+import java.util.*;
+
+/**
+ * A batch of changes to apply to a {@link DynamicGraph} in one step. Changes are applied in the
+ * order they were added, and a road may join cities added earlier in the same batch.
+ *
+ * <p>Roads run both ways, like the ones read from the adjacency file, and are as long as the
+ * great circle between their ends. {@link #setWeight} changes one direction only, e.g. for
+ * congestion or a one-way detour. A weight may never be set below the chord distance between
+ * the two cities, since A* uses that distance as its estimate and would otherwise miss
+ * shorter routes.
+ */
+public final class GraphUpdate {
+    enum Kind {
+        ADD_CITY,
+        ADD_ROAD,
+        REMOVE_ROAD,
+        SET_WEIGHT
+    }
+
+    static final class Edit {
+        final Kind kind;
+        final String first;
+        final String second;
+        final double x;
+        final double y;
+
+        Edit(Kind kind, String first, String second, double x, double y) {
+            this.kind = kind;
+            this.first = Objects.requireNonNull(first);
+            this.second = second;
+            this.x = x;
+            this.y = y;
+        }
+    }
+
+    private final List<Edit> edits = new ArrayList<>();
+
+    /**
+     * Adds a city with no roads. Its coordinates may be NaN when unknown.
+     */
+    public GraphUpdate addCity(String city, double latitude, double longitude) {
+        edits.add(new Edit(Kind.ADD_CITY, city, null, latitude, longitude));
+        return this;
+    }
+
+    /**
+     * Adds a road in both directions, or resets an existing one to its great-circle length.
+     */
+    public GraphUpdate addRoad(String city, String otherCity) {
+        edits.add(new Edit(Kind.ADD_ROAD, city, Objects.requireNonNull(otherCity), 0.0, 0.0));
+        return this;
+    }
+
+    /**
+     * Closes the road between two cities in both directions, or in the one direction it runs.
+     */
+    public GraphUpdate removeRoad(String city, String otherCity) {
+        edits.add(new Edit(Kind.REMOVE_ROAD, city, Objects.requireNonNull(otherCity), 0.0, 0.0));
+        return this;
+    }
+
+    /**
+     * Changes the length of the arc from one city to its neighbor.
+     */
+    public GraphUpdate setWeight(String from, String to, double weight) {
+        edits.add(new Edit(Kind.SET_WEIGHT, from, Objects.requireNonNull(to), weight, 0.0));
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return edits.isEmpty();
+    }
+
+    List<Edit> edits() {
+        return edits;
+    }
+}
@@ -0,0 +1,59 @@
+package search_methods;
+
+/**
+ * Goal-dependent A* estimates, computed lazily and kept for the rest of the query.
+ * The estimate is the chord distance to the goal, which is admissible and consistent for
+ * Haversine edge lengths, raised to the landmark lower bound when a {@link LandmarkIndex}
+ * is supplied. The arrays are reused across queries; {@link #reset(int)} only bumps a
+ * generation counter.
+ */
+final class HeuristicCache {
+    private final CompiledGraph graph;
+    private final LandmarkIndex landmarks;
+    private final double[] goalRow;
+    private final double[] estimates;
+    private final int[] stamps;
+    private int generation;
+    private int goal = -1;
+
+    HeuristicCache(CompiledGraph graph) {
+        this(graph, null);
+    }
+
+    HeuristicCache(CompiledGraph graph, LandmarkIndex landmarks) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+        this.goalRow = landmarks != null ? new double[2 * landmarks.size()] : null;
+        this.estimates = new double[graph.size()];
+        this.stamps = new int[graph.size()];
+    }
+
+    /**
+     * Starts a new query towards the given goal.
+     */
+    void reset(int goal) {
+        this.goal = goal;
+        if (landmarks != null) {
+            landmarks.loadGoalRow(goal, goalRow);
+        }
+        if (++generation == Integer.MAX_VALUE) {
+            java.util.Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * Returns the lower bound on the road distance from the city to the goal.
+     */
+    double estimate(int city) {
+        if (stamps[city] != generation) {
+            stamps[city] = generation;
+            double estimate = graph.chordDistance(city, goal);
+            if (landmarks != null) {
+                estimate = Math.max(estimate, landmarks.lowerBound(city, goalRow));
+            }
+            estimates[city] = estimate;
+        }
+        return estimates[city];
+    }
+}
@@ -6,52 +6,152 @@ package search_methods;
 
 import java.util.*;
 
-public class IDDFSRouteFinder {
-    private Map<String, List<String>> adjacencyList;
+/**
+ * Iterative deepening depth-first search with an explicit stack. Each iteration is a
+ * depth-limited search whose path and per-depth arc cursors live in the reused workspace
+ * buffers, so deepening allocates nothing. The search ends with no route once an iteration
+ * finishes without being cut off by its limit, which happens by the time the limit reaches
+ * the size of the start's component.
+ *
+ * <p>By default an iteration expands every city at most once, as before. With the
+ * transposition table a city is expanded again only when it is reached at a smaller depth
+ * than before in the same iteration. That prunes every other revisit while keeping the
+ * guarantee that the route found has the fewest hops.
+ */
+public class IDDFSRouteFinder implements RouteFinder {
+    private final CompiledGraph graph;
+    private final SearchWorkspace workspace;
+    private final SearchStatistics statistics = new SearchStatistics();
+    // Smallest depth at which each seen city was reached in this iteration, or null without the table
+    private final int[] bestDepths;
+    private int pathLength;
+    private boolean cutOff;
 
-    public IDDFSRouteFinder(Map<String, List<String>> adjacencyList) {
-        this.adjacencyList = adjacencyList;
+    public IDDFSRouteFinder(CompiledGraph graph) {
+        this(graph, false);
     }
 
-    public List<String> findRoute(String startCity, String endCity) {
-        int depthLimit = 0;
+    public IDDFSRouteFinder(CompiledGraph graph, boolean transpositionTable) {
+        this.graph = graph;
+        this.workspace = new SearchWorkspace(graph.size());
+        this.bestDepths = transpositionTable ? new int[graph.size()] : null;
+    }
 
-        while (true) {
-            Set<String> visited = new HashSet<>();
-            List<String> path = new ArrayList<>();
+    @Override
+    public List<String> findRoute(String startCity, String endCity) {
+        statistics.reset();
+        int start = graph.id(startCity);
+        int end = graph.id(endCity);
+        if (start < 0 || end < 0) {
+            return null;
+        }
+        if (!graph.connectivity().connected(start, end)) {
+            return null;
+        }
 
-            if (dfs(startCity, endCity, visited, path, depthLimit)) {
+        // A path holds distinct cities, so no limit beyond size - 1 hops can be cut off
+        for (int depthLimit = 0; depthLimit < graph.size(); depthLimit++) {
+            if (depthLimitedSearch(start, end, depthLimit)) {
                 // Reconstruct and return the path
-                return path;
+                return graph.toRoute(workspace.path, pathLength);
+            }
+            if (!cutOff) {
+                break; // The whole component was searched without reaching the limit
             }
-
-            depthLimit++; // Increase the depth limit if no route is found at the current limit
         }
+
+        // No route found
+        return null;
     }
 
-    private boolean dfs(String currentCity, String endCity, Set<String> visited, List<String> path, int depthLimit) {
-        if (currentCity.equals(endCity)) {
-            path.add(currentCity);
-            return true; // Found the destination
+    private boolean depthLimitedSearch(int start, int end, int depthLimit) {
+        // Each deepening iteration starts from a clean visited set
+        SearchWorkspace ws = workspace;
+        ws.reset();
+        cutOff = false;
+        int[] path = ws.path;
+        int[] cursors = ws.queue;
+        int depth = 0;
+        path[0] = start;
+        if (start == end) {
+            pathLength = 1;
+            return true;
         }
-
         if (depthLimit == 0) {
-            return false; // Reached depth limit without finding the destination
+            cutOff = true;
+            return false;
         }
+        visit(start, 0);
+        cursors[0] = graph.firstEdge(start);
+        // Counted in locals and added to the query's totals when the iteration ends
+        int pushes = 1;
+        int pops = 0;
+        long relaxed = 0;
+        int peak = 1;
 
-        visited.add(currentCity);
-        path.add(currentCity);
+        while (depth >= 0) {
+            int currentCity = path[depth];
+            int e = cursors[depth];
+            if (e == graph.lastEdge(currentCity)) {
+                depth--; // Backtrack
+                pops++;
+                continue;
+            }
+            cursors[depth] = e + 1;
 
-        for (String neighbor : adjacencyList.get(currentCity)) {
-            if (!visited.contains(neighbor)) {
-                if (dfs(neighbor, endCity, visited, path, depthLimit - 1)) {
-                    return true;
-                }
+            int neighbor = graph.target(e);
+            relaxed++;
+            if (!shouldExpand(neighbor, depth + 1)) {
+                continue;
+            }
+            if (neighbor == end) {
+                path[depth + 1] = neighbor;
+                pathLength = depth + 2;
+                count(pushes, relaxed, peak, pushes + pops);
+                return true; // Found the destination
+            }
+            if (depth + 1 == depthLimit) {
+                cutOff = true; // Reached depth limit without finding the destination
+                continue;
             }
+            visit(neighbor, depth + 1);
+            path[++depth] = neighbor;
+            cursors[depth] = graph.firstEdge(neighbor);
+            pushes++;
+            peak = Math.max(peak, depth + 1);
         }
-
-        path.remove(path.size() - 1); // Backtrack
+        count(pushes, relaxed, peak, pushes + pops);
         return false;
     }
-}
 
+    /**
+     * Adds one iteration's work to the query's statistics.
+     */
+    private void count(int expanded, long relaxed, int peak, long queueOperations) {
+        SearchStatistics stats = statistics;
+        stats.record(stats.nodesExpanded + expanded, stats.edgesRelaxed + relaxed,
+                Math.max(stats.peakFrontier, peak), stats.queueOperations + queueOperations);
+    }
+
+    /**
+     * {@inheritDoc} The counts add up every deepening iteration.
+     */
+    @Override
+    public SearchStatistics getStatistics() {
+        return statistics;
+    }
+
+    private boolean shouldExpand(int city, int depth) {
+        if (!workspace.isSeen(city)) {
+            return true;
+        }
+        return bestDepths != null && depth < bestDepths[city];
+    }
+
+    private void visit(int city, int depth) {
+        workspace.markSeen(city);
+        if (bestDepths != null) {
+            bestDepths[city] = depth;
+        }
+    }
+}
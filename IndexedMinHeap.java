@@ -0,0 +1,171 @@
+package search_methods;
+
+import java.util.Arrays;
+
+/**
+ * A d-ary min-heap of city ids keyed by double priorities, with decrease-key.
+ * Each city is in the heap at most once, so its size is bounded by the number of cities.
+ * Positions are tracked in a primitive array and nothing is allocated after construction.
+ * The heap counts its operations so that different arities can be compared.
+ */
+final class IndexedMinHeap {
+    private final int arity;
+    private final int[] heap;
+    private final double[] keys;
+    private final int[] positions;
+    private int size;
+
+    private long pushes;
+    private long pops;
+    private long decreaseKeys;
+
+    /**
+     * Creates a binary heap for cities {@code 0..capacity-1}.
+     */
+    IndexedMinHeap(int capacity) {
+        this(capacity, 2);
+    }
+
+    /**
+     * Creates a heap with the given arity for cities {@code 0..capacity-1}.
+     */
+    IndexedMinHeap(int capacity, int arity) {
+        if (arity < 2) {
+            throw new IllegalArgumentException("Heap arity must be at least 2: " + arity);
+        }
+        this.arity = arity;
+        this.heap = new int[capacity];
+        this.keys = new double[capacity];
+        this.positions = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int city) {
+        return positions[city] >= 0;
+    }
+
+    double key(int city) {
+        return keys[city];
+    }
+
+    /**
+     * Returns the smallest key in the heap without removing it.
+     */
+    double peekKey() {
+        return keys[heap[0]];
+    }
+
+    /**
+     * Empties the heap in time proportional to the number of cities still queued.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Inserts the city, or lowers its key if it is already queued with a larger one.
+     */
+    void insertOrDecrease(int city, double key) {
+        int position = positions[city];
+        if (position < 0) {
+            pushes++;
+            keys[city] = key;
+            siftUp(size++, city);
+        } else if (key < keys[city]) {
+            decreaseKeys++;
+            keys[city] = key;
+            siftUp(position, city);
+        }
+    }
+
+    /**
+     * Removes and returns the city with the smallest key.
+     */
+    int poll() {
+        pops++;
+        int top = heap[0];
+        positions[top] = -1;
+        int last = heap[--size];
+        if (size > 0) {
+            siftDown(0, last);
+        }
+        return top;
+    }
+
+    long getPushCount() {
+        return pushes;
+    }
+
+    long getPopCount() {
+        return pops;
+    }
+
+    long getDecreaseKeyCount() {
+        return decreaseKeys;
+    }
+
+    /**
+     * Returns pushes, pops and decrease-keys together.
+     */
+    long getOperationCount() {
+        return pushes + pops + decreaseKeys;
+    }
+
+    void resetCounters() {
+        pushes = 0;
+        pops = 0;
+        decreaseKeys = 0;
+    }
+
+    private void siftUp(int position, int city) {
+        double key = keys[city];
+        while (position > 0) {
+            int parentPosition = (position - 1) / arity;
+            int parent = heap[parentPosition];
+            if (keys[parent] <= key) {
+                break;
+            }
+            heap[position] = parent;
+            positions[parent] = position;
+            position = parentPosition;
+        }
+        heap[position] = city;
+        positions[city] = position;
+    }
+
+    private void siftDown(int position, int city) {
+        double key = keys[city];
+        while (true) {
+            int firstChild = position * arity + 1;
+            if (firstChild >= size) {
+                break;
+            }
+            int best = firstChild;
+            int lastChild = Math.min(firstChild + arity, size);
+            for (int child = firstChild + 1; child < lastChild; child++) {
+                if (keys[heap[child]] < keys[heap[best]]) {
+                    best = child;
+                }
+            }
+            if (key <= keys[heap[best]]) {
+                break;
+            }
+            heap[position] = heap[best];
+            positions[heap[best]] = position;
+            position = best;
+        }
+        heap[position] = city;
+        positions[city] = position;
+    }
+}
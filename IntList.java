@@ -0,0 +1,19 @@
+package search_methods;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of city ids, with its array and size open to the parallel searches that
+ * fill and drain it.
+ */
+final class IntList {
+    int[] items = new int[16];
+    int size;
+
+    void add(int city) {
+        if (size == items.length) {
+            items = Arrays.copyOf(items, 2 * size);
+        }
+        items[size++] = city;
+    }
+}
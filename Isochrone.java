@@ -0,0 +1,295 @@
+package search_methods;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Every city within a given road distance of one or more sources, from a single Dijkstra
+ * search that stops at the radius. Cities come out as they are settled, nearest first, each
+ * with its distance, its predecessor on the way there and the source it is closest to. With
+ * many sources, such as every depot in a coverage study, one search from all of them at once
+ * replaces a search per depot and assigns each city to its nearest depot.
+ *
+ * <p>A search keeps state only for the cities it reaches: their distances live in an
+ * open-addressing table and the queue allows stale entries instead of indexing every city,
+ * so a small radius on a large graph touches a small amount of memory. {@link #stream} is
+ * lazy, so a consumer that stops early, for example with {@code limit}, also stops the search.
+ * Instances hold no per-search state and may be shared between threads.
+ */
+public final class Isochrone {
+    private final CompiledGraph graph;
+
+    public Isochrone(CompiledGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Calls the action for every city within the radius of a source, nearest first.
+     *
+     * @param sources  The cities to measure from.
+     * @param radiusKm The largest road distance to include.
+     * @param action   Receives each city as it is settled.
+     * @throws IllegalArgumentException If a source is not in the graph or the radius is negative or NaN.
+     */
+    public void forEachWithin(Collection<String> sources, double radiusKm, Consumer<? super Reach> action) {
+        Expansion expansion = new Expansion(ids(sources), radiusKm);
+        for (Reach reach = expansion.next(); reach != null; reach = expansion.next()) {
+            action.accept(reach);
+        }
+    }
+
+    /**
+     * Returns the cities within the radius of a source, nearest first, searching only as far
+     * as the stream is consumed.
+     *
+     * @throws IllegalArgumentException If a source is not in the graph or the radius is negative or NaN.
+     */
+    public Stream<Reach> stream(Collection<String> sources, double radiusKm) {
+        return stream(ids(sources), radiusKm);
+    }
+
+    /**
+     * Returns the cities within the radius of a source given by id, nearest first.
+     *
+     * @throws IllegalArgumentException If there is no city with a source's id or the radius is
+     *                                  negative or NaN.
+     */
+    public Stream<Reach> stream(int[] sources, double radiusKm) {
+        for (int source : sources) {
+            if (source < 0 || source >= graph.size()) {
+                throw new IllegalArgumentException("No city with id " + source);
+            }
+        }
+        Expansion expansion = new Expansion(sources.clone(), radiusKm);
+        Spliterator<Reach> spliterator = new Spliterators.AbstractSpliterator<Reach>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Reach> action) {
+                Reach reach = expansion.next();
+                if (reach == null) {
+                    return false;
+                }
+                action.accept(reach);
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    private int[] ids(Collection<String> sources) {
+        int[] ids = new int[sources.size()];
+        int count = 0;
+        for (String city : sources) {
+            int id = graph.id(city);
+            if (id < 0) {
+                throw new IllegalArgumentException("Unknown city: " + city);
+            }
+            ids[count++] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * A city within the radius, as it was settled.
+     */
+    public final class Reach {
+        private final int city;
+        private final double distance;
+        private final int predecessor;
+        private final int source;
+
+        Reach(int city, double distance, int predecessor, int source) {
+            this.city = city;
+            this.distance = distance;
+            this.predecessor = predecessor;
+            this.source = source;
+        }
+
+        public String city() {
+            return graph.name(city);
+        }
+
+        public int id() {
+            return city;
+        }
+
+        /**
+         * Returns the road distance in kilometers from the nearest source.
+         */
+        public double distance() {
+            return distance;
+        }
+
+        /**
+         * Returns the city before this one on the way from its source, or null for a source.
+         */
+        public String predecessor() {
+            return predecessor < 0 ? null : graph.name(predecessor);
+        }
+
+        public int predecessorId() {
+            return predecessor;
+        }
+
+        /**
+         * Returns the nearest source.
+         */
+        public String source() {
+            return graph.name(source);
+        }
+
+        public int sourceId() {
+            return source;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %.1f km from %s", city(), distance, source());
+        }
+    }
+
+    /**
+     * One bounded search. Each reached city has a slot in an open-addressing table holding its
+     * distance, predecessor, source and whether it is settled; the queue may hold a city more
+     * than once and the entries a shorter distance has since replaced are skipped.
+     */
+    private final class Expansion {
+        private final double radius;
+        private int[] cities;
+        private double[] distances;
+        private int[] predecessors;
+        private int[] sources;
+        private boolean[] settled;
+        private int used;
+        private final NodeQueue queue = new NodeQueue(16);
+
+        Expansion(int[] starts, double radius) {
+            if (!(radius >= 0)) {
+                throw new IllegalArgumentException("The radius must be at least 0: " + radius);
+            }
+            this.radius = radius;
+            allocate(Math.max(16, Integer.highestOneBit(Math.max(1, starts.length)) << 2));
+            for (int start : starts) {
+                int slot = slot(start);
+                if (cities[slot] < 0) {
+                    claim(slot, start, 0.0, -1, start);
+                    queue.add(start, 0.0);
+                }
+            }
+        }
+
+        /**
+         * Settles and returns the next nearest city, or null once no city is left within
+         * the radius.
+         */
+        Reach next() {
+            while (!queue.isEmpty()) {
+                int city = queue.poll();
+                double distance = queue.lastKey();
+                int slot = slot(city);
+                if (settled[slot] || distance > distances[slot]) {
+                    continue;
+                }
+                settled[slot] = true;
+                Reach reach = new Reach(city, distance, predecessors[slot], sources[slot]);
+                int source = sources[slot];
+                for (int e = graph.firstEdge(city), last = graph.lastEdge(city); e < last; e++) {
+                    double reached = distance + graph.weight(e);
+                    if (reached > radius) {
+                        continue;
+                    }
+                    int neighbor = graph.target(e);
+                    int neighborSlot = slot(neighbor);
+                    if (cities[neighborSlot] < 0) {
+                        claim(neighborSlot, neighbor, reached, city, source);
+                    } else if (!settled[neighborSlot] && reached < distances[neighborSlot]) {
+                        distances[neighborSlot] = reached;
+                        predecessors[neighborSlot] = city;
+                        sources[neighborSlot] = source;
+                    } else {
+                        continue;
+                    }
+                    queue.add(neighbor, reached);
+                }
+                return reach;
+            }
+            return null;
+        }
+
+        private void allocate(int capacity) {
+            cities = new int[capacity];
+            Arrays.fill(cities, -1);
+            distances = new double[capacity];
+            predecessors = new int[capacity];
+            sources = new int[capacity];
+            settled = new boolean[capacity];
+        }
+
+        /**
+         * Returns the city's slot, or the empty slot where it belongs.
+         */
+        private int slot(int city) {
+            int mask = cities.length - 1;
+            int hash = city * 0x9E3779B9;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (cities[slot] >= 0 && cities[slot] != city) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void claim(int slot, int city, double distance, int predecessor, int source) {
+            cities[slot] = city;
+            distances[slot] = distance;
+            predecessors[slot] = predecessor;
+            sources[slot] = source;
+            if (++used * 2 > cities.length) {
+                grow();
+            }
+        }
+
+        private void grow() {
+            int[] oldCities = cities;
+            double[] oldDistances = distances;
+            int[] oldPredecessors = predecessors;
+            int[] oldSources = sources;
+            boolean[] oldSettled = settled;
+            allocate(oldCities.length * 2);
+            for (int i = 0; i < oldCities.length; i++) {
+                if (oldCities[i] >= 0) {
+                    int slot = slot(oldCities[i]);
+                    cities[slot] = oldCities[i];
+                    distances[slot] = oldDistances[i];
+                    predecessors[slot] = oldPredecessors[i];
+                    sources[slot] = oldSources[i];
+                    settled[slot] = oldSettled[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Usage: {@code Isochrone <adjacency file> <coordinates file> <radius km> <city> [city...]}.
+     * Prints every city within the radius of the given cities with its nearest one.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.out.println("Usage: Isochrone <adjacency file> <coordinates file> <radius km> <city> [city...]");
+            return;
+        }
+        CompiledGraph graph = GraphLoader.load(Paths.get(args[0]), Paths.get(args[1]));
+        double radius = Double.parseDouble(args[2]);
+        List<String> sources = Arrays.asList(args).subList(3, args.length);
+        int[] count = new int[1];
+        new Isochrone(graph).forEachWithin(sources, radius, reach -> {
+            count[0]++;
+            System.out.printf("%-20s %8.1f km  from %-20s via %s%n", reach.city(), reach.distance(), reach.source(),
+                    reach.predecessor() != null ? reach.predecessor() : "-");
+        });
+        System.out.printf("%d of %d cities within %.1f km%n", count[0], graph.size(), radius);
+    }
+}
@@ -0,0 +1,390 @@
+package search_methods;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * The k shortest loopless routes between two cities, by Yen's algorithm. Each route after the
+ * first is the best detour from a route already found: for every city on that route, a spur
+ * search runs from it to the end while the part of the route before it is off limits, as is
+ * the next arc of every found route that shares the same beginning. The shortest of the
+ * resulting candidates is the next route.
+ *
+ * <p>The spur searches from one route are independent, so they are shared out over a
+ * {@link ForkJoinPool}. Each worker runs A* with its own workspace. It blocks cities and arcs
+ * with generation-stamped masks rather than copying the graph, so blocking costs one array
+ * write per city or arc and clearing the masks costs one counter increment. The A* estimate
+ * is the exact distance to the end in the unblocked graph, found once per query by a
+ * backward Dijkstra search. Blocking only makes routes longer, so the estimate stays
+ * admissible, and a spur search whose way is not blocked walks straight to the end.
+ *
+ * <p>Alternatives can be required to differ: with a maximum overlap below 1, a route is only
+ * returned if no more than that share of its length runs along a route returned before it.
+ * Routes that fail the test still seed later spur searches. At most
+ * {@value #ROUTES_EXAMINED_PER_RESULT} routes per requested one are examined, so an overlap
+ * too strict for the graph ends the search with fewer routes. One instance must not run two
+ * searches at once.
+ */
+public final class KShortestPaths {
+    public static final int ROUTES_EXAMINED_PER_RESULT = 10;
+
+    private final CompiledGraph graph;
+    private final int parallelism;
+    private final Worker[] workers;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final DijkstraSearch backward;
+    // Distance from every city to the end of the current query
+    private final double[] toEnd;
+    private final SearchStatistics statistics = new SearchStatistics();
+    private ForkJoinPool pool;
+
+    /**
+     * Creates a search that uses every core.
+     */
+    public KShortestPaths(CompiledGraph graph) {
+        this(graph, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param graph       The graph.
+     * @param parallelism The number of spur searches run at once.
+     */
+    public KShortestPaths(CompiledGraph graph, int parallelism) {
+        this.graph = graph;
+        this.parallelism = Math.max(1, parallelism);
+        this.backward = new DijkstraSearch(graph.transpose());
+        this.toEnd = new double[graph.size()];
+        this.workers = new Worker[this.parallelism];
+        for (int w = 0; w < workers.length; w++) {
+            workers[w] = new Worker();
+        }
+    }
+
+    /**
+     * Returns up to k routes in order of increasing length, none of which visits a city twice.
+     *
+     * @return The routes, empty if there is none.
+     */
+    public List<List<String>> findRoutes(String startCity, String endCity, int k) {
+        return findRoutes(startCity, endCity, k, 1.0);
+    }
+
+    /**
+     * Returns up to k loopless routes in order of increasing length, each sharing at most the
+     * given fraction of its length with any route before it.
+     *
+     * @param startCity  The starting city.
+     * @param endCity    The ending city.
+     * @param k          The most routes to return.
+     * @param maxOverlap The largest fraction of a route's length it may share with an earlier
+     *                   one, 1 to return the plain k shortest routes.
+     * @return The routes, empty if there is none.
+     */
+    public List<List<String>> findRoutes(String startCity, String endCity, int k, double maxOverlap) {
+        statistics.reset();
+        List<List<String>> routes = new ArrayList<>();
+        int start = graph.id(startCity);
+        int end = graph.id(endCity);
+        if (start < 0 || end < 0 || k <= 0 || !graph.connectivity().connected(start, end)) {
+            return routes;
+        }
+        if (start == end) {
+            routes.add(graph.toRoute(new int[] {start}, 1));
+            return routes;
+        }
+
+        List<int[]> found = new ArrayList<>();
+        List<int[]> accepted = new ArrayList<>();
+        Set<Long> acceptedArcs = new HashSet<>();
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+        Set<Candidate> queued = new HashSet<>();
+        long examineLimit = (long) k * ROUTES_EXAMINED_PER_RESULT;
+        statistics.nodesExpanded += backward.run(end, toEnd, null, null);
+
+        int[] first = workers[0].spur(new int[] {start}, 0, end, found);
+        collect(workers[0]);
+        if (first == null) {
+            return routes;
+        }
+        Candidate next = new Candidate(first, routeLength(first));
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        try {
+            while (true) {
+                int[] route = next.path;
+                found.add(route);
+                if (maxOverlap >= 1.0 || overlap(route, acceptedArcs) <= maxOverlap) {
+                    accepted.add(route);
+                    for (int i = 0; i + 1 < route.length; i++) {
+                        acceptedArcs.add(arcKey(route[i], route[i + 1]));
+                    }
+                }
+                if (accepted.size() == k || found.size() >= examineLimit) {
+                    break;
+                }
+
+                for (Candidate candidate : spurCandidates(route, end, found)) {
+                    if (queued.add(candidate)) {
+                        candidates.add(candidate);
+                    }
+                }
+                next = candidates.poll();
+                if (next == null) {
+                    break;
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+        }
+
+        for (int[] route : accepted) {
+            routes.add(graph.toRoute(route, route.length));
+        }
+        return routes;
+    }
+
+    /**
+     * Runs a spur search from every city of the route but the last, in parallel, and returns
+     * the detours found, each joined to the part of the route before its spur.
+     */
+    private List<Candidate> spurCandidates(int[] route, int end, List<int[]> found) {
+        int spurs = route.length - 1;
+        int[][] detours = new int[spurs][];
+        cursor.set(0);
+        parallel(Math.min(parallelism, spurs), w -> {
+            Worker worker = workers[w];
+            int i;
+            while ((i = cursor.getAndIncrement()) < spurs) {
+                detours[i] = worker.spur(route, i, end, found);
+            }
+        });
+
+        List<Candidate> result = new ArrayList<>();
+        for (int w = 0; w < workers.length; w++) {
+            collect(workers[w]);
+        }
+        for (int[] detour : detours) {
+            if (detour != null) {
+                result.add(new Candidate(detour, routeLength(detour)));
+            }
+        }
+        return result;
+    }
+
+    private void collect(Worker worker) {
+        statistics.nodesExpanded += worker.expanded;
+        statistics.edgesRelaxed += worker.relaxed;
+        statistics.queueOperations += worker.openSet.getOperationCount();
+        statistics.frontier(worker.peak);
+        worker.expanded = 0;
+        worker.relaxed = 0;
+        worker.peak = 0;
+        worker.openSet.resetCounters();
+    }
+
+    /**
+     * Returns the share of the route's length that runs along arcs of earlier routes. Lengths
+     * are great-circle distances, as {@link CompiledGraph#routeDistance} reports them; a route
+     * with no measurable length is compared by its number of arcs.
+     */
+    private double overlap(int[] route, Set<Long> arcs) {
+        double length = 0.0;
+        double shared = 0.0;
+        int sharedArcs = 0;
+        for (int i = 0; i + 1 < route.length; i++) {
+            double leg = graph.distance(route[i], route[i + 1]);
+            length += leg;
+            if (arcs.contains(arcKey(route[i], route[i + 1]))) {
+                shared += leg;
+                sharedArcs++;
+            }
+        }
+        return length > 0 ? shared / length : (double) sharedArcs / (route.length - 1);
+    }
+
+    private static long arcKey(int from, int to) {
+        return (long) from << 32 | to;
+    }
+
+    private double routeLength(int[] route) {
+        double length = 0.0;
+        for (int i = 0; i + 1 < route.length; i++) {
+            length += arcWeight(route[i], route[i + 1]);
+        }
+        return length;
+    }
+
+    /**
+     * Returns the length of the shortest arc between two cities, the one a search would take.
+     */
+    private double arcWeight(int from, int to) {
+        double weight = Double.POSITIVE_INFINITY;
+        for (int e = graph.firstEdge(from), last = graph.lastEdge(from); e < last; e++) {
+            if (graph.target(e) == to) {
+                weight = Math.min(weight, graph.weight(e));
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Returns the statistics of the last search, summed over its spur searches.
+     */
+    public SearchStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Runs the action once for each of the given number of workers, on the pool if there is
+     * more than one.
+     */
+    private void parallel(int workerCount, IntConsumer action) {
+        if (pool == null || workerCount == 1) {
+            action.accept(0);
+            return;
+        }
+        try {
+            pool.submit(() -> IntStream.range(0, workerCount).parallel().forEach(action)).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Spur search failed", e);
+        }
+    }
+
+    /**
+     * A route waiting to be taken, ordered by length and then by number of cities.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        final int[] path;
+        final double length;
+
+        Candidate(int[] path, double length) {
+            this.path = path;
+            this.length = length;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            int byLength = Double.compare(length, other.length);
+            return byLength != 0 ? byLength : Integer.compare(path.length, other.path.length);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Candidate && Arrays.equals(path, ((Candidate) other).path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(path);
+        }
+    }
+
+    /**
+     * One thread's A* state and masks for spur searches.
+     */
+    private final class Worker {
+        final SearchWorkspace workspace = new SearchWorkspace(graph.size());
+        final IndexedMinHeap openSet = new IndexedMinHeap(graph.size());
+        final int[] blockedCities = new int[graph.size()];
+        final int[] blockedArcs = new int[graph.edgeCount()];
+        int generation;
+        long expanded;
+        long relaxed;
+        int peak;
+
+        /**
+         * Finds the shortest route that follows the given route up to its spur city and then
+         * leaves it by an arc no found route with the same beginning has taken.
+         *
+         * @return The whole route, or null if there is no such detour.
+         */
+        int[] spur(int[] route, int spurIndex, int end, List<int[]> found) {
+            if (++generation == Integer.MAX_VALUE) {
+                Arrays.fill(blockedCities, 0);
+                Arrays.fill(blockedArcs, 0);
+                generation = 1;
+            }
+            for (int i = 0; i < spurIndex; i++) {
+                blockedCities[route[i]] = generation;
+            }
+            int spurCity = route[spurIndex];
+            for (int[] other : found) {
+                if (other.length > spurIndex + 1 && Arrays.equals(other, 0, spurIndex + 1, route, 0, spurIndex + 1)) {
+                    for (int e = graph.firstEdge(spurCity), last = graph.lastEdge(spurCity); e < last; e++) {
+                        if (graph.target(e) == other[spurIndex + 1]) {
+                            blockedArcs[e] = generation;
+                        }
+                    }
+                }
+            }
+
+            SearchWorkspace ws = workspace;
+            double[] gValues = ws.cost;
+            ws.reset();
+            openSet.clear();
+            gValues[spurCity] = 0.0;
+            ws.markSeen(spurCity);
+            openSet.insertOrDecrease(spurCity, toEnd[spurCity]);
+            while (!openSet.isEmpty()) {
+                int city = openSet.poll();
+                if (city == end) {
+                    int length = ws.tracePath(spurCity, end);
+                    int[] result = Arrays.copyOf(route, spurIndex + length);
+                    System.arraycopy(ws.path, 0, result, spurIndex, length);
+                    return result;
+                }
+                ws.markClosed(city);
+                expanded++;
+                int first = graph.firstEdge(city);
+                int last = graph.lastEdge(city);
+                relaxed += last - first;
+                for (int e = first; e < last; e++) {
+                    int neighbor = graph.target(e);
+                    if (blockedArcs[e] == generation || blockedCities[neighbor] == generation
+                            || ws.isClosed(neighbor) || toEnd[neighbor] == Double.POSITIVE_INFINITY) {
+                        continue;
+                    }
+                    double tentativeGValue = gValues[city] + graph.weight(e);
+                    if (!ws.isSeen(neighbor) || tentativeGValue < gValues[neighbor]) {
+                        ws.markSeen(neighbor);
+                        gValues[neighbor] = tentativeGValue;
+                        ws.parent[neighbor] = city;
+                        openSet.insertOrDecrease(neighbor, tentativeGValue + toEnd[neighbor]);
+                    }
+                }
+                peak = Math.max(peak, openSet.size());
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Usage: {@code KShortestPaths <adjacency file> <coordinates file> <start> <end> [k] [max overlap]}.
+     * Prints the routes with their lengths.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.out.println("Usage: KShortestPaths <adjacency file> <coordinates file> <start> <end> [k] [max overlap]");
+            return;
+        }
+        CompiledGraph graph = GraphLoader.load(Paths.get(args[0]), Paths.get(args[1]));
+        int k = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+        double maxOverlap = args.length > 5 ? Double.parseDouble(args[5]) : 1.0;
+        KShortestPaths paths = new KShortestPaths(graph);
+        long started = System.nanoTime();
+        List<List<String>> routes = paths.findRoutes(args[2], args[3], k, maxOverlap);
+        long elapsed = System.nanoTime() - started;
+        for (List<String> route : routes) {
+            System.out.printf("%.1f km: %s%n", graph.routeDistance(route), String.join(" -> ", route));
+        }
+        System.out.printf("%d routes in %.3f ms, %s%n", routes.size(), elapsed / 1e6, paths.getStatistics());
+    }
+}
@@ -0,0 +1,395 @@
+package search_methods;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Landmark distance tables for ALT (A*, landmarks, triangle inequality).
+ * For a landmark {@code L} the triangle inequality gives two lower bounds on the road distance
+ * from {@code v} to {@code t}: {@code d(L, t) - d(L, v)} and {@code d(v, L) - d(t, L)}.
+ * The tables store {@code d(L, v)} and {@code d(v, L)} for every city, one row of {@code k}
+ * values per city so a lookup touches a single cache line.
+ *
+ * <p>File layout (little-endian): magic {@code "ALT1"}, int version, int city count, int k,
+ * k landmark ids, padding to an 8-byte boundary, then the from-landmark table and the
+ * to-landmark table as {@code cityCount * k} doubles each.
+ */
+public final class LandmarkIndex {
+    /**
+     * How landmarks are chosen.
+     */
+    public enum Selection {
+        /** Each new landmark is the city farthest from the ones already chosen. */
+        FARTHEST,
+        /** Goldberg and Werneck's avoid: favour regions where the current bounds are weakest. */
+        AVOID
+    }
+
+    private static final int MAGIC = 0x31544C41; // "ALT1" read as a little-endian int
+    private static final int VERSION = 1;
+
+    private final int cityCount;
+    private final int[] landmarks;
+    private final DoubleBuffer fromLandmark;
+    private final DoubleBuffer toLandmark;
+
+    private LandmarkIndex(int cityCount, int[] landmarks, DoubleBuffer fromLandmark, DoubleBuffer toLandmark) {
+        this.cityCount = cityCount;
+        this.landmarks = landmarks;
+        this.fromLandmark = fromLandmark;
+        this.toLandmark = toLandmark;
+    }
+
+    /**
+     * Selects {@code k} landmarks and computes their distance tables.
+     *
+     * @param graph     The graph to preprocess.
+     * @param k         The number of landmarks.
+     * @param selection How to choose them.
+     * @param seed      Seed for the random starting city.
+     * @return The landmark index.
+     */
+    public static LandmarkIndex build(CompiledGraph graph, int k, Selection selection, long seed) {
+        int n = graph.size();
+        k = Math.min(k, n);
+        DijkstraSearch forward = new DijkstraSearch(graph);
+        DijkstraSearch backward = new DijkstraSearch(graph.transpose());
+        double[] from = new double[n * k];
+        double[] to = new double[n * k];
+        double[] distances = new double[n];
+        int[] landmarks = new int[k];
+        Random random = new Random(seed);
+
+        for (int i = 0; i < k; i++) {
+            int landmark = selection == Selection.AVOID
+                    ? selectAvoid(graph, forward, landmarks, i, from, to, k, random)
+                    : selectFarthest(graph, forward, landmarks, i, from, k, random);
+            landmarks[i] = landmark;
+
+            forward.run(landmark, distances, null, null);
+            for (int v = 0; v < n; v++) {
+                from[v * k + i] = distances[v];
+            }
+            backward.run(landmark, distances, null, null);
+            for (int v = 0; v < n; v++) {
+                to[v * k + i] = distances[v];
+            }
+        }
+
+        return new LandmarkIndex(n, landmarks, DoubleBuffer.wrap(from), DoubleBuffer.wrap(to));
+    }
+
+    /**
+     * Picks the reachable city whose smallest distance to the chosen landmarks is largest.
+     * The first landmark is the city farthest from a random start.
+     */
+    private static int selectFarthest(CompiledGraph graph, DijkstraSearch search, int[] chosen, int count,
+                                      double[] from, int k, Random random) {
+        int n = graph.size();
+        if (count == 0) {
+            double[] distances = new double[n];
+            search.run(random.nextInt(n), distances, null, null);
+            return argmaxFinite(distances);
+        }
+
+        double[] nearest = new double[n];
+        for (int v = 0; v < n; v++) {
+            double min = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                min = Math.min(min, from[v * k + i]);
+            }
+            nearest[v] = min;
+        }
+        for (int i = 0; i < count; i++) {
+            nearest[chosen[i]] = -1; // Never choose the same landmark twice
+        }
+        return argmaxFinite(nearest);
+    }
+
+    /**
+     * Grows a shortest path tree from a random root, weights every city by how much the current
+     * landmarks underestimate its distance from the root, and walks down the heaviest subtrees
+     * that contain no landmark. The leaf reached becomes the next landmark.
+     */
+    private static int selectAvoid(CompiledGraph graph, DijkstraSearch search, int[] chosen, int count,
+                                   double[] from, double[] to, int k, Random random) {
+        int n = graph.size();
+        int root = random.nextInt(n);
+        double[] distances = new double[n];
+        int[] parents = new int[n];
+        int[] order = new int[n];
+        int reached = search.run(root, distances, parents, order);
+
+        boolean[] hasLandmark = new boolean[n];
+        for (int i = 0; i < count; i++) {
+            hasLandmark[chosen[i]] = true;
+        }
+
+        double[] size = new double[n];
+        for (int j = 0; j < reached; j++) {
+            int v = order[j];
+            double bound = 0.0;
+            for (int i = 0; i < count; i++) {
+                bound = Math.max(bound, lowerBound(from, to, k, i, root, v));
+            }
+            size[v] = Math.max(0.0, distances[v] - bound);
+        }
+        // Children settle after their parents, so a reverse sweep accumulates subtree sums
+        for (int j = reached - 1; j > 0; j--) {
+            int v = order[j];
+            int parent = parents[v];
+            hasLandmark[parent] |= hasLandmark[v];
+            size[parent] += size[v];
+        }
+        for (int j = 0; j < reached; j++) {
+            if (hasLandmark[order[j]]) {
+                size[order[j]] = 0.0;
+            }
+        }
+
+        // Descend along the heaviest child until reaching a leaf
+        int[] heaviestChild = new int[n];
+        Arrays.fill(heaviestChild, -1);
+        for (int j = 1; j < reached; j++) {
+            int v = order[j];
+            int parent = parents[v];
+            if (size[v] > 0 && (heaviestChild[parent] < 0 || size[v] > size[heaviestChild[parent]])) {
+                heaviestChild[parent] = v;
+            }
+        }
+        int current = root;
+        while (heaviestChild[current] >= 0) {
+            current = heaviestChild[current];
+        }
+        if (hasLandmark[current]) {
+            // Every subtree already holds a landmark; fall back to the farthest city
+            return selectFarthest(graph, search, chosen, count, from, k, random);
+        }
+        return current;
+    }
+
+    private static int argmaxFinite(double[] values) {
+        int best = 0;
+        for (int v = 1; v < values.length; v++) {
+            if (values[v] != Double.POSITIVE_INFINITY
+                    && (values[best] == Double.POSITIVE_INFINITY || values[v] > values[best])) {
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns tables for a changed graph, patched from these ones instead of rebuilt.
+     *
+     * <p>The bounds stay admissible as long as every arc {@code v -> w} satisfies
+     * {@code from(w) <= from(v) + weight} (and the same for the reverse table), since summing
+     * the inequality along any route gives the triangle inequality the bounds rely on. Arcs
+     * that were removed or got longer cannot break this, so they are ignored and the old
+     * values serve as slightly weaker bounds. Arcs that were added or got shorter are relaxed,
+     * and every value they lower is propagated Dijkstra-style, which only visits the cities
+     * whose distances actually dropped. Added cities start out unreachable.
+     *
+     * @param graph   The changed graph, with the same city ids plus any added ones.
+     * @param changes The arcs that changed.
+     * @return The patched tables, leaving these ones untouched for readers of the old graph.
+     */
+    public LandmarkIndex repair(CompiledGraph graph, DynamicGraph.Changes changes) {
+        int n = graph.size();
+        int k = landmarks.length;
+        double[] from = copyTable(fromLandmark, n * k);
+        double[] to = copyTable(toLandmark, n * k);
+        if (changes.hasDecreases()) {
+            CompiledGraph transpose = graph.transpose();
+            IndexedMinHeap heap = new IndexedMinHeap(n);
+            for (int i = 0; i < k; i++) {
+                for (int c = 0; c < changes.size(); c++) {
+                    if (changes.newWeight(c) < changes.oldWeight(c)) {
+                        relax(from, k, i, changes.from(c), changes.to(c), changes.newWeight(c), heap);
+                    }
+                }
+                propagate(graph, from, k, i, heap);
+                for (int c = 0; c < changes.size(); c++) {
+                    if (changes.newWeight(c) < changes.oldWeight(c)) {
+                        relax(to, k, i, changes.to(c), changes.from(c), changes.newWeight(c), heap);
+                    }
+                }
+                propagate(transpose, to, k, i, heap);
+            }
+        }
+        return new LandmarkIndex(n, landmarks.clone(), DoubleBuffer.wrap(from), DoubleBuffer.wrap(to));
+    }
+
+    private static double[] copyTable(DoubleBuffer table, int length) {
+        double[] copy = new double[length];
+        // A duplicate has its own position, so other readers of the table are not disturbed
+        table.duplicate().clear().get(copy, 0, table.limit());
+        Arrays.fill(copy, table.limit(), length, Double.POSITIVE_INFINITY);
+        return copy;
+    }
+
+    private static void relax(double[] table, int k, int i, int from, int to, double weight, IndexedMinHeap heap) {
+        double distance = table[from * k + i] + weight;
+        if (distance < table[to * k + i]) {
+            table[to * k + i] = distance;
+            heap.insertOrDecrease(to, distance);
+        }
+    }
+
+    private static void propagate(CompiledGraph graph, double[] table, int k, int i, IndexedMinHeap heap) {
+        while (!heap.isEmpty()) {
+            int v = heap.poll();
+            for (int e = graph.firstEdge(v), last = graph.lastEdge(v); e < last; e++) {
+                relax(table, k, i, v, graph.target(e), graph.weight(e), heap);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of landmarks.
+     */
+    public int size() {
+        return landmarks.length;
+    }
+
+    public int landmark(int i) {
+        return landmarks[i];
+    }
+
+    /**
+     * Returns the best landmark lower bound on the road distance from {@code city} to {@code goal}.
+     */
+    public double lowerBound(int city, int goal) {
+        int k = landmarks.length;
+        double bound = 0.0;
+        for (int i = 0; i < k; i++) {
+            bound = Math.max(bound, bound(fromLandmark.get(goal * k + i) - fromLandmark.get(city * k + i)));
+            bound = Math.max(bound, bound(toLandmark.get(city * k + i) - toLandmark.get(goal * k + i)));
+        }
+        return bound;
+    }
+
+    /**
+     * Copies the goal's row of both tables into {@code goalRow}, which must hold {@code 2 * k} values.
+     * {@link #lowerBound(int, double[])} then reads only the city's row.
+     */
+    void loadGoalRow(int goal, double[] goalRow) {
+        int k = landmarks.length;
+        for (int i = 0; i < k; i++) {
+            goalRow[i] = fromLandmark.get(goal * k + i);
+            goalRow[k + i] = toLandmark.get(goal * k + i);
+        }
+    }
+
+    /**
+     * Same as {@link #lowerBound(int, int)} with the goal's row already loaded.
+     */
+    double lowerBound(int city, double[] goalRow) {
+        int k = landmarks.length;
+        double bound = 0.0;
+        for (int i = 0; i < k; i++) {
+            bound = Math.max(bound, bound(goalRow[i] - fromLandmark.get(city * k + i)));
+            bound = Math.max(bound, bound(toLandmark.get(city * k + i) - goalRow[k + i]));
+        }
+        return bound;
+    }
+
+    private static double lowerBound(double[] from, double[] to, int k, int i, int city, int goal) {
+        return Math.max(bound(from[goal * k + i] - from[city * k + i]), bound(to[city * k + i] - to[goal * k + i]));
+    }
+
+    /**
+     * Discards differences involving unreachable cities, which come out infinite or NaN.
+     */
+    private static double bound(double difference) {
+        return difference < Double.POSITIVE_INFINITY ? difference : 0.0;
+    }
+
+    /**
+     * Writes the index in the binary format described in the class comment.
+     */
+    public void save(Path file) throws IOException {
+        int k = landmarks.length;
+        int headerSize = headerSize(k);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(cityCount).putInt(k);
+            for (int landmark : landmarks) {
+                header.putInt(landmark);
+            }
+            header.clear();
+            BinaryChannels.writeFully(channel, header);
+            BinaryChannels.writeDoubles(channel, fromLandmark);
+            BinaryChannels.writeDoubles(channel, toLandmark);
+        }
+    }
+
+    /**
+     * Memory-maps an index written by {@link #save(Path)}. The tables stay in the page cache and
+     * are read in place, so processes mapping the same file share them.
+     *
+     * @param file  The index file.
+     * @param graph The graph the index was built for.
+     * @return The mapped index.
+     * @throws IOException If the file cannot be read or does not match the graph.
+     */
+    public static LandmarkIndex map(Path file, CompiledGraph graph) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = BinaryChannels.read(channel, 4 * Integer.BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a landmark file: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported landmark file version " + version + ": " + file);
+            }
+            int cityCount = header.getInt();
+            int k = header.getInt();
+            if (cityCount != graph.size()) {
+                throw new IOException("Landmark file " + file + " has " + cityCount
+                        + " cities but the graph has " + graph.size());
+            }
+            long tableBytes = (long) cityCount * k * Double.BYTES;
+            if (channel.size() != headerSize(k) + 2 * tableBytes) {
+                throw new IOException("Truncated landmark file: " + file);
+            }
+
+            int[] landmarks = BinaryChannels.readInts(channel, k);
+            // Each table is mapped on its own, so either may be up to 2 GB
+            DoubleBuffer from = BinaryChannels.mapDoubles(channel, headerSize(k), cityCount * k);
+            DoubleBuffer to = BinaryChannels.mapDoubles(channel, headerSize(k) + tableBytes, cityCount * k);
+            return new LandmarkIndex(cityCount, landmarks, from, to);
+        }
+    }
+
+    private static int headerSize(int k) {
+        int size = 4 * Integer.BYTES + k * Integer.BYTES;
+        return (size + 7) & ~7;
+    }
+
+    /**
+     * Offline preprocessing: builds landmark tables for the bundled data files and saves them.
+     * Usage: {@code LandmarkIndex <adjacency file> <coordinates file> <k> <farthest|avoid> <output file>}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 5) {
+            System.out.println("Usage: LandmarkIndex <adjacency file> <coordinates file> <k> <farthest|avoid> <output file>");
+            return;
+        }
+        CompiledGraph graph = GraphLoader.load(Paths.get(args[0]), Paths.get(args[1]));
+        long startTime = System.currentTimeMillis();
+        LandmarkIndex index = build(graph, Integer.parseInt(args[2]),
+                Selection.valueOf(args[3].toUpperCase()), 42);
+        index.save(Paths.get(args[4]));
+        System.out.println("Selected " + index.size() + " landmarks for " + graph.size() + " cities in "
+                + (System.currentTimeMillis() - startTime) / 1000.0 + " seconds");
+    }
+}
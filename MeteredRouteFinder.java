@@ -0,0 +1,69 @@
+package search_methods;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/**
+ * A {@link RouteFinder} that times every query of its delegate, measures what it allocated
+ * and records both, with the delegate's own {@link SearchStatistics}, in a {@link SearchMetrics}.
+ * Allocation is read from the HotSpot thread MXBean where available.
+ */
+public final class MeteredRouteFinder implements RouteFinder {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final RouteFinder delegate;
+    private final SearchMethod method;
+    private final SearchMetrics metrics;
+    private final SearchStatistics fallback = new SearchStatistics();
+
+    /**
+     * @param delegate The finder to measure.
+     * @param method   The method the delegate implements, which its figures are recorded under.
+     * @param metrics  The totals to add to, possibly shared with other finders.
+     */
+    public MeteredRouteFinder(RouteFinder delegate, SearchMethod method, SearchMetrics metrics) {
+        this.delegate = delegate;
+        this.method = method;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public List<String> findRoute(String startCity, String endCity) {
+        long allocatedBefore = allocatedBytes();
+        long before = System.nanoTime();
+        List<String> route = delegate.findRoute(startCity, endCity);
+        long elapsed = System.nanoTime() - before;
+        long allocatedAfter = allocatedBytes();
+
+        SearchStatistics statistics = delegate.getStatistics();
+        if (statistics == null) {
+            // The delegate does not count its work, so only latency and allocation are known
+            statistics = fallback;
+            statistics.reset();
+        }
+        statistics.elapsedNanos = elapsed;
+        statistics.allocatedBytes = allocatedBefore >= 0 && allocatedAfter >= 0 ? allocatedAfter - allocatedBefore : -1;
+        metrics.record(method, statistics, route != null);
+        return route;
+    }
+
+    @Override
+    public SearchStatistics getStatistics() {
+        SearchStatistics statistics = delegate.getStatistics();
+        return statistics != null ? statistics : fallback;
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far, or -1 if that is not available.
+     */
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,84 @@
+package search_methods;
+
+/**
+ * A binary min-heap of (city, priority) pairs stored in primitive arrays.
+ * A city may be queued more than once; callers skip stale entries when they are polled.
+ */
+final class NodeQueue {
+    private int[] nodes;
+    private double[] keys;
+    private int size;
+    private double lastKey;
+
+    NodeQueue(int capacity) {
+        this.nodes = new int[Math.max(capacity, 16)];
+        this.keys = new double[nodes.length];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void add(int node, double key) {
+        if (size == nodes.length) {
+            nodes = java.util.Arrays.copyOf(nodes, size * 2);
+            keys = java.util.Arrays.copyOf(keys, size * 2);
+        }
+
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            nodes[i] = nodes[parent];
+            keys[i] = keys[parent];
+            i = parent;
+        }
+        nodes[i] = node;
+        keys[i] = key;
+    }
+
+    /**
+     * Removes and returns the city with the smallest priority.
+     */
+    int poll() {
+        int top = nodes[0];
+        lastKey = keys[0];
+
+        int node = nodes[--size];
+        double key = keys[size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child++;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            nodes[i] = nodes[child];
+            keys[i] = keys[child];
+            i = child;
+        }
+        nodes[i] = node;
+        keys[i] = key;
+        return top;
+    }
+
+    /**
+     * Returns the priority of the city returned by the last {@link #poll()}.
+     */
+    double lastKey() {
+        return lastKey;
+    }
+}
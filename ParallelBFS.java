@@ -0,0 +1,338 @@
+package search_methods;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Level-synchronous breadth-first search on several cores that switches direction as Beamer,
+ * Asanovic and Patterson's direction-optimizing BFS does. Small frontiers are expanded top-down,
+ * each worker scanning the arcs out of its share of the frontier and claiming unvisited
+ * cities with an atomic OR on the visited bitset. Once the frontier's arcs outnumber a
+ * fourteenth of the arcs still unexplored, it goes bottom-up: every unvisited city scans its
+ * incoming arcs for a parent in the frontier, stopping at the first, which on the wide
+ * middle levels of a large graph checks far fewer arcs. It goes back to top-down once the
+ * frontier is shrinking and below a twenty-fourth of the cities.
+ *
+ * <p>Bottom-up steps hand out cities in whole bitset words, so each word of the visited set
+ * has a single writer. The result is the same hop count as {@link BFSRouteFinder}, though the
+ * route may be a different one of the same length. One instance must not run two searches
+ * at once.
+ */
+public final class ParallelBFS implements RouteFinder {
+    // Frontier cities, or bitset words in bottom-up steps, handed to a worker at a time
+    private static final int CHUNK = 256;
+    private static final int WORD_CHUNK = 16;
+    private static final int ALPHA = 14;
+    private static final int BETA = 24;
+
+    private final CompiledGraph graph;
+    private final int parallelism;
+    private final IntList[] nextFrontiers;
+    private final long[] workerArcs;
+    private final long[] workerChecks;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final SearchStatistics statistics = new SearchStatistics();
+
+    private CompiledGraph transpose;
+    private int[] hops;
+    private int[] parents;
+    private AtomicLongArray visited;
+    private AtomicLongArray frontierBits;
+    private int[] frontier = new int[CHUNK];
+    private ForkJoinPool pool;
+
+    /**
+     * Creates a search that uses every core.
+     */
+    public ParallelBFS(CompiledGraph graph) {
+        this(graph, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param graph       The graph.
+     * @param parallelism The number of worker threads.
+     */
+    public ParallelBFS(CompiledGraph graph, int parallelism) {
+        this.graph = graph;
+        this.parallelism = Math.max(1, parallelism);
+        this.nextFrontiers = new IntList[this.parallelism];
+        for (int i = 0; i < nextFrontiers.length; i++) {
+            nextFrontiers[i] = new IntList();
+        }
+        this.workerArcs = new long[this.parallelism];
+        this.workerChecks = new long[this.parallelism];
+    }
+
+    @Override
+    public List<String> findRoute(String startCity, String endCity) {
+        statistics.reset();
+        int start = graph.id(startCity);
+        int end = graph.id(endCity);
+        if (start < 0 || end < 0) {
+            return null;
+        }
+        if (!graph.connectivity().connected(start, end)) {
+            return null;
+        }
+        search(start, end);
+        return hops[end] < 0 ? null : route(end);
+    }
+
+    /**
+     * Returns the number of arcs on a shortest route from the source to every city, or -1
+     * for cities it cannot reach.
+     *
+     * @throws IllegalArgumentException If there is no city with the source's id.
+     */
+    public int[] hopDistances(int source) {
+        search(checkCity(source), -1);
+        return hops.clone();
+    }
+
+    /**
+     * Returns the cities reachable from the source, the source included.
+     *
+     * @throws IllegalArgumentException If there is no city with the source's id.
+     */
+    public BitSet reachable(int source) {
+        search(checkCity(source), -1);
+        long[] words = new long[visited.length()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = visited.get(i);
+        }
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Returns a route with the fewest arcs between two cities, or null if there is none.
+     *
+     * @throws IllegalArgumentException If there is no city with either id.
+     */
+    public List<String> shortestHopRoute(int source, int target) {
+        search(checkCity(source), checkCity(target));
+        return hops[target] < 0 ? null : route(target);
+    }
+
+    @Override
+    public SearchStatistics getStatistics() {
+        return statistics;
+    }
+
+    private int checkCity(int city) {
+        if (city < 0 || city >= graph.size()) {
+            throw new IllegalArgumentException("No city with id " + city);
+        }
+        return city;
+    }
+
+    private List<String> route(int target) {
+        int[] path = new int[hops[target] + 1];
+        for (int v = target, i = path.length - 1; v >= 0; v = parents[v]) {
+            path[i--] = v;
+        }
+        return graph.toRoute(path, path.length);
+    }
+
+    /**
+     * Runs the search level by level from the source, stopping early once the target, if
+     * there is one, has been reached.
+     */
+    private void search(int source, int target) {
+        int size = graph.size();
+        if (hops == null) {
+            hops = new int[size];
+            parents = new int[size];
+            visited = new AtomicLongArray((size + 63) >>> 6);
+            frontierBits = new AtomicLongArray(visited.length());
+        }
+        Arrays.fill(hops, -1);
+        for (int i = 0; i < visited.length(); i++) {
+            visited.set(i, 0);
+        }
+
+        hops[source] = 0;
+        parents[source] = -1;
+        visited.set(source >>> 6, 1L << source);
+        frontier[0] = source;
+        int frontierSize = 1;
+        long frontierArcs = graph.degree(source);
+        long unexploredArcs = graph.edgeCount() - frontierArcs;
+        boolean bottomUp = false;
+        int lastSize = 0;
+
+        long expanded = 0;
+        long checked = 0;
+        long claimed = 1;
+        int peak = 1;
+        pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+        try {
+            for (int level = 0; frontierSize > 0 && (target < 0 || hops[target] < 0); level++) {
+                if (!bottomUp && frontierArcs > unexploredArcs / ALPHA) {
+                    bottomUp = true;
+                } else if (bottomUp && frontierSize < size / BETA && frontierSize < lastSize) {
+                    bottomUp = false;
+                }
+                lastSize = frontierSize;
+                expanded += frontierSize;
+                Arrays.fill(workerArcs, 0);
+                Arrays.fill(workerChecks, 0);
+                if (bottomUp) {
+                    stepBottomUp(frontierSize, level);
+                } else {
+                    stepTopDown(frontierSize, level);
+                }
+
+                frontierSize = 0;
+                frontierArcs = 0;
+                for (int w = 0; w < parallelism; w++) {
+                    IntList next = nextFrontiers[w];
+                    if (frontierSize + next.size > frontier.length) {
+                        frontier = Arrays.copyOf(frontier, Math.max(frontierSize + next.size, 2 * frontier.length));
+                    }
+                    System.arraycopy(next.items, 0, frontier, frontierSize, next.size);
+                    frontierSize += next.size;
+                    next.size = 0;
+                    frontierArcs += workerArcs[w];
+                    checked += workerChecks[w];
+                }
+                unexploredArcs -= frontierArcs;
+                claimed += frontierSize;
+                peak = Math.max(peak, frontierSize);
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+                pool = null;
+            }
+        }
+        statistics.record(expanded, checked, peak, claimed);
+    }
+
+    /**
+     * Scans the arcs out of every frontier city, claiming each unvisited target for the first
+     * worker whose atomic OR sets its bit.
+     */
+    private void stepTopDown(int frontierSize, int level) {
+        int[] cities = frontier;
+        cursor.set(0);
+        parallel(frontierSize <= CHUNK ? 1 : parallelism, w -> {
+            IntList next = nextFrontiers[w];
+            long arcs = 0;
+            long checks = 0;
+            int start;
+            while ((start = cursor.getAndAdd(CHUNK)) < frontierSize) {
+                for (int i = start, end = Math.min(frontierSize, start + CHUNK); i < end; i++) {
+                    int city = cities[i];
+                    int first = graph.firstEdge(city);
+                    int last = graph.lastEdge(city);
+                    checks += last - first;
+                    for (int e = first; e < last; e++) {
+                        int neighbor = graph.target(e);
+                        int word = neighbor >>> 6;
+                        long bit = 1L << neighbor;
+                        if ((visited.get(word) & bit) == 0
+                                && (visited.getAndAccumulate(word, bit, (a, b) -> a | b) & bit) == 0) {
+                            hops[neighbor] = level + 1;
+                            parents[neighbor] = city;
+                            next.add(neighbor);
+                            arcs += graph.degree(neighbor);
+                        }
+                    }
+                }
+            }
+            workerArcs[w] = arcs;
+            workerChecks[w] = checks;
+        });
+    }
+
+    /**
+     * Has every unvisited city look through its incoming arcs for a parent in the frontier.
+     * Each worker takes whole words of the visited bitset, so it alone writes them.
+     */
+    private void stepBottomUp(int frontierSize, int level) {
+        if (transpose == null) {
+            transpose = graph.transpose();
+        }
+        int[] cities = frontier;
+        cursor.set(0);
+        parallel(frontierSize <= CHUNK ? 1 : parallelism, w -> {
+            int start;
+            while ((start = cursor.getAndAdd(CHUNK)) < frontierSize) {
+                for (int i = start, end = Math.min(frontierSize, start + CHUNK); i < end; i++) {
+                    frontierBits.getAndAccumulate(cities[i] >>> 6, 1L << cities[i], (a, b) -> a | b);
+                }
+            }
+        });
+
+        int size = graph.size();
+        int words = visited.length();
+        cursor.set(0);
+        parallel(parallelism, w -> {
+            IntList next = nextFrontiers[w];
+            long arcs = 0;
+            long checks = 0;
+            int start;
+            while ((start = cursor.getAndAdd(WORD_CHUNK)) < words) {
+                for (int word = start, end = Math.min(words, start + WORD_CHUNK); word < end; word++) {
+                    long seen = visited.get(word);
+                    long found = 0;
+                    int base = word << 6;
+                    for (long unseen = ~seen; unseen != 0; unseen &= unseen - 1) {
+                        int city = base + Long.numberOfTrailingZeros(unseen);
+                        if (city >= size) {
+                            break;
+                        }
+                        for (int e = transpose.firstEdge(city), last = transpose.lastEdge(city); e < last; e++) {
+                            checks++;
+                            int parent = transpose.target(e);
+                            if ((frontierBits.get(parent >>> 6) & (1L << parent)) != 0) {
+                                hops[city] = level + 1;
+                                parents[city] = parent;
+                                found |= 1L << city;
+                                next.add(city);
+                                arcs += graph.degree(city);
+                                break;
+                            }
+                        }
+                    }
+                    if (found != 0) {
+                        visited.set(word, seen | found);
+                    }
+                }
+            }
+            workerArcs[w] = arcs;
+            workerChecks[w] = checks;
+        });
+
+        cursor.set(0);
+        parallel(frontierSize <= CHUNK ? 1 : parallelism, w -> {
+            int start;
+            while ((start = cursor.getAndAdd(CHUNK)) < frontierSize) {
+                for (int i = start, end = Math.min(frontierSize, start + CHUNK); i < end; i++) {
+                    frontierBits.set(cities[i] >>> 6, 0);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the action once for each of the given number of workers, on the pool if there is
+     * more than one.
+     */
+    private void parallel(int workers, IntConsumer action) {
+        if (pool == null || workers == 1) {
+            action.accept(0);
+            return;
+        }
+        try {
+            pool.submit(() -> IntStream.range(0, workers).parallel().forEach(action)).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Breadth-first search failed", e);
+        }
+    }
+}
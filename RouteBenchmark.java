@@ -0,0 +1,310 @@
+package search_methods;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Benchmark harness for the search methods, modelled on JMH's throughput and sample-time modes.
+ * Each (graph, method) pair gets warmup iterations followed by measured iterations of a fixed
+ * duration, replaying the same random queries. For every pair it reports throughput, average,
+ * p50 and p99 latency, and the allocation rate and bytes allocated per query (the figures JMH's
+ * GC profiler prints as gc.alloc.rate and gc.alloc.rate.norm), followed by the mean
+ * {@link SearchStatistics} per query. With more than one {@link GraphOrdering}, every graph is
+ * renumbered and run in each order, and the locality of its arcs is printed first.
+ *
+ * <p>Usage: {@code java -Xmx8g -cp build/classes search_methods.RouteBenchmark [options]}
+ * <pre>
+ *   --graphs kansas,grid,geometric,scalefree   graphs to run (default: all)
+ *   --nodes 1000,10000,100000                  synthetic graph sizes, up to 10000000
+ *   --methods A_STAR,BFS                       search methods to run (default: all)
+ *   --warmup 3 --iterations 5 --time 1000      iteration counts and milliseconds per iteration
+ *   --queries 256 --seed 42                    number of distinct random queries and their seed
+ *   --landmarks 16                             also run A* with ALT landmark tables (default: off)
+ *   --orders original,hilbert,rcm              city orderings to run each graph in (default: original)
+ *   --adjacency Adjacencies.txt --coordinates coordinates.csv
+ * </pre>
+ */
+public final class RouteBenchmark {
+    private static final int MAX_SAMPLES = 1 << 22;
+
+    private static volatile int sink;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+    private final int landmarkCount;
+    private final List<GraphOrdering.Strategy> orders;
+    private final long[] samples = new long[MAX_SAMPLES];
+
+    RouteBenchmark(int warmupIterations, int measurementIterations, long iterationMillis, int landmarkCount,
+                   List<GraphOrdering.Strategy> orders) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1_000_000L;
+        this.landmarkCount = landmarkCount;
+        this.orders = orders;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parseOptions(args);
+        List<String> graphs = Arrays.asList(options.getOrDefault("graphs", "kansas,grid,geometric,scalefree").split(","));
+        String[] nodeCounts = options.getOrDefault("nodes", "1000,10000,100000").split(",");
+        List<SearchMethod> methods = new ArrayList<>();
+        for (String name : options.getOrDefault("methods", "").split(",")) {
+            if (!name.isEmpty()) {
+                methods.add(SearchMethod.valueOf(name.trim().toUpperCase()));
+            }
+        }
+        if (methods.isEmpty()) {
+            // Brute force takes exponential time, so it only runs when named
+            methods.addAll(EnumSet.complementOf(EnumSet.of(SearchMethod.BRUTE_FORCE)));
+        }
+        List<GraphOrdering.Strategy> orders = new ArrayList<>();
+        for (String name : options.getOrDefault("orders", "original").split(",")) {
+            orders.add(GraphOrdering.Strategy.parse(name));
+        }
+        int queryCount = Integer.parseInt(options.getOrDefault("queries", "256"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+        RouteBenchmark benchmark = new RouteBenchmark(
+                Integer.parseInt(options.getOrDefault("warmup", "3")),
+                Integer.parseInt(options.getOrDefault("iterations", "5")),
+                Long.parseLong(options.getOrDefault("time", "1000")),
+                Integer.parseInt(options.getOrDefault("landmarks", "0")),
+                orders);
+
+        System.out.printf("%-22s %-22s %12s %12s %12s %12s %14s %12s%n",
+                "Graph", "Method", "ops/s", "avg us", "p50 us", "p99 us", "alloc B/op", "alloc MB/s");
+
+        if (graphs.contains("kansas")) {
+            CompiledGraph graph = GraphLoader.load(Paths.get(options.getOrDefault("adjacency", "Adjacencies.txt")),
+                    Paths.get(options.getOrDefault("coordinates", "coordinates.csv")));
+            benchmark.run("kansas", graph, methods, randomQueries(graph, queryCount, seed));
+        }
+        for (String nodeCount : nodeCounts) {
+            int nodes = Integer.parseInt(nodeCount.trim());
+            if (graphs.contains("grid")) {
+                CompiledGraph graph = SyntheticGraphs.grid(nodes);
+                benchmark.run("grid-" + nodes, graph, methods, randomQueries(graph, queryCount, seed));
+            }
+            if (graphs.contains("geometric")) {
+                CompiledGraph graph = SyntheticGraphs.randomGeometric(nodes, 6.0, seed);
+                benchmark.run("geometric-" + nodes, graph, methods, randomQueries(graph, queryCount, seed));
+            }
+            if (graphs.contains("scalefree")) {
+                CompiledGraph graph = SyntheticGraphs.scaleFree(nodes, 2, seed);
+                benchmark.run("scalefree-" + nodes, graph, methods, randomQueries(graph, queryCount, seed));
+            }
+        }
+    }
+
+    void run(String graphName, CompiledGraph graph, List<SearchMethod> methods, String[][] queries) {
+        if (orders.size() == 1 && orders.get(0) == GraphOrdering.Strategy.ORIGINAL) {
+            runOrdered(graphName, graph, methods, queries);
+            return;
+        }
+        // Queries name cities, so the same ones replay against every order
+        for (GraphOrdering.Strategy order : orders) {
+            long started = System.nanoTime();
+            CompiledGraph ordered = GraphOrdering.of(graph, order).graph();
+            String name = graphName + "/" + order.name().toLowerCase();
+            System.out.printf("%-22s %-22s mean arc span %.1f ids, %.1f%% of arcs within 8 ids, %.1f%% within 512,"
+                            + " renumbered in %.1f ms%n", name, "", GraphOrdering.meanArcSpan(ordered),
+                    100 * GraphOrdering.localArcShare(ordered, 8), 100 * GraphOrdering.localArcShare(ordered, 512),
+                    (System.nanoTime() - started) / 1e6);
+            runOrdered(name, ordered, methods, queries);
+        }
+    }
+
+    private void runOrdered(String graphName, CompiledGraph graph, List<SearchMethod> methods, String[][] queries) {
+        for (SearchMethod method : methods) {
+            measure(graphName, method.name(), method.create(graph), queries);
+        }
+        if (landmarkCount > 0) {
+            long started = System.nanoTime();
+            LandmarkIndex landmarks = LandmarkIndex.build(graph, landmarkCount, LandmarkIndex.Selection.AVOID, 42);
+            System.out.printf("%-22s %-22s built %d landmarks in %.1f ms%n", graphName, "",
+                    landmarks.size(), (System.nanoTime() - started) / 1e6);
+            measure(graphName, "A_STAR+ALT", new AStarRouteFinder(graph, landmarks), queries);
+        }
+    }
+
+    private void measure(String graphName, String label, RouteFinder finder, String[][] queries) {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(finder, queries);
+        }
+        if (finder instanceof AStarRouteFinder) {
+            ((AStarRouteFinder) finder).resetCounters();
+        }
+        Result total = new Result();
+        for (int i = 0; i < measurementIterations; i++) {
+            total.add(iteration(finder, queries));
+        }
+        total.print(graphName, label);
+        if (total.nodesExpanded > 0) {
+            double operations = Math.max(1, total.operations);
+            System.out.printf("%-22s %-22s search per query: %.1f expanded, %.1f relaxed, %.1f queue ops, peak frontier %d%n",
+                    "", "", total.nodesExpanded / operations, total.edgesRelaxed / operations,
+                    total.queueOperations / operations, total.peakFrontier);
+        }
+        if (finder instanceof AStarRouteFinder) {
+            AStarRouteFinder aStar = (AStarRouteFinder) finder;
+            double operations = Math.max(1, total.operations);
+            System.out.printf("%-22s %-22s heap per query: %.1f pushes, %.1f pops, %.1f decrease-keys%n",
+                    "", "", aStar.getPushCount() / operations, aStar.getPopCount() / operations,
+                    aStar.getDecreaseKeyCount() / operations);
+        }
+    }
+
+    private Result iteration(RouteFinder finder, String[][] queries) {
+        Result result = new Result();
+        long allocatedBefore = allocatedBytes();
+        long gcBefore = gcCount();
+        int sampleCount = 0;
+        int hash = 0;
+        long started = System.nanoTime();
+        long now = started;
+
+        for (int i = 0; now - started < iterationNanos; i++) {
+            String[] query = queries[i % queries.length];
+            long before = System.nanoTime();
+            List<String> route = finder.findRoute(query[0], query[1]);
+            now = System.nanoTime();
+            hash += route != null ? route.size() : -1;
+            SearchStatistics statistics = finder.getStatistics();
+            if (statistics != null) {
+                result.nodesExpanded += statistics.getNodesExpanded();
+                result.edgesRelaxed += statistics.getEdgesRelaxed();
+                result.queueOperations += statistics.getQueueOperations();
+                result.peakFrontier = Math.max(result.peakFrontier, statistics.getPeakFrontier());
+            }
+            if (sampleCount < samples.length) {
+                samples[sampleCount++] = now - before;
+            }
+            result.operations++;
+        }
+
+        sink = hash;
+        result.elapsedNanos = now - started;
+        result.allocatedBytes = allocatedBytes() - allocatedBefore;
+        result.gcCount = gcCount() - gcBefore;
+        result.latencies = Arrays.copyOf(samples, sampleCount);
+        return result;
+    }
+
+    /**
+     * Picks random (start, end) pairs inside the component of the first city, so every query has a route.
+     */
+    static String[][] randomQueries(CompiledGraph graph, int count, long seed) {
+        int[] component = new int[graph.size()];
+        boolean[] seen = new boolean[graph.size()];
+        int start = 0;
+        while (start < graph.size() - 1 && graph.degree(start) == 0) {
+            start++;
+        }
+        int head = 0;
+        int tail = 0;
+        component[tail++] = start;
+        seen[start] = true;
+        while (head < tail) {
+            int v = component[head++];
+            for (int e = graph.firstEdge(v); e < graph.lastEdge(v); e++) {
+                int u = graph.target(e);
+                if (!seen[u]) {
+                    seen[u] = true;
+                    component[tail++] = u;
+                }
+            }
+        }
+
+        Random random = new Random(seed);
+        String[][] queries = new String[count][];
+        for (int i = 0; i < count; i++) {
+            queries[i] = new String[] {
+                graph.name(component[random.nextInt(tail)]),
+                graph.name(component[random.nextInt(tail)])
+            };
+        }
+        return queries;
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    /**
+     * Measurements of one or more iterations.
+     */
+    private static final class Result {
+        long operations;
+        long elapsedNanos;
+        long allocatedBytes;
+        long gcCount;
+        long nodesExpanded;
+        long edgesRelaxed;
+        long queueOperations;
+        int peakFrontier;
+        long[] latencies = new long[0];
+
+        void add(Result other) {
+            operations += other.operations;
+            elapsedNanos += other.elapsedNanos;
+            allocatedBytes += other.allocatedBytes;
+            gcCount += other.gcCount;
+            nodesExpanded += other.nodesExpanded;
+            edgesRelaxed += other.edgesRelaxed;
+            queueOperations += other.queueOperations;
+            peakFrontier = Math.max(peakFrontier, other.peakFrontier);
+            long[] merged = Arrays.copyOf(latencies, latencies.length + other.latencies.length);
+            System.arraycopy(other.latencies, 0, merged, latencies.length, other.latencies.length);
+            latencies = merged;
+        }
+
+        void print(String graphName, String label) {
+            Arrays.sort(latencies);
+            double seconds = elapsedNanos / 1e9;
+            System.out.printf("%-22s %-22s %12.1f %12.2f %12.2f %12.2f %14.1f %12.2f   (gc: %d)%n",
+                    graphName, label,
+                    operations / seconds,
+                    elapsedNanos / 1e3 / Math.max(1, operations),
+                    percentile(0.50) / 1e3,
+                    percentile(0.99) / 1e3,
+                    (double) allocatedBytes / Math.max(1, operations),
+                    allocatedBytes / 1e6 / seconds,
+                    gcCount);
+        }
+
+        private double percentile(double quantile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            return latencies[Math.min(latencies.length - 1, (int) Math.ceil(quantile * latencies.length) - 1)];
+        }
+    }
+}
@@ -0,0 +1,600 @@
+package search_methods;
+
+import java.util.*;
+
+/**
+ * A bounded cache of routes keyed by (start, end, method), shared by any number of finders and
+ * threads. Routes are computed outside the cache's lock, so a slow search never blocks hits.
+ * Cached routes are unmodifiable lists, and a pair with no route is cached as well.
+ *
+ * <p>Two eviction policies are offered. {@link Policy#LRU} evicts the least recently used entry.
+ * {@link Policy#TINY_LFU} is W-TinyLFU: new entries enter a small LRU window (1% of the
+ * capacity), and an entry leaving the window only replaces the main region's eviction victim
+ * if a count-min sketch of recent query frequencies says it is asked for more often. The main
+ * region is a segmented LRU whose protected segment holds entries hit at least twice, so a
+ * burst of one-off queries cannot flush the popular pairs.
+ *
+ * <p>For methods whose routes are shortest paths ({@link SearchMethod#isOptimal()}), every
+ * subpath of a cached route is a shortest path too. A miss is then answered from a cached route
+ * of the same method that passes through the start and later the end; the answer has the
+ * same cost as a fresh search, though ties may be broken differently. Routes over an arc of
+ * weight {@link Double#MAX_VALUE}, which touches a city without coordinates, are not reused:
+ * every route over such an arc costs the same, so the search's pick says nothing about the
+ * cities on it.
+ *
+ * <p>{@link #invalidateAll()} drops every entry when the graph changes, and
+ * {@link #invalidate(DynamicGraph.Snapshot, DynamicGraph.Changes)} only the entries a
+ * {@link DynamicGraph} update affects. Searches that started before an invalidation do not
+ * insert their results. Every entry carries the graph version it was computed on and a
+ * lookup only hits entries of the caller's version, so a query on a newly published version
+ * never sees a route from the one before, even before the cache has heard of the update.
+ */
+public final class RouteCache {
+    /**
+     * How entries are chosen for eviction.
+     */
+    public enum Policy {
+        LRU,
+        TINY_LFU
+    }
+
+    // Cached routes of one method checked per subpath lookup, in the order they were added
+    private static final int SUBPATH_CANDIDATES = 16;
+    private static final List<String> NO_ROUTE = Collections.emptyList();
+
+    private final Policy policy;
+    private final int capacity;
+    private final int windowCapacity;
+    private final int protectedCapacity;
+    private final boolean reuseSubpaths;
+    private final Map<Key, Node> entries = new HashMap<>();
+    private final Region window = new Region();
+    private final Region probation = new Region();
+    private final Region protectedRegion = new Region();
+    private final FrequencySketch sketch;
+    // Cached routes by city, per method, for subpath lookups
+    private final EnumMap<SearchMethod, Map<String, Set<Node>>> routesThrough = new EnumMap<>(SearchMethod.class);
+    private long generation;
+    // The newest graph version the cache has been told about
+    private long version;
+
+    private long hits;
+    private long subpathHits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Creates a W-TinyLFU cache that reuses subpaths.
+     */
+    public RouteCache(int capacity) {
+        this(capacity, Policy.TINY_LFU, true);
+    }
+
+    public RouteCache(int capacity, Policy policy, boolean reuseSubpaths) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        this.policy = policy;
+        this.capacity = capacity;
+        this.reuseSubpaths = reuseSubpaths;
+        if (policy == Policy.TINY_LFU) {
+            this.windowCapacity = Math.max(1, capacity / 100);
+            this.protectedCapacity = (capacity - windowCapacity) * 4 / 5;
+            this.sketch = new FrequencySketch(capacity);
+        } else {
+            this.windowCapacity = capacity;
+            this.protectedCapacity = 0;
+            this.sketch = null;
+        }
+    }
+
+    /**
+     * Returns the cached route for the query, computing it with the finder on a miss.
+     *
+     * @param startCity The name of the starting city.
+     * @param endCity   The name of the ending city.
+     * @param method    The method the finder implements; part of the key.
+     * @param graph     The graph the finder searches, which measures routes before their subpaths are reused.
+     * @param finder    Computes the route on a miss. It is called without holding the cache's lock.
+     * @return The route as an unmodifiable list, or null if there is none.
+     */
+    public List<String> findRoute(String startCity, String endCity, SearchMethod method, CompiledGraph graph,
+                                  RouteFinder finder) {
+        long latest;
+        synchronized (this) {
+            latest = version;
+        }
+        return findRoute(startCity, endCity, method, graph, latest, finder);
+    }
+
+    /**
+     * Returns the cached route for a query on one version of a {@link DynamicGraph}, computing
+     * it with the finder on a miss. Only routes computed on that version are returned, and the
+     * finder's route is only kept if no newer version has been reported since.
+     *
+     * @param startCity The name of the starting city.
+     * @param endCity   The name of the ending city.
+     * @param method    The method the finder implements; part of the key.
+     * @param snapshot  The version the finder searches.
+     * @param finder    Computes the route on a miss. It is called without holding the cache's lock.
+     * @return The route as an unmodifiable list, or null if there is none.
+     */
+    public List<String> findRoute(String startCity, String endCity, SearchMethod method,
+                                  DynamicGraph.Snapshot snapshot, RouteFinder finder) {
+        return findRoute(startCity, endCity, method, snapshot.getGraph(), snapshot.getVersion(), finder);
+    }
+
+    private List<String> findRoute(String startCity, String endCity, SearchMethod method, CompiledGraph graph,
+                                   long graphVersion, RouteFinder finder) {
+        Key key = new Key(startCity, endCity, method);
+        long startGeneration;
+        synchronized (this) {
+            if (sketch != null) {
+                sketch.increment(key.hashCode());
+            }
+            Node node = entries.get(key);
+            if (node != null && node.version == graphVersion) {
+                hits++;
+                onHit(node);
+                return node.route == NO_ROUTE ? null : node.route;
+            }
+            if (reuseSubpaths && method.isOptimal()) {
+                List<String> subpath = findSubpath(startCity, endCity, method, graphVersion);
+                if (subpath != null) {
+                    subpathHits++;
+                    store(key, subpath, graphVersion, true);
+                    return subpath;
+                }
+            }
+            misses++;
+            startGeneration = generation;
+        }
+
+        List<String> route = finder.findRoute(startCity, endCity);
+        List<String> cached = route == null ? NO_ROUTE : Collections.unmodifiableList(new ArrayList<>(route));
+        boolean reusable = reuseSubpaths && method.isOptimal() && graph.routeWeight(cached) < Double.MAX_VALUE;
+        synchronized (this) {
+            if (generation == startGeneration) {
+                store(key, cached, graphVersion, reusable);
+            }
+        }
+        return route == null ? null : cached;
+    }
+
+    /**
+     * Drops every entry. Call this whenever the graph the routes were computed on changes.
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+        window.clear();
+        probation.clear();
+        protectedRegion.clear();
+        routesThrough.clear();
+        generation++;
+        invalidations++;
+    }
+
+    /**
+     * Drops the entries a graph update may have made wrong and carries the rest over to the new
+     * version. If no arc was added or got shorter, only routes over a changed arc are dropped:
+     * every other cached route, and every cached absence of a route, is still a shortest answer.
+     * Otherwise everything is dropped. Matches {@link DynamicGraph.Listener}, so a cache can be
+     * registered with {@code addListener(cache::invalidate)}.
+     *
+     * @param snapshot The new version, whose graph the change ids refer to.
+     * @param changes  The arcs that changed since the version before it.
+     */
+    public synchronized void invalidate(DynamicGraph.Snapshot snapshot, DynamicGraph.Changes changes) {
+        long next = snapshot.getVersion();
+        version = Math.max(version, next);
+        if (changes.hasDecreases()) {
+            invalidateAll();
+            return;
+        }
+        CompiledGraph graph = snapshot.getGraph();
+        Set<Long> changedArcs = new HashSet<>();
+        for (int c = 0; c < changes.size(); c++) {
+            changedArcs.add(arc(changes.from(c), changes.to(c)));
+        }
+        // Only entries of the version just before are checked against the changes; older ones never hit again
+        List<Node> stale = new ArrayList<>();
+        for (Node node : entries.values()) {
+            if (node.version != next - 1) {
+                continue;
+            }
+            int previous = -1;
+            for (String city : node.route) {
+                int id = graph.id(city);
+                if (previous >= 0 && changedArcs.contains(arc(previous, id))) {
+                    stale.add(node);
+                    break;
+                }
+                previous = id;
+            }
+            node.version = next;
+        }
+        for (Node node : stale) {
+            remove(node);
+        }
+        generation++;
+        invalidations++;
+    }
+
+    private static long arc(int from, int to) {
+        return (long) from << 32 | (to & 0xFFFFFFFFL);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public Policy policy() {
+        return policy;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, subpathHits, misses, evictions, invalidations, entries.size());
+    }
+
+    private void onHit(Node node) {
+        if (node.region == probation) {
+            // A second hit promotes the entry; the protected segment's oldest entry makes room
+            probation.remove(node);
+            protectedRegion.addFirst(node);
+            if (protectedRegion.size > protectedCapacity) {
+                probation.addFirst(protectedRegion.removeLast());
+            }
+        } else {
+            node.region.moveToFront(node);
+        }
+    }
+
+    /**
+     * Caches a route computed on the given version, unless a newer version has been reported
+     * or the entry already holds a route at least as new. Only reusable routes are indexed
+     * for subpath lookups.
+     */
+    private void store(Key key, List<String> route, long routeVersion, boolean reusable) {
+        if (routeVersion < version) {
+            return;
+        }
+        Node existing = entries.get(key);
+        if (existing != null) {
+            if (existing.version >= routeVersion) {
+                return;
+            }
+            remove(existing);
+        }
+        insert(key, route, routeVersion, reusable);
+    }
+
+    private void insert(Key key, List<String> route, long routeVersion, boolean reusable) {
+        Node node = new Node(key, route, routeVersion);
+        entries.put(key, node);
+        window.addFirst(node);
+        if (reusable) {
+            index(node);
+        }
+        if (window.size <= windowCapacity) {
+            return;
+        }
+
+        Node candidate = window.last();
+        if (policy == Policy.LRU) {
+            evict(candidate);
+            return;
+        }
+        window.remove(candidate);
+        probation.addFirst(candidate);
+        if (entries.size() > capacity) {
+            Node victim = probation.last();
+            if (victim == candidate) {
+                evict(candidate);
+            } else {
+                // The window's oldest entry only gets in if it is asked for more often than the victim
+                boolean admit = sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode());
+                evict(admit ? victim : candidate);
+            }
+        }
+    }
+
+    private void evict(Node node) {
+        remove(node);
+        evictions++;
+    }
+
+    private void remove(Node node) {
+        node.region.remove(node);
+        entries.remove(node.key);
+        unindex(node);
+    }
+
+    private void index(Node node) {
+        if (!reuseSubpaths || !node.key.method.isOptimal() || node.route.size() < 3) {
+            return;
+        }
+        Map<String, Set<Node>> byCity = routesThrough.computeIfAbsent(node.key.method, m -> new HashMap<>());
+        for (String city : node.route) {
+            byCity.computeIfAbsent(city, c -> new LinkedHashSet<>()).add(node);
+        }
+    }
+
+    private void unindex(Node node) {
+        Map<String, Set<Node>> byCity = routesThrough.get(node.key.method);
+        if (byCity == null || node.route.size() < 3) {
+            return;
+        }
+        for (String city : node.route) {
+            Set<Node> nodes = byCity.get(city);
+            if (nodes != null && nodes.remove(node) && nodes.isEmpty()) {
+                byCity.remove(city);
+            }
+        }
+    }
+
+    /**
+     * Looks for a cached route of the method and version that visits the start and then the end.
+     */
+    private List<String> findSubpath(String startCity, String endCity, SearchMethod method, long graphVersion) {
+        Map<String, Set<Node>> byCity = routesThrough.get(method);
+        if (byCity == null) {
+            return null;
+        }
+        Set<Node> throughStart = byCity.get(startCity);
+        Set<Node> throughEnd = byCity.get(endCity);
+        if (throughStart == null || throughEnd == null) {
+            return null;
+        }
+        Set<Node> candidates = throughStart.size() <= throughEnd.size() ? throughStart : throughEnd;
+        int checked = 0;
+        for (Node node : candidates) {
+            if (checked++ == SUBPATH_CANDIDATES) {
+                break;
+            }
+            if (node.version != graphVersion) {
+                continue;
+            }
+            int from = node.route.indexOf(startCity);
+            int to = node.route.lastIndexOf(endCity);
+            if (from >= 0 && from < to) {
+                return Collections.unmodifiableList(new ArrayList<>(node.route.subList(from, to + 1)));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cache counters at one point in time.
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long subpathHits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+        private final int size;
+
+        Stats(long hits, long subpathHits, long misses, long evictions, long invalidations, int size) {
+            this.hits = hits;
+            this.subpathHits = subpathHits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.size = size;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Returns the number of misses answered from a subpath of another cached route.
+         */
+        public long getSubpathHits() {
+            return subpathHits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the fraction of lookups answered without a search, counting subpath hits.
+         */
+        public double getHitRate() {
+            long lookups = hits + subpathHits + misses;
+            return lookups == 0 ? 0.0 : (double) (hits + subpathHits) / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d subpathHits=%d misses=%d hitRate=%.3f evictions=%d invalidations=%d size=%d",
+                    hits, subpathHits, misses, getHitRate(), evictions, invalidations, size);
+        }
+    }
+
+    private static final class Key {
+        final String startCity;
+        final String endCity;
+        final SearchMethod method;
+        final int hash;
+
+        Key(String startCity, String endCity, SearchMethod method) {
+            this.startCity = startCity;
+            this.endCity = endCity;
+            this.method = method;
+            this.hash = (startCity.hashCode() * 31 + endCity.hashCode()) * 31 + method.ordinal();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return method == key.method && startCity.equals(key.startCity) && endCity.equals(key.endCity);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Node {
+        final Key key;
+        final List<String> route;
+        // The graph version the route is known to be right for
+        long version;
+        Region region;
+        Node previous;
+        Node next;
+
+        Node(Key key, List<String> route, long version) {
+            this.key = key;
+            this.route = route;
+            this.version = version;
+        }
+    }
+
+    /**
+     * An intrusive doubly linked list from most to least recently used.
+     */
+    private static final class Region {
+        private Node first;
+        private Node last;
+        int size;
+
+        void addFirst(Node node) {
+            node.region = this;
+            node.previous = null;
+            node.next = first;
+            if (first != null) {
+                first.previous = node;
+            } else {
+                last = node;
+            }
+            first = node;
+            size++;
+        }
+
+        void remove(Node node) {
+            if (node.previous != null) {
+                node.previous.next = node.next;
+            } else {
+                first = node.next;
+            }
+            if (node.next != null) {
+                node.next.previous = node.previous;
+            } else {
+                last = node.previous;
+            }
+            node.previous = null;
+            node.next = null;
+            node.region = null;
+            size--;
+        }
+
+        void moveToFront(Node node) {
+            if (node != first) {
+                remove(node);
+                addFirst(node);
+            }
+        }
+
+        Node last() {
+            return last;
+        }
+
+        Node removeLast() {
+            Node node = last;
+            remove(node);
+            return node;
+        }
+
+        void clear() {
+            first = null;
+            last = null;
+            size = 0;
+        }
+    }
+
+    /**
+     * A count-min sketch of 4-bit counters, four per key, halved every {@code 10 * capacity}
+     * increments so that old popularity fades.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+        };
+        private static final long HALF_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity) {
+            int words = Integer.highestOneBit(Math.max(8, capacity - 1)) << 1;
+            this.table = new long[words];
+            this.sampleSize = 10 * Math.max(capacity, 8);
+        }
+
+        int frequency(int hash) {
+            int frequency = 15;
+            for (int i = 0; i < SEEDS.length; i++) {
+                frequency = Math.min(frequency, counter(hash, i));
+            }
+            return frequency;
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = index(hash, i);
+                int shift = shift(hash, i);
+                if (((table[index] >>> shift) & 0xF) < 15) {
+                    table[index] += 1L << shift;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & HALF_MASK;
+                }
+                additions /= 2;
+            }
+        }
+
+        private int counter(int hash, int row) {
+            return (int) ((table[index(hash, row)] >>> shift(hash, row)) & 0xF);
+        }
+
+        private int index(int hash, int row) {
+            long mixed = (hash + SEEDS[row]) * SEEDS[row];
+            return (int) (mixed >>> 40) & (table.length - 1);
+        }
+
+        private int shift(int hash, int row) {
+            // Each row uses its own quarter of the 16 counters in a word
+            long mixed = (hash * SEEDS[row]) >>> 60;
+            return (int) (((mixed & 3) + 4 * row) << 2);
+        }
+    }
+}
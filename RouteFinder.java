@@ -0,0 +1,26 @@
+package search_methods;
+
+import java.util.List;
+
+/**
+ * Common contract shared by every search method offered in {@link Search_Methods}.
+ */
+public interface RouteFinder {
+
+    /**
+     * Finds a route between two cities.
+     *
+     * @param startCity The starting city.
+     * @param endCity   The ending city.
+     * @return A list of city names from start to end, or null if no route is found.
+     */
+    List<String> findRoute(String startCity, String endCity);
+
+    /**
+     * Returns what the last {@link #findRoute} call did, or null if the finder does not count
+     * its work. The object is overwritten by the next query.
+     */
+    default SearchStatistics getStatistics() {
+        return null;
+    }
+}
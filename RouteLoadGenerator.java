@@ -0,0 +1,206 @@
+package search_methods;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Load generator for {@link RouteServer}. Each connection has a sender thread that keeps up to
+ * {@code --pipeline} requests outstanding and a receiver thread that matches responses to
+ * requests, which the server answers in order, and records the round-trip time in a
+ * {@link LatencyHistogram}. A warmup pass runs first and is not recorded.
+ *
+ * <p>Usage: {@code java -cp build/classes search_methods.RouteLoadGenerator [options]}
+ * <pre>
+ *   --host 127.0.0.1 --port 7878
+ *   --connections 4 --pipeline 32           connections and outstanding requests on each
+ *   --requests 100000 --warmup 10000        measured and warmup requests, over all connections
+ *   --queries file                          queries in the BatchRouter format, replayed in a cycle
+ *   --adjacency Adjacencies.txt --coordinates coordinates.csv --method A_STAR --seed 42
+ *                                           random city pairs instead, if no query file is given
+ * </pre>
+ */
+public final class RouteLoadGenerator {
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final int pipeline;
+    private final List<String> queries;
+
+    RouteLoadGenerator(String host, int port, int connections, int pipeline, List<String> queries) {
+        this.host = host;
+        this.port = port;
+        this.connections = connections;
+        this.pipeline = pipeline;
+        this.queries = queries;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+
+        List<String> queries;
+        if (options.containsKey("queries")) {
+            try (Stream<String> lines = java.nio.file.Files.lines(Paths.get(options.get("queries")))) {
+                queries = lines.map(String::trim)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                        .collect(Collectors.toList());
+            }
+        } else {
+            CompiledGraph graph = GraphLoader.load(Paths.get(options.getOrDefault("adjacency", "Adjacencies.txt")),
+                    Paths.get(options.getOrDefault("coordinates", "coordinates.csv")));
+            SearchMethod method = SearchMethod.parse(options.getOrDefault("method", "A_STAR"));
+            Random random = new Random(Long.parseLong(options.getOrDefault("seed", "42")));
+            queries = new ArrayList<>();
+            for (int i = 0; i < 4096; i++) {
+                queries.add(graph.name(random.nextInt(graph.size())) + " "
+                        + graph.name(random.nextInt(graph.size())) + " " + method.name());
+            }
+        }
+        if (queries.isEmpty()) {
+            throw new IllegalArgumentException("No queries to send");
+        }
+
+        RouteLoadGenerator generator = new RouteLoadGenerator(
+                options.getOrDefault("host", "127.0.0.1"),
+                Integer.parseInt(options.getOrDefault("port", "7878")),
+                Integer.parseInt(options.getOrDefault("connections", "4")),
+                Integer.parseInt(options.getOrDefault("pipeline", "32")),
+                queries);
+        generator.run(Integer.parseInt(options.getOrDefault("warmup", "10000")), null);
+        LatencyHistogram latencies = new LatencyHistogram();
+        Outcome outcome = generator.run(Integer.parseInt(options.getOrDefault("requests", "100000")), latencies);
+
+        double seconds = outcome.elapsedNanos / 1e9;
+        System.out.printf("%d requests on %d connections, pipeline %d: %.3f seconds, %.1f requests/s%n",
+                latencies.getCount(), generator.connections, generator.pipeline, seconds, latencies.getCount() / seconds);
+        System.out.printf("routes %d, no route %d, errors %d%n", outcome.routes.get(), outcome.noRoutes.get(),
+                outcome.errors.get());
+        System.out.printf("latency us: mean %.1f  p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+                latencies.getMean() / 1e3, latencies.getValueAtPercentile(50) / 1e3,
+                latencies.getValueAtPercentile(90) / 1e3, latencies.getValueAtPercentile(99) / 1e3,
+                latencies.getValueAtPercentile(99.9) / 1e3, latencies.getMax() / 1e3);
+    }
+
+    /**
+     * Sends the requests, split evenly over the connections, and waits for every response.
+     *
+     * @param latencies Receives every round-trip time, or null to record nothing.
+     */
+    Outcome run(int requests, LatencyHistogram latencies) throws IOException, InterruptedException {
+        Outcome outcome = new Outcome();
+        List<Thread> threads = new ArrayList<>();
+        List<Socket> sockets = new ArrayList<>();
+        List<IOException> failures = Collections.synchronizedList(new ArrayList<>());
+        long started = System.nanoTime();
+        try {
+            for (int c = 0; c < connections; c++) {
+                int count = requests / connections + (c < requests % connections ? 1 : 0);
+                int offset = c * (queries.size() / connections + 1);
+                Socket socket = new Socket();
+                socket.setTcpNoDelay(true);
+                socket.connect(new InetSocketAddress(host, port));
+                sockets.add(socket);
+                // Send times by request number modulo the pipeline depth, for the receiver
+                AtomicLongArray sentAt = new AtomicLongArray(pipeline);
+                Semaphore outstanding = new Semaphore(pipeline);
+                threads.add(start("sender-" + c, failures, () -> send(socket, count, offset, sentAt, outstanding)));
+                threads.add(start("receiver-" + c, failures,
+                        () -> receive(socket, count, sentAt, outstanding, latencies, outcome)));
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+        outcome.elapsedNanos = System.nanoTime() - started;
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+        return outcome;
+    }
+
+    private void send(Socket socket, int count, int offset, AtomicLongArray sentAt, Semaphore outstanding)
+            throws IOException, InterruptedException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 1 << 16);
+        for (int i = 0; i < count; i++) {
+            // Flush only when the pipeline is full, so requests leave in batches
+            if (!outstanding.tryAcquire()) {
+                out.flush();
+                outstanding.acquire();
+            }
+            sentAt.set(i % pipeline, System.nanoTime());
+            out.write(queries.get((offset + i) % queries.size()));
+            out.write('\n');
+        }
+        out.flush();
+        socket.shutdownOutput();
+    }
+
+    private void receive(Socket socket, int count, AtomicLongArray sentAt, Semaphore outstanding,
+                         LatencyHistogram latencies, Outcome outcome) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+        for (int i = 0; i < count; i++) {
+            String line = in.readLine();
+            if (line == null) {
+                throw new EOFException("The server closed the connection after " + i + " of " + count + " responses");
+            }
+            long now = System.nanoTime();
+            if (latencies != null) {
+                latencies.record(now - sentAt.get(i % pipeline));
+            }
+            outstanding.release();
+            if (line.startsWith("OK")) {
+                outcome.routes.incrementAndGet();
+            } else if (line.startsWith("NONE")) {
+                outcome.noRoutes.incrementAndGet();
+            } else {
+                outcome.errors.incrementAndGet();
+            }
+        }
+    }
+
+    private interface Task {
+        void run() throws IOException, InterruptedException;
+    }
+
+    private static Thread start(String name, List<IOException> failures, Task task) {
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                failures.add(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "load-" + name);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Response counts of one run.
+     */
+    static final class Outcome {
+        final AtomicLong routes = new AtomicLong();
+        final AtomicLong noRoutes = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        long elapsedNanos;
+    }
+}
@@ -0,0 +1,502 @@
+package search_methods;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+
+/**
+ * A route service on a TCP socket that loads the graph once and answers line-based queries
+ * from any number of clients. One selector thread does all socket I/O without blocking: it
+ * reads whatever each connection has sent, splits it into lines and queues every line as a
+ * request for a fixed pool of search workers, which take requests in batches and keep one
+ * finder per search method each, as {@link BatchRouter}'s workers do.
+ *
+ * <p>Clients may pipeline: send many requests without waiting, and responses come back in
+ * request order on each connection. A request is a line in the query file format of
+ * {@link BatchRouter}, {@code <start city> <end city> <method>}. The response is one line:
+ * <pre>
+ *   OK &lt;distance km&gt; &lt;search ns&gt; &lt;city&gt; &lt;city&gt; ...
+ *   NONE &lt;search ns&gt;
+ *   ERROR &lt;message&gt;
+ * </pre>
+ * Blank lines get no response. A connection stops being read while it has too many requests
+ * in flight or too much output its client has not taken yet, so a slow client cannot make
+ * the server buffer without bound. When a client shuts down its output, the server answers
+ * what it has already received and then closes the connection.
+ */
+public final class RouteServer {
+    // Requests in flight per connection before it stops being read
+    private static final int MAX_IN_FLIGHT = 1024;
+    // Unsent response bytes per connection before it stops being read
+    private static final int MAX_PENDING_OUTPUT = 1 << 20;
+    private static final int INPUT_BUFFER_BYTES = 1 << 16;
+    // Requests a worker takes from the queue at a time
+    private static final int WORKER_BATCH = 64;
+
+    private final CompiledGraph graph;
+    private final int threadCount;
+    private final RouteCache cache;
+    private final SearchMetrics metrics;
+    private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+    // Connections with responses to write, handed from the workers to the selector thread
+    private final Queue<Connection> flushes = new ConcurrentLinkedQueue<>();
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong connectionCount = new AtomicLong();
+    // Open connections; selector thread only
+    private final Set<Connection> connections = new HashSet<>();
+
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread selectorThread;
+    private Thread[] workers;
+
+    /**
+     * @param graph       The graph every query runs on.
+     * @param threadCount The number of search workers.
+     * @param cache       Shared by the workers to answer repeated queries, or null for no caching.
+     * @param metrics     Receives the statistics of every search, or null.
+     */
+    public RouteServer(CompiledGraph graph, int threadCount, RouteCache cache, SearchMetrics metrics) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be at least 1: " + threadCount);
+        }
+        this.graph = graph;
+        this.threadCount = threadCount;
+        this.cache = cache;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Binds the socket and starts the selector and worker threads.
+     *
+     * @param address The address to listen on; port 0 picks a free port.
+     * @throws IOException If the socket cannot be bound.
+     */
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (selector != null) {
+            throw new IllegalStateException("The server is already running");
+        }
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(address, 1024);
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+
+        workers = new Thread[threadCount];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(new Worker(), "route-server-worker-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        selectorThread = new Thread(this::select, "route-server-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    /**
+     * Closes the socket and every connection and stops the threads. Requests still queued are
+     * dropped.
+     *
+     * @throws InterruptedException If interrupted while waiting for the threads to finish.
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (selector == null) {
+            return;
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // Closing the selector only fails if its channels fail to close, which is moot here
+        }
+        selectorThread.join();
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        requests.clear();
+        selector = null;
+    }
+
+    /**
+     * Returns the port the server listens on.
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * The selector thread: accepts connections, reads and queues requests, and writes the
+     * responses the workers finish.
+     */
+    private void select() {
+        try {
+            while (true) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                }
+
+                Connection connection;
+                while ((connection = flushes.poll()) != null) {
+                    connection.flushQueued.set(false);
+                    try {
+                        connection.flush();
+                    } catch (IOException e) {
+                        connection.close();
+                    }
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // stop() closed the selector
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            for (Connection connection : new ArrayList<>(connections)) {
+                connection.close();
+            }
+            try {
+                server.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connections.add(connection);
+        connectionCount.incrementAndGet();
+    }
+
+    private static final class Request {
+        final Connection connection;
+        final long sequence;
+        final String line;
+
+        Request(Connection connection, long sequence, String line) {
+            this.connection = connection;
+            this.sequence = sequence;
+            this.line = line;
+        }
+    }
+
+    /**
+     * One client. The selector thread alone reads the channel and numbers its requests;
+     * workers hand in responses through {@link #complete}, which puts them in order.
+     */
+    private final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER_BYTES);
+        final AtomicBoolean flushQueued = new AtomicBoolean();
+        SelectionKey key;
+        long nextSequence;
+        boolean inputClosed;
+        // After a line too long to answer, the rest of the input is read and dropped
+        boolean discarding;
+
+        // Guarded by this: finished responses by sequence, and the output not yet written
+        final byte[][] finished = new byte[MAX_IN_FLIGHT][];
+        long nextToSend;
+        ByteBuffer output = ByteBuffer.allocate(INPUT_BUFFER_BYTES);
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            int read = channel.read(input);
+            if (read < 0) {
+                inputClosed = true;
+            }
+            dispatch();
+            if (inputClosed) {
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                flush();
+            }
+        }
+
+        /**
+         * Queues the complete lines in the input buffer while the connection has room, and
+         * reads more only if everything could be queued. Once the client has shut down its
+         * output, an unterminated last line counts as a line too. A line longer than the buffer
+         * is answered with an error, once there is room for it, and everything after it is dropped.
+         */
+        void dispatch() {
+            if (discarding) {
+                // Closing with unread input would reset the connection and lose the responses
+                input.clear();
+                return;
+            }
+            input.flip();
+            int lineStart = input.position();
+            boolean paused = false;
+            for (int i = input.position(); i <= input.limit(); i++) {
+                if (i == input.limit() ? !inputClosed || i == lineStart : input.get(i) != '\n') {
+                    continue;
+                }
+                if (isFull()) {
+                    paused = true;
+                    break;
+                }
+                String line = new String(input.array(), lineStart, i - lineStart, StandardCharsets.UTF_8).trim();
+                lineStart = Math.min(i + 1, input.limit());
+                if (!line.isEmpty()) {
+                    requestCount.incrementAndGet();
+                    requests.add(new Request(this, nextSequence++, line));
+                }
+            }
+            input.position(lineStart);
+            input.compact();
+            if (!input.hasRemaining() && !paused) {
+                if (isFull()) {
+                    // The error takes a response slot like a request, so it waits for one too
+                    paused = true;
+                } else {
+                    // A line longer than the buffer can never be completed
+                    input.clear();
+                    discarding = true;
+                    complete(nextSequence++, "ERROR Request line too long");
+                }
+            }
+            if (!inputClosed && key.isValid()) {
+                int ops = key.interestOps();
+                key.interestOps(paused ? ops & ~SelectionKey.OP_READ : ops | SelectionKey.OP_READ);
+            }
+        }
+
+        synchronized boolean isFull() {
+            return nextSequence - nextToSend >= MAX_IN_FLIGHT || output.position() >= MAX_PENDING_OUTPUT;
+        }
+
+        /**
+         * Stores a response and moves every response that is now next in line to the output.
+         * Called by the workers.
+         */
+        void complete(long sequence, String response) {
+            byte[] bytes = (response + "\n").getBytes(StandardCharsets.UTF_8);
+            synchronized (this) {
+                finished[(int) (sequence % MAX_IN_FLIGHT)] = bytes;
+                int slot;
+                while (finished[slot = (int) (nextToSend % MAX_IN_FLIGHT)] != null) {
+                    byte[] next = finished[slot];
+                    finished[slot] = null;
+                    nextToSend++;
+                    if (output.remaining() < next.length) {
+                        ByteBuffer larger = ByteBuffer.allocate(Math.max(output.capacity() * 2, output.position() + next.length));
+                        output.flip();
+                        larger.put(output);
+                        output = larger;
+                    }
+                    output.put(next);
+                }
+            }
+            if (flushQueued.compareAndSet(false, true)) {
+                flushes.add(this);
+                selector.wakeup();
+            }
+        }
+
+        /**
+         * Writes what output the socket takes, waits for it to take the rest, and resumes
+         * reading once the connection has room again. Called on the selector thread.
+         */
+        void flush() throws IOException {
+            boolean drained;
+            boolean answeredAll;
+            synchronized (this) {
+                output.flip();
+                channel.write(output);
+                output.compact();
+                drained = output.position() == 0;
+                answeredAll = nextToSend == nextSequence;
+            }
+            if (!key.isValid()) {
+                return;
+            }
+            int ops = key.interestOps();
+            key.interestOps(drained ? ops & ~SelectionKey.OP_WRITE : ops | SelectionKey.OP_WRITE);
+            if (input.position() > 0 && (inputClosed || (key.interestOps() & SelectionKey.OP_READ) == 0) && !isFull()) {
+                dispatch();
+            }
+            if (inputClosed && drained && answeredAll && input.position() == 0) {
+                close();
+            }
+        }
+
+        void close() {
+            connections.remove(this);
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing more can be sent to this client either way
+            }
+        }
+    }
+
+    /**
+     * A search worker: takes requests in batches and answers each with its own finders.
+     */
+    private final class Worker implements Runnable {
+        private final EnumMap<SearchMethod, RouteFinder> finders = new EnumMap<>(SearchMethod.class);
+        private final List<Request> batch = new ArrayList<>(WORKER_BATCH);
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    batch.add(requests.take());
+                    requests.drainTo(batch, WORKER_BATCH - 1);
+                    for (Request request : batch) {
+                        request.connection.complete(request.sequence, answer(request.line));
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                // stop() interrupts the workers
+            }
+        }
+
+        private String answer(String line) {
+            try {
+                BatchRouter.Query query = BatchRouter.parseQuery(line);
+                RouteFinder finder = finders.computeIfAbsent(query.getMethod(), this::createFinder);
+                long before = System.nanoTime();
+                List<String> route = finder.findRoute(query.getStartCity(), query.getEndCity());
+                long elapsed = System.nanoTime() - before;
+                if (route == null) {
+                    return "NONE " + elapsed;
+                }
+                StringBuilder response = new StringBuilder("OK ");
+                response.append(graph.routeDistance(route)).append(' ').append(elapsed);
+                for (String city : route) {
+                    response.append(' ').append(city);
+                }
+                return response.toString();
+            } catch (RuntimeException e) {
+                return "ERROR " + String.valueOf(e.getMessage()).replace('\n', ' ');
+            }
+        }
+
+        private RouteFinder createFinder(SearchMethod method) {
+            RouteFinder finder = method.create(graph);
+            if (metrics != null) {
+                finder = new MeteredRouteFinder(finder, method, metrics);
+            }
+            return cache != null ? new CachingRouteFinder(finder, graph, method, cache) : finder;
+        }
+    }
+
+    /**
+     * Usage: {@code RouteServer <adjacency file> <coordinates file> [--port 7878] [--bind address]
+     * [--threads n] [--cache n] [--metrics] [--report-every seconds]}. Listens on the loopback
+     * address unless told otherwise, and runs until killed.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: RouteServer <adjacency file> <coordinates file> [--port 7878] [--bind address]"
+                    + " [--threads n] [--cache n] [--metrics] [--report-every seconds]");
+            return;
+        }
+        int port = 7878;
+        InetAddress bind = InetAddress.getLoopbackAddress();
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        RouteCache cache = null;
+        SearchMetrics metrics = null;
+        long reportSeconds = 0;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--bind":
+                    bind = InetAddress.getByName(args[++i]);
+                    break;
+                case "--threads":
+                    threadCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--cache":
+                    cache = new RouteCache(Integer.parseInt(args[++i]));
+                    break;
+                case "--metrics":
+                    metrics = new SearchMetrics();
+                    break;
+                case "--report-every":
+                    reportSeconds = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+        }
+
+        CompiledGraph graph = GraphLoader.load(Paths.get(args[0]), Paths.get(args[1]));
+        if (metrics != null) {
+            try {
+                metrics.registerMBeans();
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+            if (reportSeconds > 0) {
+                metrics.startReporting(System.err, reportSeconds, TimeUnit.SECONDS);
+            }
+        }
+        RouteServer routeServer = new RouteServer(graph, threadCount, cache, metrics);
+        routeServer.start(new InetSocketAddress(bind, port));
+        System.err.printf("Serving %d cities on %s:%d with %d workers%n",
+                graph.size(), bind.getHostAddress(), routeServer.getPort(), threadCount);
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,84 @@
+package search_methods;
+
+import java.util.function.Function;
+
+/**
+ * The search methods offered in the {@link Search_Methods} menu, keyed by their menu number.
+ */
+public enum SearchMethod {
+    BRUTE_FORCE(1, "Undirected Brute-Force", false, BruteForceRouteFinder::new),
+    BFS(2, "Breadth-First Search", true, BFSRouteFinder::new),
+    DFS(3, "Depth-First Search", false, DFSRouteFinder::new),
+    IDDFS(4, "Iterative Deepening Depth-First Search", false, IDDFSRouteFinder::new),
+    BEST_FIRST(5, "Best-First Search", false, BestFSRouteFinder::new),
+    A_STAR(6, "A* Search", true, AStarRouteFinder::new),
+    BIDIRECTIONAL_BFS(7, "Bidirectional Breadth-First Search", true, BidirectionalBFSRouteFinder::new),
+    BIDIRECTIONAL_A_STAR(8, "Bidirectional A* Search", true, BidirectionalAStarRouteFinder::new),
+    CONTRACTION_HIERARCHY(9, "Contraction Hierarchies", true, ContractionHierarchyRouteFinder::new),
+    ANYTIME_A_STAR(10, "Anytime A* Search", false, AnytimeAStarRouteFinder::new);
+
+    private final int menuNumber;
+    private final String label;
+    private final boolean optimal;
+    private final Function<CompiledGraph, RouteFinder> factory;
+
+    SearchMethod(int menuNumber, String label, boolean optimal, Function<CompiledGraph, RouteFinder> factory) {
+        this.menuNumber = menuNumber;
+        this.label = label;
+        this.optimal = optimal;
+        this.factory = factory;
+    }
+
+    public int getMenuNumber() {
+        return menuNumber;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Returns true if the method always finds a shortest route: fewest hops for the
+     * breadth-first methods, shortest distance for the others. Every part of such a route is
+     * then a shortest route between its own ends.
+     */
+    public boolean isOptimal() {
+        return optimal;
+    }
+
+    /**
+     * Creates a new finder for this method. Finders keep per-query state, so each thread needs its own.
+     */
+    public RouteFinder create(CompiledGraph graph) {
+        return factory.apply(graph);
+    }
+
+    /**
+     * Returns the method with the given menu number, or null if there is none.
+     */
+    public static SearchMethod fromMenuNumber(int menuNumber) {
+        for (SearchMethod method : values()) {
+            if (method.menuNumber == menuNumber) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses a method given by name, in any case, or by menu number.
+     *
+     * @throws IllegalArgumentException If no method matches.
+     */
+    public static SearchMethod parse(String text) {
+        String trimmed = text.trim();
+        if (!trimmed.isEmpty() && Character.isDigit(trimmed.charAt(0))) {
+            SearchMethod method = fromMenuNumber(Integer.parseInt(trimmed));
+            if (method == null) {
+                throw new IllegalArgumentException("No search method with menu number " + trimmed);
+            }
+            return method;
+        }
+        return valueOf(trimmed.toUpperCase());
+    }
+}
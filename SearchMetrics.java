@@ -0,0 +1,222 @@
+package search_methods;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Running totals of the {@link SearchStatistics} of many queries, per search method, with a
+ * {@link LatencyHistogram} for each. Any number of threads may record at once, usually through
+ * {@link MeteredRouteFinder}. The totals are published as one MXBean per method under
+ * {@code search_methods:type=SearchMetrics,method=<name>} and can be printed as a text table,
+ * once or periodically.
+ */
+public final class SearchMetrics {
+    private static final String DOMAIN = "search_methods";
+
+    private final EnumMap<SearchMethod, Method> methods = new EnumMap<>(SearchMethod.class);
+    private final List<ObjectName> registered = new ArrayList<>();
+    private ScheduledExecutorService reporter;
+
+    public SearchMetrics() {
+        for (SearchMethod method : SearchMethod.values()) {
+            methods.put(method, new Method(method));
+        }
+    }
+
+    /**
+     * Adds one query's figures to the method's totals.
+     */
+    public void record(SearchMethod method, SearchStatistics statistics, boolean routeFound) {
+        methods.get(method).record(statistics, routeFound);
+    }
+
+    public SearchMetricsMXBean get(SearchMethod method) {
+        return methods.get(method);
+    }
+
+    /**
+     * Returns a table with one line for each method that has answered at least one query.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder(String.format("%-22s %9s %9s %12s %12s %9s %10s %10s %10s %10s %10s%n",
+                "method", "queries", "found", "expanded/q", "relaxed/q", "peak", "mean us", "p50 us", "p99 us",
+                "max us", "bytes/q"));
+        for (Method method : methods.values()) {
+            if (method.getQueries() == 0) {
+                continue;
+            }
+            report.append(String.format("%-22s %9d %9d %12.1f %12.1f %9d %10.1f %10.1f %10.1f %10.1f %10.0f%n",
+                    method.getMethod(), method.getQueries(), method.getRoutesFound(),
+                    method.getMeanNodesExpanded(), method.getEdgesRelaxed() / (double) method.getQueries(),
+                    method.getPeakFrontier(), method.getMeanLatencyMicros(), method.getLatency50thPercentileMicros(),
+                    method.getLatency99thPercentileMicros(), method.getMaxLatencyMicros(),
+                    method.getMeanAllocatedBytes()));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Registers one MXBean per method with the platform MBean server.
+     *
+     * @throws JMException If the names are already taken, e.g. by another SearchMetrics.
+     */
+    public synchronized void registerMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Method method : methods.values()) {
+            ObjectName name = new ObjectName(DOMAIN + ":type=SearchMetrics,method=" + method.getMethod());
+            server.registerMBean(method, name);
+            registered.add(name);
+        }
+    }
+
+    public synchronized void unregisterMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            server.unregisterMBean(name);
+        }
+        registered.clear();
+    }
+
+    /**
+     * Prints {@link #report()} to the stream at a fixed rate on a daemon thread, replacing any
+     * earlier schedule.
+     */
+    public synchronized void startReporting(PrintStream out, long period, TimeUnit unit) {
+        stopReporting();
+        reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "search-metrics-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> out.print(report()), period, period, unit);
+    }
+
+    public synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    /**
+     * The totals for one method.
+     */
+    private static final class Method implements SearchMetricsMXBean {
+        private final SearchMethod method;
+        private final LongAdder queries = new LongAdder();
+        private final LongAdder routesFound = new LongAdder();
+        private final LongAdder nodesExpanded = new LongAdder();
+        private final LongAdder edgesRelaxed = new LongAdder();
+        private final LongAdder queueOperations = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+        private final LongAdder allocationSamples = new LongAdder();
+        private final LongAccumulator peakFrontier = new LongAccumulator(Math::max, 0);
+        private final LatencyHistogram latencies = new LatencyHistogram();
+
+        Method(SearchMethod method) {
+            this.method = method;
+        }
+
+        void record(SearchStatistics statistics, boolean routeFound) {
+            queries.increment();
+            if (routeFound) {
+                routesFound.increment();
+            }
+            nodesExpanded.add(statistics.nodesExpanded);
+            edgesRelaxed.add(statistics.edgesRelaxed);
+            queueOperations.add(statistics.queueOperations);
+            peakFrontier.accumulate(statistics.peakFrontier);
+            if (statistics.allocatedBytes >= 0) {
+                allocatedBytes.add(statistics.allocatedBytes);
+                allocationSamples.increment();
+            }
+            latencies.record(statistics.elapsedNanos);
+        }
+
+        @Override
+        public String getMethod() {
+            return method.name();
+        }
+
+        @Override
+        public long getQueries() {
+            return queries.sum();
+        }
+
+        @Override
+        public long getRoutesFound() {
+            return routesFound.sum();
+        }
+
+        @Override
+        public long getNodesExpanded() {
+            return nodesExpanded.sum();
+        }
+
+        @Override
+        public long getEdgesRelaxed() {
+            return edgesRelaxed.sum();
+        }
+
+        @Override
+        public long getQueueOperations() {
+            return queueOperations.sum();
+        }
+
+        @Override
+        public double getMeanNodesExpanded() {
+            long count = queries.sum();
+            return count == 0 ? 0.0 : (double) nodesExpanded.sum() / count;
+        }
+
+        @Override
+        public int getPeakFrontier() {
+            return (int) peakFrontier.get();
+        }
+
+        @Override
+        public double getMeanAllocatedBytes() {
+            long samples = allocationSamples.sum();
+            return samples == 0 ? -1.0 : (double) allocatedBytes.sum() / samples;
+        }
+
+        @Override
+        public double getMeanLatencyMicros() {
+            return latencies.getMean() / 1e3;
+        }
+
+        @Override
+        public double getLatency50thPercentileMicros() {
+            return latencies.getValueAtPercentile(50) / 1e3;
+        }
+
+        @Override
+        public double getLatency90thPercentileMicros() {
+            return latencies.getValueAtPercentile(90) / 1e3;
+        }
+
+        @Override
+        public double getLatency99thPercentileMicros() {
+            return latencies.getValueAtPercentile(99) / 1e3;
+        }
+
+        @Override
+        public double getLatency999thPercentileMicros() {
+            return latencies.getValueAtPercentile(99.9) / 1e3;
+        }
+
+        @Override
+        public double getMaxLatencyMicros() {
+            return latencies.getMax() / 1e3;
+        }
+    }
+}
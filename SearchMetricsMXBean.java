@@ -0,0 +1,43 @@
+package search_methods;
+
+/**
+ * The JMX view of one search method's totals in a {@link SearchMetrics}. Latencies are in
+ * microseconds.
+ */
+public interface SearchMetricsMXBean {
+    String getMethod();
+
+    long getQueries();
+
+    long getRoutesFound();
+
+    long getNodesExpanded();
+
+    long getEdgesRelaxed();
+
+    long getQueueOperations();
+
+    double getMeanNodesExpanded();
+
+    /**
+     * Returns the largest frontier any query reached.
+     */
+    int getPeakFrontier();
+
+    /**
+     * Returns the mean bytes allocated per query, or -1 if the JVM cannot measure allocation.
+     */
+    double getMeanAllocatedBytes();
+
+    double getMeanLatencyMicros();
+
+    double getLatency50thPercentileMicros();
+
+    double getLatency90thPercentileMicros();
+
+    double getLatency99thPercentileMicros();
+
+    double getLatency999thPercentileMicros();
+
+    double getMaxLatencyMicros();
+}
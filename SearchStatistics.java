@@ -0,0 +1,87 @@
+package search_methods;
+
+/**
+ * Work done by one query of a {@link RouteFinder}. A finder fills in the search counters as it
+ * goes and keeps one instance, which the next query overwrites; {@link MeteredRouteFinder}
+ * adds the latency and allocation figures.
+ *
+ * <ul>
+ *   <li>nodes expanded: cities whose arcs were scanned</li>
+ *   <li>edges relaxed: arcs scanned, whether or not they improved anything</li>
+ *   <li>peak frontier: the largest the queue, stack or open set got</li>
+ *   <li>queue operations: pushes, pops and decrease-keys on the queue, stack or open set</li>
+ * </ul>
+ */
+public final class SearchStatistics {
+    long nodesExpanded;
+    long edgesRelaxed;
+    int peakFrontier;
+    long queueOperations;
+    long elapsedNanos;
+    long allocatedBytes = -1;
+
+    void reset() {
+        nodesExpanded = 0;
+        edgesRelaxed = 0;
+        peakFrontier = 0;
+        queueOperations = 0;
+        elapsedNanos = 0;
+        allocatedBytes = -1;
+    }
+
+    /**
+     * Sets the search counters at once, for finders that keep them in locals while searching.
+     */
+    void record(long nodesExpanded, long edgesRelaxed, int peakFrontier, long queueOperations) {
+        this.nodesExpanded = nodesExpanded;
+        this.edgesRelaxed = edgesRelaxed;
+        this.peakFrontier = peakFrontier;
+        this.queueOperations = queueOperations;
+    }
+
+    /**
+     * Records the current frontier size.
+     */
+    void frontier(int size) {
+        if (size > peakFrontier) {
+            peakFrontier = size;
+        }
+    }
+
+    public long getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    public long getEdgesRelaxed() {
+        return edgesRelaxed;
+    }
+
+    public int getPeakFrontier() {
+        return peakFrontier;
+    }
+
+    public long getQueueOperations() {
+        return queueOperations;
+    }
+
+    /**
+     * Returns the query's wall time, or 0 if it was not measured.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns the bytes the query allocated on the heap, or -1 if the JVM cannot measure it.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "expanded=" + nodesExpanded + " relaxed=" + edgesRelaxed + " peakFrontier=" + peakFrontier
+                + " queueOps=" + queueOperations + " time=" + elapsedNanos + "ns"
+                + (allocatedBytes >= 0 ? " allocated=" + allocatedBytes + "B" : "");
+    }
+}
@@ -0,0 +1,72 @@
+package search_methods;
+
+/**
+ * Per-finder search state sized to a {@link CompiledGraph}. The arrays are allocated once
+ * and reused by every query; marks are generation-stamped, so resetting between queries
+ * is a single counter increment instead of clearing the arrays.
+ */
+final class SearchWorkspace {
+    final int[] parent;
+    final double[] cost;
+    final int[] queue;
+    final int[] path;
+
+    private final int[] seenMarks;
+    private final int[] closedMarks;
+    private int generation;
+
+    SearchWorkspace(int size) {
+        this.parent = new int[size];
+        this.cost = new double[size];
+        this.queue = new int[size];
+        this.path = new int[size];
+        this.seenMarks = new int[size];
+        this.closedMarks = new int[size];
+    }
+
+    /**
+     * Forgets every mark set since the previous reset.
+     */
+    void reset() {
+        if (++generation == Integer.MAX_VALUE) {
+            java.util.Arrays.fill(seenMarks, 0);
+            java.util.Arrays.fill(closedMarks, 0);
+            generation = 1;
+        }
+    }
+
+    boolean isSeen(int city) {
+        return seenMarks[city] == generation;
+    }
+
+    void markSeen(int city) {
+        seenMarks[city] = generation;
+    }
+
+    boolean isClosed(int city) {
+        return closedMarks[city] == generation;
+    }
+
+    void markClosed(int city) {
+        closedMarks[city] = generation;
+    }
+
+    /**
+     * Follows the parent links from end back to start and returns the number of cities
+     * written to {@link #path}, which then holds the route from start to end.
+     */
+    int tracePath(int start, int end) {
+        int length = 0;
+        for (int current = end; current != start; current = parent[current]) {
+            path[length++] = current;
+        }
+        path[length++] = start;
+
+        for (int i = 0, j = length - 1; i < j; i++, j--) {
+            int swap = path[i];
+            path[i] = path[j];
+            path[j] = swap;
+        }
+        return length;
+    }
+}
@@ -5,28 +5,80 @@
 
 
 package search_methods;
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
 
 public class Search_Methods {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         // Load data from files and create necessary data structures
-        Map<String, List<String>> adjacencyList = loadAdjacencyData("D:\\adjacencies.txt");
-        Map<String, City> cities = loadCityData("D:\\coordinates.csv");
+        // Paths come from the arguments, then -Dadjacency / -Dcoordinates, then the bundled files
+        String adjacencyFile = args.length > 0 ? args[0] : System.getProperty("adjacency", "Adjacencies.txt");
+        String coordinatesFile = args.length > 1 ? args[1] : System.getProperty("coordinates", "coordinates.csv");
+        // A snapshot written by GraphSnapshot is mapped instead of parsing the text files
+        String snapshotFile = System.getProperty("snapshot");
+        CompiledGraph graph = snapshotFile != null
+                ? GraphSnapshot.map(Paths.get(snapshotFile))
+                : GraphLoader.load(Paths.get(adjacencyFile), Paths.get(coordinatesFile));
+        // Landmark tables written by LandmarkIndex switch A* to ALT mode
+        LandmarkIndex landmarks = null;
+        ContractionHierarchy hierarchy = null;
+        String landmarkFile = System.getProperty("landmarks");
+        if (landmarkFile != null) {
+            try {
+                landmarks = LandmarkIndex.map(Paths.get(landmarkFile), graph);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        // A hierarchy saved by ContractionHierarchy skips contracting the graph on first use
+        String hierarchyFile = System.getProperty("hierarchy");
+        if (hierarchyFile != null) {
+            try {
+                hierarchy = ContractionHierarchy.load(Paths.get(hierarchyFile), graph);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // Every search is recorded per method, published over JMX and, with -Dmetrics.interval=<seconds>,
+        // printed periodically
+        SearchMetrics metrics = new SearchMetrics();
+        try {
+            metrics.registerMBeans();
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        long metricsInterval = Long.getLong("metrics.interval", 0);
+        if (metricsInterval > 0) {
+            metrics.startReporting(System.out, metricsInterval, TimeUnit.SECONDS);
+        }
+
+        // Built on first use, when a query gives coordinates instead of a city
+        SpatialIndex spatialIndex = null;
 
         Scanner scanner = new Scanner(System.in);
         boolean continueSearch = true;
 
         while (continueSearch) {
-            System.out.println("Enter the starting city: ");
+            System.out.println("Enter the starting city (or latitude,longitude): ");
             String startCity = scanner.nextLine();
 
-            System.out.println("Enter the ending city: ");
+            System.out.println("Enter the ending city (or latitude,longitude): ");
             String endCity = scanner.nextLine();
 
-            if (!adjacencyList.containsKey(startCity) || !adjacencyList.containsKey(endCity)) {
+            // Coordinates snap to the nearest city on a road
+            if (parseCoordinates(startCity) != null || parseCoordinates(endCity) != null) {
+                if (spatialIndex == null) {
+                    spatialIndex = SpatialIndex.build(graph);
+                }
+                startCity = snap(graph, spatialIndex, startCity);
+                endCity = snap(graph, spatialIndex, endCity);
+            }
+
+            if (!isOnRoad(graph, startCity) || !isOnRoad(graph, endCity)) {
                 System.out.println("Both cities must be in the database. Try again.");
                 continue;
             }
@@ -38,157 +90,209 @@ public class Search_Methods {
             System.out.println("4. Iterative Deepening Depth-First Search");
             System.out.println("5. Best-First Search");
             System.out.println("6. A* Search");
+            System.out.println("7. Bidirectional Breadth-First Search");
+            System.out.println("8. Bidirectional A* Search");
+            System.out.println("9. Contraction Hierarchies");
+            System.out.println("10. Anytime A* Search");
             System.out.println("Enter the method number: ");
 
             int choice = scanner.nextInt();
             scanner.nextLine(); // Consume the newline character
 
+            SearchMethod method = SearchMethod.fromMenuNumber(choice);
+            RouteFinder routeFinder = null;
+            BruteForceRouteFinder bruteForce = null;
+            AnytimeAStarRouteFinder anytime = null;
             List<String> route = null;
-            long startTime = System.currentTimeMillis();
+            long startTime = System.nanoTime();
 
             switch (choice) {
                 case 1:
-                    // Implement undirected brute-force search (if necessary)
+                    // Undirected Brute-Force, optionally through given cities and within a number of roads
+                    bruteForce = new BruteForceRouteFinder(graph);
+                    System.out.println("Enter cities the route must pass through, separated by commas (blank for none): ");
+                    List<String> mustVisit = new ArrayList<>();
+                    for (String city : scanner.nextLine().split(",")) {
+                        if (!city.trim().isEmpty()) {
+                            mustVisit.add(city.trim());
+                        }
+                    }
+                    if (!mustVisit.stream().allMatch(city -> isOnRoad(graph, city))) {
+                        System.out.println("Every city to pass through must be in the database.");
+                        break;
+                    }
+                    bruteForce.setMustVisit(mustVisit);
+                    System.out.println("Enter the most roads the route may use (blank for no limit): ");
+                    String maxHops = scanner.nextLine().trim();
+                    if (!maxHops.isEmpty()) {
+                        int hops;
+                        try {
+                            hops = Integer.parseInt(maxHops);
+                        } catch (NumberFormatException e) {
+                            hops = -1;
+                        }
+                        if (hops < 0) {
+                            System.out.println("The number of roads must be a whole number of at least 0.");
+                            break;
+                        }
+                        bruteForce.setMaxHops(hops);
+                    }
+                    routeFinder = bruteForce;
                     break;
                 case 2:
                     // Implement Breadth-First Search
-                    BFSRouteFinder bfsRouteFinder = new BFSRouteFinder(adjacencyList);
-                    route = bfsRouteFinder.findRoute(startCity, endCity);
+                    routeFinder = new BFSRouteFinder(graph);
                     break;
                 case 3:
                     // Implement Depth-First Search
-                    DFSRouteFinder dfsRouteFinder = new DFSRouteFinder(adjacencyList);
-                    route = dfsRouteFinder.findRoute(startCity, endCity);
+                    routeFinder = new DFSRouteFinder(graph);
                     break;
                 case 4:
                     // Implement Iterative Deepening Depth-First Search
-                    IDDFSRouteFinder iddfsRouteFinder = new IDDFSRouteFinder(adjacencyList);
-                    route = iddfsRouteFinder.findRoute(startCity, endCity);
+                    routeFinder = new IDDFSRouteFinder(graph);
                     break;
                 case 5:
                     // Implement Best-First Search
-                    BestFSRouteFinder bestFSRouteFinder = new BestFSRouteFinder(adjacencyList, cities);
-                    route = bestFSRouteFinder.findRoute(startCity, endCity);
+                    routeFinder = new BestFSRouteFinder(graph);
                     break;
                 case 6:
                     // Implement A* Search
-                    AStarRouteFinder aStarRouteFinder = new AStarRouteFinder(adjacencyList, cities);
-                    route = aStarRouteFinder.findRoute(startCity, endCity);
+                    routeFinder = new AStarRouteFinder(graph, landmarks);
+                    break;
+                case 7:
+                    // Bidirectional Breadth-First Search
+                    routeFinder = new BidirectionalBFSRouteFinder(graph);
+                    break;
+                case 8:
+                    // Bidirectional A* Search
+                    routeFinder = new BidirectionalAStarRouteFinder(graph);
+                    break;
+                case 9:
+                    // Contraction Hierarchies
+                    if (hierarchy == null) {
+                        hierarchy = ContractionHierarchy.of(graph);
+                    }
+                    routeFinder = new ContractionHierarchyRouteFinder(graph, hierarchy);
+                    break;
+                case 10:
+                    // Anytime A*: a quick route within a factor of the shortest, improved until the time is up
+                    System.out.println("Enter the time budget in milliseconds (blank for "
+                            + AnytimeAStarRouteFinder.DEFAULT_TIME_BUDGET_MILLIS + "): ");
+                    String budget = scanner.nextLine().trim();
+                    System.out.println("Enter the factor the first route may exceed the shortest by (blank for "
+                            + AnytimeAStarRouteFinder.DEFAULT_EPSILON + "): ");
+                    String epsilon = scanner.nextLine().trim();
+                    long budgetMillis;
+                    double epsilonValue;
+                    try {
+                        budgetMillis = budget.isEmpty()
+                                ? AnytimeAStarRouteFinder.DEFAULT_TIME_BUDGET_MILLIS : Long.parseLong(budget);
+                        epsilonValue = epsilon.isEmpty()
+                                ? AnytimeAStarRouteFinder.DEFAULT_EPSILON : Double.parseDouble(epsilon);
+                    } catch (NumberFormatException e) {
+                        System.out.println("The time budget and the factor must be numbers.");
+                        break;
+                    }
+                    if (budgetMillis <= 0) {
+                        System.out.println("The time budget must be at least 1 millisecond.");
+                        break;
+                    }
+                    if (!(epsilonValue >= 1) || Double.isInfinite(epsilonValue)) {
+                        System.out.println("The factor must be a number of at least 1.");
+                        break;
+                    }
+                    anytime = new AnytimeAStarRouteFinder(graph, epsilonValue,
+                            AnytimeAStarRouteFinder.DEFAULT_EPSILON_STEP, budgetMillis);
+                    routeFinder = anytime;
                     break;
                 default:
                     System.out.println("Invalid choice. Please select a valid search method.");
             }
 
-            long endTime = System.currentTimeMillis();
+            if (routeFinder != null) {
+                routeFinder = new MeteredRouteFinder(routeFinder, method, metrics);
+                route = routeFinder.findRoute(startCity, endCity);
+            }
+
+            long endTime = System.nanoTime();
 
             if (route != null) {
                 System.out.println("Route found:");
                 for (String city : route) {
                     System.out.println(city);
                 }
-                double totalTime = (endTime - startTime) / 1000.0; // Convert to seconds
+                double totalTime = (endTime - startTime) / 1e9; // Convert to seconds
                 System.out.println("Total time: " + totalTime + " seconds");
 
                 // Calculate and display the total distance (node to node) for the cities visited on the route
-                double totalDistance = calculateTotalDistance(route, cities);
+                double totalDistance = graph.routeDistance(route);
                 System.out.println("Total distance: " + totalDistance + " kilometers");
             } else {
                 System.out.println("No route found.");
             }
+            if (anytime != null && anytime.getLastSolution() != null) {
+                System.out.println("The route is at most " + anytime.getLastSolution().epsilon()
+                        + " times as long as the shortest.");
+            }
+            if (bruteForce != null && !bruteForce.isLastSearchExhaustive()) {
+                System.out.println("The search ran out of time, so a shorter route may exist.");
+            }
+            if (routeFinder != null) {
+                System.out.println("Search statistics: " + routeFinder.getStatistics());
+            }
 
             System.out.println("Do you want to search again? (yes/no): ");
             String response = scanner.nextLine().toLowerCase();
             continueSearch = response.equals("yes");
         }
 
+        metrics.stopReporting();
+        System.out.print(metrics.report());
         System.out.println("Thank you for using the route finder!");
     }
 
-    // Implement methods for loading data, calculating distance, and other utility functions here
-
-    // Rest of the code remains the same
-    private static Map<String, List<String>> loadAdjacencyData(String fileName) {
-        Map<String, List<String>> adjacencyList = new HashMap<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split(" ");
-                if (parts.length == 2) {
-                    String cityA = parts[0];
-                    String cityB = parts[1];
-
-                    // Add bidirectional adjacency (A -> B and B -> A)
-                    adjacencyList.computeIfAbsent(cityA, k -> new ArrayList<>()).add(cityB);
-                    adjacencyList.computeIfAbsent(cityB, k -> new ArrayList<>()).add(cityA);
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Parses "latitude,longitude", returning null if the text is not a pair of coordinates.
+     */
+    private static double[] parseCoordinates(String text) {
+        String[] parts = text.split(",");
+        if (parts.length != 2) {
+            return null;
         }
-        return adjacencyList;
-    }
-
- 
-// Load city data (coordinates) from a CSV file
-private static Map<String, City> loadCityData(String fileName) {
-    Map<String, City> cities = new HashMap<>();
-    try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
-        String line;
-        while ((line = reader.readLine()) != null) {
-            String[] parts = line.split(",");
-            if (parts.length == 3) {
-                String cityName = parts[0].trim();
-                double latitude = Double.parseDouble(parts[1].trim());
-                double longitude = Double.parseDouble(parts[2].trim());
-
-                // Create a City object and add it to the map
-                City city = new City(cityName, latitude, longitude);
-                cities.put(cityName, city);
+        try {
+            double latitude = Double.parseDouble(parts[0].trim());
+            double longitude = Double.parseDouble(parts[1].trim());
+            if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+                return null;
             }
+            return new double[] {latitude, longitude};
+        } catch (NumberFormatException e) {
+            return null;
         }
-    } catch (IOException e) {
-        e.printStackTrace();
     }
-    return cities;
-}
 
-
-    // Calculate the total distance for the cities visited on the route
-    private static double calculateTotalDistance(List<String> route, Map<String, City> cities) {
-        double totalDistance = 0.0;
-        for (int i = 0; i < route.size() - 1; i++) {
-            String currentCity = route.get(i);
-            String nextCity = route.get(i + 1);
-
-            City current = cities.get(currentCity);
-            City next = cities.get(nextCity);
-
-            if (current != null && next != null) {
-                // Calculate distance between current and next city (e.g., using Haversine formula)
-                double distance = calculateDistance(current, next);
-                totalDistance += distance;
-            }
+    /**
+     * Replaces coordinates with the name of the nearest city on a road; city names pass through.
+     */
+    private static String snap(CompiledGraph graph, SpatialIndex index, String text) {
+        double[] point = parseCoordinates(text);
+        if (point == null) {
+            return text;
+        }
+        int city = index.snap(point[0], point[1]);
+        if (city < 0) {
+            return text;
         }
-        return totalDistance;
+        System.out.printf("Snapped %s to %s, %.2f kilometers away%n",
+                text.trim(), graph.name(city), index.distance(point[0], point[1], city));
+        return graph.name(city);
     }
 
-    // Calculate the distance between two cities using the Haversine formula
-    private static double calculateDistance(City city1, City city2) {
-        double lat1 = Math.toRadians(city1.getLatitude());
-        double lon1 = Math.toRadians(city1.getLongitude());
-        double lat2 = Math.toRadians(city2.getLatitude());
-        double lon2 = Math.toRadians(city2.getLongitude());
-
-        double earthRadius = 6371; // Radius of the Earth in kilometers
-        double dLat = lat2 - lat1;
-        double dLon = lon2 - lon1;
-
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                   Math.cos(lat1) * Math.cos(lat2) *
-                   Math.sin(dLon / 2) * Math.sin(dLon / 2);
-
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-
-        return earthRadius * c;
+    /**
+     * Returns whether the city is on at least one road, as the old adjacency map lookup did.
+     */
+    private static boolean isOnRoad(CompiledGraph graph, String city) {
+        int id = graph.id(city);
+        return id >= 0 && graph.degree(id) > 0;
     }
 }
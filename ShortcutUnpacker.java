@@ -0,0 +1,48 @@
+package search_methods;
+
+import java.util.Arrays;
+
+/**
+ * Expands {@link ContractionHierarchy} arcs into the original arcs they stand for. Shortcuts
+ * nest, so expansion uses an explicit stack that grows as needed and is reused between calls;
+ * an instance is therefore confined to one thread.
+ */
+final class ShortcutUnpacker {
+    private final ContractionHierarchy hierarchy;
+    // Explicit stack of (from, to) pairs waiting to be unpacked
+    private int[] stack = new int[64];
+
+    ShortcutUnpacker(ContractionHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+    }
+
+    /**
+     * Appends the original cities after {@code from} on the arc {@code from -> to}, ending with
+     * {@code to}, and returns the new path length.
+     */
+    int unpack(int from, int to, int[] path, int length) {
+        int top = push(0, from, to);
+        while (top > 0) {
+            int arcTo = stack[--top];
+            int arcFrom = stack[--top];
+            int middle = hierarchy.middle(arcFrom, arcTo);
+            if (middle < 0) {
+                path[length++] = arcTo;
+            } else {
+                // Second half is pushed first so the first half is unpacked first
+                top = push(top, middle, arcTo);
+                top = push(top, arcFrom, middle);
+            }
+        }
+        return length;
+    }
+
+    private int push(int top, int from, int to) {
+        if (top + 2 > stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[top++] = from;
+        stack[top++] = to;
+        return top;
+    }
+}
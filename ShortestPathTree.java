@@ -0,0 +1,73 @@
+package search_methods;
+
+import java.util.List;
+
+/**
+ * The shortest distance from one source city to every city, with the predecessor of each on
+ * one shortest route. Unreachable cities have a distance of positive infinity and no parent.
+ */
+public final class ShortestPathTree {
+    private final CompiledGraph graph;
+    private final int source;
+    private final double[] distances;
+    private final int[] parents;
+
+    ShortestPathTree(CompiledGraph graph, int source, double[] distances, int[] parents) {
+        this.graph = graph;
+        this.source = source;
+        this.distances = distances;
+        this.parents = parents;
+    }
+
+    public int source() {
+        return source;
+    }
+
+    public double distance(int city) {
+        return distances[city];
+    }
+
+    /**
+     * Returns the city before this one on its route from the source, or -1 for the source
+     * and for unreachable cities.
+     */
+    public int parent(int city) {
+        return parents[city];
+    }
+
+    public boolean isReachable(int city) {
+        return distances[city] != Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns the distance of every city. Callers must not modify it.
+     */
+    public double[] distances() {
+        return distances;
+    }
+
+    /**
+     * Returns the parent of every city. Callers must not modify it.
+     */
+    public int[] parents() {
+        return parents;
+    }
+
+    /**
+     * Returns the route from the source to the city, or null if the city is unreachable.
+     */
+    public List<String> route(int city) {
+        if (!isReachable(city)) {
+            return null;
+        }
+        int length = 0;
+        for (int v = city; v >= 0; v = parents[v]) {
+            length++;
+        }
+        int[] route = new int[length];
+        for (int v = city, i = length - 1; v >= 0; v = parents[v]) {
+            route[i--] = v;
+        }
+        return graph.toRoute(route, length);
+    }
+}
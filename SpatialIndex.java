@@ -0,0 +1,400 @@
+package search_methods;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * A static KD-tree over the cities of a {@link CompiledGraph} that have coordinates, for
+ * nearest-city and radius lookups by latitude and longitude.
+ *
+ * <p>Cities are indexed by their points on the unit sphere, so the tree splits on x, y and z
+ * and measures straight-line (chord) distances. The chord grows with the great-circle
+ * distance, which makes the nearest city by chord the nearest one along the Earth's surface
+ * too, with no trouble at the poles or the antimeridian. Reported distances are converted
+ * back to great-circle kilometers.
+ *
+ * <p>The tree is implicit: the city in the middle of every range of {@code cities} splits it,
+ * so there are no node objects and lookups walk three flat arrays. A query takes
+ * O(log n) time for nearest-k in practice, plus the size of the answer for radius lookups.
+ * The index is immutable and may be shared between threads; it must be rebuilt if cities
+ * are added, e.g. to a {@link DynamicGraph}.
+ */
+public final class SpatialIndex {
+    private static final double EARTH_RADIUS_KM = CompiledGraph.EARTH_RADIUS_KM;
+
+    private final CompiledGraph graph;
+    // City ids in tree order; the split city of range [lo, hi) is at (lo + hi) / 2
+    private final int[] cities;
+    // Unit-sphere x, y and z of cities[i] at 3 * i
+    private final double[] points;
+    // Axis the split city of each range splits on
+    private final byte[] axes;
+
+    private SpatialIndex(CompiledGraph graph, int[] cities, double[] points, byte[] axes) {
+        this.graph = graph;
+        this.cities = cities;
+        this.points = points;
+        this.axes = axes;
+    }
+
+    /**
+     * Indexes every city of the graph that has coordinates.
+     */
+    public static SpatialIndex build(CompiledGraph graph) {
+        int count = 0;
+        for (int v = 0; v < graph.size(); v++) {
+            if (graph.hasCoordinates(v)) {
+                count++;
+            }
+        }
+        int[] cities = new int[count];
+        double[] points = new double[3 * count];
+        int slot = 0;
+        for (int v = 0; v < graph.size(); v++) {
+            if (graph.hasCoordinates(v)) {
+                cities[slot] = v;
+                unitVector(graph.latitude(v), graph.longitude(v), points, 3 * slot);
+                slot++;
+            }
+        }
+        byte[] axes = new byte[count];
+        split(cities, points, axes, 0, count);
+        return new SpatialIndex(graph, cities, points, axes);
+    }
+
+    /**
+     * Returns the number of indexed cities.
+     */
+    public int size() {
+        return cities.length;
+    }
+
+    /**
+     * Returns the nearest city to the point, or -1 if no city has coordinates.
+     */
+    public int nearest(double latitude, double longitude) {
+        int[] result = nearest(latitude, longitude, 1, null);
+        return result.length > 0 ? result[0] : -1;
+    }
+
+    /**
+     * Returns up to {@code k} cities nearest to the point, nearest first.
+     */
+    public int[] nearest(double latitude, double longitude, int k) {
+        return nearest(latitude, longitude, k, null);
+    }
+
+    /**
+     * Returns up to {@code k} cities nearest to the point, nearest first, considering only
+     * cities the filter accepts.
+     *
+     * @param filter Accepts city ids, or null to accept every city.
+     */
+    public int[] nearest(double latitude, double longitude, int k, IntPredicate filter) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1: " + k);
+        }
+        double[] query = new double[3];
+        unitVector(latitude, longitude, query, 0);
+        Neighbors neighbors = new Neighbors(Math.min(k, cities.length));
+        searchNearest(query, filter, neighbors, 0, cities.length);
+        return neighbors.sortedCities();
+    }
+
+    /**
+     * Returns the nearest city on at least one road, which is where a route to or from an
+     * arbitrary point should start. Returns -1 if there is none.
+     */
+    public int snap(double latitude, double longitude) {
+        int[] result = nearest(latitude, longitude, 1, city -> graph.degree(city) > 0);
+        return result.length > 0 ? result[0] : -1;
+    }
+
+    /**
+     * Returns every city within the given great-circle distance of the point, nearest first.
+     */
+    public int[] within(double latitude, double longitude, double radiusKm) {
+        double[] query = new double[3];
+        unitVector(latitude, longitude, query, 0);
+        // Half the angle subtended by the radius, capped at the antipode
+        double halfAngle = Math.min(Math.PI, radiusKm / EARTH_RADIUS_KM) / 2;
+        double chord = 2 * Math.sin(halfAngle);
+        Neighbors found = new Neighbors(16);
+        searchWithin(query, chord * chord, found, 0, cities.length);
+        return found.sortedCities();
+    }
+
+    /**
+     * Returns the great-circle distance from the point to the city, in kilometers.
+     *
+     * @throws IllegalArgumentException If the city has no coordinates.
+     */
+    public double distance(double latitude, double longitude, int city) {
+        if (!graph.hasCoordinates(city)) {
+            throw new IllegalArgumentException("City has no coordinates: " + graph.name(city));
+        }
+        double[] a = new double[3];
+        double[] b = new double[3];
+        unitVector(latitude, longitude, a, 0);
+        unitVector(graph.latitude(city), graph.longitude(city), b, 0);
+        double dx = a[0] - b[0];
+        double dy = a[1] - b[1];
+        double dz = a[2] - b[2];
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(dx * dx + dy * dy + dz * dz) / 2));
+    }
+
+    /**
+     * Lists the cities nearest to a point, or within a radius of it.
+     * Usage: {@code SpatialIndex <adjacency file> <coordinates file> <latitude> <longitude> [k | --within km]}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4 && args.length != 5 && !(args.length == 6 && args[4].equals("--within"))) {
+            System.out.println("Usage: SpatialIndex <adjacency file> <coordinates file> <latitude> <longitude>"
+                    + " [k | --within km]");
+            return;
+        }
+        CompiledGraph graph = GraphLoader.load(Paths.get(args[0]), Paths.get(args[1]));
+        SpatialIndex index = build(graph);
+        double latitude = Double.parseDouble(args[2]);
+        double longitude = Double.parseDouble(args[3]);
+        int[] found = args.length == 6
+                ? index.within(latitude, longitude, Double.parseDouble(args[5]))
+                : index.nearest(latitude, longitude, args.length == 5 ? Integer.parseInt(args[4]) : 1);
+        for (int city : found) {
+            System.out.printf("%s %.3f km%n", graph.name(city), index.distance(latitude, longitude, city));
+        }
+    }
+
+    private void searchNearest(double[] query, IntPredicate filter, Neighbors neighbors, int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        int axis = axes[mid];
+        double difference = query[axis] - points[3 * mid + axis];
+
+        if (filter == null || filter.test(cities[mid])) {
+            neighbors.offer(cities[mid], squaredDistance(query, mid));
+        }
+        // Search the query's side first, then the other side only if it may hold something closer
+        if (difference < 0) {
+            searchNearest(query, filter, neighbors, lo, mid);
+            if (difference * difference < neighbors.bound()) {
+                searchNearest(query, filter, neighbors, mid + 1, hi);
+            }
+        } else {
+            searchNearest(query, filter, neighbors, mid + 1, hi);
+            if (difference * difference < neighbors.bound()) {
+                searchNearest(query, filter, neighbors, lo, mid);
+            }
+        }
+    }
+
+    private void searchWithin(double[] query, double squaredChord, Neighbors found, int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        int axis = axes[mid];
+        double difference = query[axis] - points[3 * mid + axis];
+
+        double distance = squaredDistance(query, mid);
+        if (distance <= squaredChord) {
+            found.add(cities[mid], distance);
+        }
+        if (difference <= 0 || difference * difference <= squaredChord) {
+            searchWithin(query, squaredChord, found, lo, mid);
+        }
+        if (difference >= 0 || difference * difference <= squaredChord) {
+            searchWithin(query, squaredChord, found, mid + 1, hi);
+        }
+    }
+
+    private double squaredDistance(double[] query, int slot) {
+        double dx = query[0] - points[3 * slot];
+        double dy = query[1] - points[3 * slot + 1];
+        double dz = query[2] - points[3 * slot + 2];
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Arranges {@code [lo, hi)} so that its middle city splits the rest along the axis of
+     * widest spread, then does the same for both halves.
+     */
+    private static void split(int[] cities, double[] points, byte[] axes, int lo, int hi) {
+        while (hi - lo > 1) {
+            int axis = widestAxis(points, lo, hi);
+            int mid = (lo + hi) >>> 1;
+            select(cities, points, axis, lo, hi, mid);
+            axes[mid] = (byte) axis;
+            split(cities, points, axes, lo, mid);
+            lo = mid + 1; // Loop on the right half instead of recursing
+        }
+    }
+
+    private static int widestAxis(double[] points, int lo, int hi) {
+        int best = 0;
+        double bestSpread = -1;
+        for (int axis = 0; axis < 3; axis++) {
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int i = lo; i < hi; i++) {
+                double value = points[3 * i + axis];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            if (max - min > bestSpread) {
+                bestSpread = max - min;
+                best = axis;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Quickselect: puts the city with rank {@code nth} along the axis at {@code nth}, with no
+     * larger value before it and no smaller one after it.
+     */
+    private static void select(int[] cities, double[] points, int axis, int lo, int hi, int nth) {
+        int left = lo;
+        int right = hi - 1;
+        while (left < right) {
+            double pivot = points[3 * ((left + right) >>> 1) + axis];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (points[3 * i + axis] < pivot) {
+                    i++;
+                }
+                while (points[3 * j + axis] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(cities, points, i++, j--);
+                }
+            }
+            if (nth <= j) {
+                right = j;
+            } else if (nth >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static void swap(int[] cities, double[] points, int i, int j) {
+        int city = cities[i];
+        cities[i] = cities[j];
+        cities[j] = city;
+        for (int axis = 0; axis < 3; axis++) {
+            double value = points[3 * i + axis];
+            points[3 * i + axis] = points[3 * j + axis];
+            points[3 * j + axis] = value;
+        }
+    }
+
+    private static void unitVector(double latitude, double longitude, double[] out, int offset) {
+        double lat = Math.toRadians(latitude);
+        double lon = Math.toRadians(longitude);
+        double cosLatitude = Math.cos(lat);
+        out[offset] = cosLatitude * Math.cos(lon);
+        out[offset + 1] = cosLatitude * Math.sin(lon);
+        out[offset + 2] = Math.sin(lat);
+    }
+
+    /**
+     * Cities with their squared chord distances. Bounded to a capacity it keeps the nearest
+     * ones in a max-heap; unbounded it simply collects.
+     */
+    private static final class Neighbors {
+        private final int capacity;
+        private int[] cities;
+        private double[] distances;
+        private int size;
+
+        /**
+         * A bounded max-heap of the given capacity.
+         */
+        Neighbors(int capacity) {
+            this.capacity = capacity;
+            this.cities = new int[Math.max(capacity, 1)];
+            this.distances = new double[cities.length];
+        }
+
+        /**
+         * The squared distance a city must beat to get in.
+         */
+        double bound() {
+            return size < capacity ? Double.POSITIVE_INFINITY : distances[0];
+        }
+
+        void offer(int city, double distance) {
+            if (size < capacity) {
+                // Sift up
+                int i = size++;
+                while (i > 0 && distances[(i - 1) / 2] < distance) {
+                    cities[i] = cities[(i - 1) / 2];
+                    distances[i] = distances[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                cities[i] = city;
+                distances[i] = distance;
+            } else if (distance < distances[0]) {
+                // Replace the farthest
+                siftDown(0, city, distance, size);
+            }
+        }
+
+        /**
+         * Appends without bounding, for radius lookups.
+         */
+        void add(int city, double distance) {
+            if (size == cities.length) {
+                cities = Arrays.copyOf(cities, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            cities[size] = city;
+            distances[size++] = distance;
+        }
+
+        /**
+         * Heapsorts the cities by distance and returns them, nearest first.
+         */
+        int[] sortedCities() {
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i, cities[i], distances[i], size);
+            }
+            for (int end = size - 1; end > 0; end--) {
+                int city = cities[end];
+                double distance = distances[end];
+                cities[end] = cities[0];
+                distances[end] = distances[0];
+                siftDown(0, city, distance, end);
+            }
+            return Arrays.copyOf(cities, size);
+        }
+
+        /**
+         * Places the city at or below heap slot {@code i} of a max-heap of {@code heapSize} entries.
+         */
+        private void siftDown(int i, int city, double distance, int heapSize) {
+            while (2 * i + 1 < heapSize) {
+                int child = 2 * i + 1;
+                if (child + 1 < heapSize && distances[child + 1] > distances[child]) {
+                    child++;
+                }
+                if (distances[child] <= distance) {
+                    break;
+                }
+                cities[i] = cities[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            cities[i] = city;
+            distances[i] = distance;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package search_methods;
+
+import java.util.*;
+
+/**
+ * Generators for synthetic road-like graphs used by {@link RouteBenchmark}.
+ * Cities are placed over a box the size of Kansas so that edge lengths and the
+ * Haversine heuristic behave like the bundled data. Every generated edge is bidirectional.
+ */
+final class SyntheticGraphs {
+    private static final double MIN_LATITUDE = 37.0;
+    private static final double MAX_LATITUDE = 40.0;
+    private static final double MIN_LONGITUDE = -102.0;
+    private static final double MAX_LONGITUDE = -94.6;
+
+    private SyntheticGraphs() {
+    }
+
+    /**
+     * Creates a square grid of roughly {@code nodes} cities, each joined to its four neighbors.
+     */
+    static CompiledGraph grid(int nodes) {
+        int side = Math.max(2, (int) Math.ceil(Math.sqrt(nodes)));
+        int size = side * side;
+        String[] names = names(size);
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        for (int row = 0; row < side; row++) {
+            for (int col = 0; col < side; col++) {
+                int v = row * side + col;
+                latitudes[v] = MIN_LATITUDE + (MAX_LATITUDE - MIN_LATITUDE) * row / (side - 1);
+                longitudes[v] = MIN_LONGITUDE + (MAX_LONGITUDE - MIN_LONGITUDE) * col / (side - 1);
+            }
+        }
+
+        int[] from = new int[2 * size];
+        int[] to = new int[2 * size];
+        int edges = 0;
+        for (int row = 0; row < side; row++) {
+            for (int col = 0; col < side; col++) {
+                int v = row * side + col;
+                if (col + 1 < side) {
+                    from[edges] = v;
+                    to[edges++] = v + 1;
+                }
+                if (row + 1 < side) {
+                    from[edges] = v;
+                    to[edges++] = v + side;
+                }
+            }
+        }
+        return CompiledGraph.fromEdgeList(names, latitudes, longitudes, from, to, edges, true);
+    }
+
+    /**
+     * Creates a random geometric graph: cities are scattered uniformly and every pair closer
+     * than a radius chosen for the requested average degree is joined.
+     */
+    static CompiledGraph randomGeometric(int nodes, double averageDegree, long seed) {
+        Random random = new Random(seed);
+        String[] names = names(nodes);
+        double[] x = new double[nodes];
+        double[] y = new double[nodes];
+        for (int v = 0; v < nodes; v++) {
+            x[v] = random.nextDouble();
+            y[v] = random.nextDouble();
+        }
+
+        // In the unit square the expected degree is n * pi * r^2
+        double radius = Math.sqrt(averageDegree / (Math.PI * nodes));
+        int cells = Math.max(1, (int) (1.0 / radius));
+        int[] cellStart = new int[cells * cells + 1];
+        int[] cellOf = new int[nodes];
+        for (int v = 0; v < nodes; v++) {
+            cellOf[v] = cell(x[v], cells) * cells + cell(y[v], cells);
+            cellStart[cellOf[v] + 1]++;
+        }
+        for (int c = 0; c < cells * cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] cellMembers = new int[nodes];
+        int[] cursor = Arrays.copyOf(cellStart, cells * cells);
+        for (int v = 0; v < nodes; v++) {
+            cellMembers[cursor[cellOf[v]]++] = v;
+        }
+
+        IntPairList edges = new IntPairList(nodes * (int) Math.ceil(averageDegree / 2));
+        double radiusSquared = radius * radius;
+        for (int v = 0; v < nodes; v++) {
+            int cx = cellOf[v] / cells;
+            int cy = cellOf[v] % cells;
+            for (int nx = Math.max(0, cx - 1); nx <= Math.min(cells - 1, cx + 1); nx++) {
+                for (int ny = Math.max(0, cy - 1); ny <= Math.min(cells - 1, cy + 1); ny++) {
+                    int c = nx * cells + ny;
+                    for (int i = cellStart[c]; i < cellStart[c + 1]; i++) {
+                        int u = cellMembers[i];
+                        double dx = x[u] - x[v];
+                        double dy = y[u] - y[v];
+                        if (u > v && dx * dx + dy * dy <= radiusSquared) {
+                            edges.add(v, u);
+                        }
+                    }
+                }
+            }
+        }
+
+        return CompiledGraph.fromEdgeList(names, toLatitudes(y), toLongitudes(x),
+                edges.first, edges.second, edges.size, true);
+    }
+
+    /**
+     * Creates a Barabasi-Albert scale-free graph in which every new city attaches to
+     * {@code edgesPerNode} existing cities chosen proportionally to their degree.
+     */
+    static CompiledGraph scaleFree(int nodes, int edgesPerNode, long seed) {
+        Random random = new Random(seed);
+        String[] names = names(nodes);
+        double[] x = new double[nodes];
+        double[] y = new double[nodes];
+        for (int v = 0; v < nodes; v++) {
+            x[v] = random.nextDouble();
+            y[v] = random.nextDouble();
+        }
+
+        int seedNodes = Math.min(nodes, edgesPerNode + 1);
+        IntPairList edges = new IntPairList(nodes * edgesPerNode);
+        // Every edge endpoint is listed once, so a uniform pick from this array is degree-proportional
+        int[] endpoints = new int[2 * (seedNodes * seedNodes + nodes * edgesPerNode)];
+        int endpointCount = 0;
+        for (int v = 0; v < seedNodes; v++) {
+            for (int u = v + 1; u < seedNodes; u++) {
+                edges.add(v, u);
+                endpoints[endpointCount++] = v;
+                endpoints[endpointCount++] = u;
+            }
+        }
+
+        int[] chosen = new int[edgesPerNode];
+        for (int v = seedNodes; v < nodes; v++) {
+            int picked = 0;
+            while (picked < edgesPerNode) {
+                int candidate = endpoints[random.nextInt(endpointCount)];
+                boolean duplicate = false;
+                for (int i = 0; i < picked; i++) {
+                    duplicate |= chosen[i] == candidate;
+                }
+                if (!duplicate) {
+                    chosen[picked++] = candidate;
+                }
+            }
+            for (int i = 0; i < picked; i++) {
+                edges.add(v, chosen[i]);
+                endpoints[endpointCount++] = v;
+                endpoints[endpointCount++] = chosen[i];
+            }
+        }
+
+        return CompiledGraph.fromEdgeList(names, toLatitudes(y), toLongitudes(x),
+                edges.first, edges.second, edges.size, true);
+    }
+
+    private static int cell(double coordinate, int cells) {
+        return Math.min(cells - 1, (int) (coordinate * cells));
+    }
+
+    private static String[] names(int size) {
+        String[] names = new String[size];
+        for (int v = 0; v < size; v++) {
+            names[v] = "N" + v;
+        }
+        return names;
+    }
+
+    private static double[] toLatitudes(double[] unit) {
+        double[] latitudes = new double[unit.length];
+        for (int v = 0; v < unit.length; v++) {
+            latitudes[v] = MIN_LATITUDE + (MAX_LATITUDE - MIN_LATITUDE) * unit[v];
+        }
+        return latitudes;
+    }
+
+    private static double[] toLongitudes(double[] unit) {
+        double[] longitudes = new double[unit.length];
+        for (int v = 0; v < unit.length; v++) {
+            longitudes[v] = MIN_LONGITUDE + (MAX_LONGITUDE - MIN_LONGITUDE) * unit[v];
+        }
+        return longitudes;
+    }
+
+    /**
+     * A growable list of int pairs.
+     */
+    private static final class IntPairList {
+        int[] first;
+        int[] second;
+        int size;
+
+        IntPairList(int capacity) {
+            first = new int[Math.max(capacity, 16)];
+            second = new int[first.length];
+        }
+
+        void add(int a, int b) {
+            if (size == first.length) {
+                first = Arrays.copyOf(first, size * 2);
+                second = Arrays.copyOf(second, size * 2);
+            }
+            first[size] = a;
+            second[size++] = b;
+        }
+    }
+}
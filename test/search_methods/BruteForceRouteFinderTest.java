@@ -0,0 +1,42 @@
+package search_methods;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BruteForceRouteFinderTest {
+    private static CompiledGraph graph;
+
+    @BeforeClass
+    public static void loadGraph() throws IOException {
+        graph = GraphLoader.load(Paths.get("Adjacencies.txt"), Paths.get("coordinates.csv"));
+    }
+
+    @Test
+    public void noRoadsAllowedFindsNoRouteBetweenNeighbors() {
+        BruteForceRouteFinder finder = new BruteForceRouteFinder(graph);
+        assertNull(finder.findRoute("Anthony", "Argonia", Collections.emptyList(), 0));
+    }
+
+    @Test
+    public void oneRoadAllowedFindsTheDirectRoad() {
+        BruteForceRouteFinder finder = new BruteForceRouteFinder(graph);
+        assertEquals(Arrays.asList("Anthony", "Argonia"),
+                finder.findRoute("Anthony", "Argonia", Collections.emptyList(), 1));
+    }
+
+    @Test
+    public void hopLimitAppliesToRoutesThroughMustVisitCities() {
+        BruteForceRouteFinder finder = new BruteForceRouteFinder(graph);
+        finder.setMaxHops(1);
+        finder.setMustVisit(Collections.singletonList("Harper"));
+        assertNull(finder.findRoute("Anthony", "Argonia"));
+        finder.setMaxHops(0);
+        finder.setMustVisit(Collections.emptyList());
+        assertNull(finder.findRoute("Anthony", "Argonia"));
+    }
+}
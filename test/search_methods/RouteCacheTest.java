@@ -0,0 +1,55 @@
+package search_methods;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RouteCacheTest {
+    private static CompiledGraph graph;
+
+    @BeforeClass
+    public static void loadGraph() throws IOException {
+        graph = GraphLoader.load(Paths.get("Adjacencies.txt"), Paths.get("coordinates.csv"));
+    }
+
+    private static RouteFinder cachedAStar(RouteCache cache) {
+        return new CachingRouteFinder(SearchMethod.A_STAR.create(graph), graph, SearchMethod.A_STAR, cache);
+    }
+
+    @Test
+    public void subpathOfCachedRouteIsReused() {
+        RouteCache cache = new RouteCache(100);
+        RouteFinder finder = cachedAStar(cache);
+        List<String> route = finder.findRoute("Salina", "South_Haven");
+        assertTrue(route.size() >= 4);
+
+        String from = route.get(1);
+        String to = route.get(route.size() - 2);
+        List<String> subpath = finder.findRoute(from, to);
+        assertEquals(1, cache.stats().getSubpathHits());
+        assertEquals(route.subList(1, route.size() - 1), subpath);
+    }
+
+    @Test
+    public void routeFromCityWithoutCoordinatesIsNotReused() {
+        assertFalse(graph.hasCoordinates(graph.id("Hays")));
+        RouteCache cache = new RouteCache(100);
+        RouteFinder finder = cachedAStar(cache);
+        List<String> throughHays = finder.findRoute("Hays", "South_Haven");
+        assertNotNull(throughHays);
+
+        // Every route out of Hays costs Double.MAX_VALUE, so the one cached is an arbitrary pick
+        RouteFinder uncached = SearchMethod.A_STAR.create(graph);
+        for (int i = 1; i < throughHays.size(); i++) {
+            for (int j = i + 2; j < throughHays.size(); j++) {
+                String from = throughHays.get(i);
+                String to = throughHays.get(j);
+                double shortest = graph.routeWeight(uncached.findRoute(from, to));
+                assertEquals(from + " to " + to, shortest, graph.routeWeight(finder.findRoute(from, to)), 1e-9);
+            }
+        }
+    }
+}